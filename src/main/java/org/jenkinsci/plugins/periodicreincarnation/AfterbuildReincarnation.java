@@ -4,51 +4,111 @@ import static hudson.model.Result.SUCCESS;
 
 import hudson.AbortException;
 import hudson.Extension;
-import hudson.maven.MavenBuild;
-import hudson.model.AbstractBuild;
-import hudson.model.AbstractProject;
+import hudson.model.Result;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
 
 /**
- * This class triggers a restart automatically after a build has failed.
+ * This class triggers a restart automatically after a build has failed. It
+ * listens to every kind of run, so Pipelines are restarted as well as
+ * freestyle builds.
  * 
  * @author yboev
  * 
  */
 @Extension
-public class AfterbuildReincarnation extends RunListener<AbstractBuild<?, ?>> {
+public class AfterbuildReincarnation extends RunListener<Run<?, ?>> {
 
 	/**
-	 * Maximal times a project can be automatically restarted from this class in
-	 * a row.
-	 * 
+	 * The configuration that applies to one completed build. The listener is
+	 * a singleton called for builds completing at the same time, so the values
+	 * are kept per call and not in fields of the listener.
 	 */
-	private int maxRestartDepth;
+	private static final class Settings {
+		/**
+		 * Maximal times a project can be automatically restarted from this
+		 * class in a row.
+		 */
+		private final int maxRestartDepth;
+		/**
+		 * Policy for the delay of the restart.
+		 */
+		private final BackoffPolicy backoffPolicy;
+		/**
+		 * Tells if this type of restart is enabled(either globally or
+		 * locally).
+		 */
+		private final boolean isEnabled;
+		/**
+		 * Tells if the afterbuild restart was configured locally.
+		 */
+		private final boolean isLocallyEnabled;
 
-	/**
-	 * Tells if this type of restart is enabled(either globally or locally).
-	 */
-	private boolean isEnabled;
-	/**
-	 * Tells if the afterbuild restart was configured locally.
-	 */
-	private boolean isLocallyEnabled;
+		/**
+		 * Retrieves values from global or local config.
+		 * 
+		 * @param localconfig
+		 *            Local configuration.
+		 * @param config
+		 *            Global configuration.
+		 */
+		Settings(JobLocalConfiguration localconfig,
+				PeriodicReincarnationGlobalConfiguration config) {
+			if (localconfig != null && localconfig.getIsLocallyConfigured()) {
+				this.isEnabled = localconfig.getIsEnabled();
+				this.isLocallyEnabled = localconfig.getIsEnabled();
+				this.maxRestartDepth = localconfig.getMaxDepth();
+				this.backoffPolicy = localconfig
+						.getBackoffPolicy(config.getBackoffPolicy());
+			} else {
+				this.isEnabled = config.isTriggerActive();
+				this.isLocallyEnabled = false;
+				this.maxRestartDepth = config.getMaxDepth();
+				this.backoffPolicy = config.getBackoffPolicy();
+			}
+		}
+	}
 
 	@Override
-	public void onCompleted(AbstractBuild<?, ?> build, TaskListener listener) {
+	public void onCompleted(Run<?, ?> build, TaskListener listener) {
 
 		// stop if no build or project can be retrieved
-		if (build == null || build.getProject() == null || isMavenBuild(build)) {
+		if (build == null || build.getParent() == null
+				|| !PeriodicReincarnation.isRestartable(build.getParent())) {
 			return;
 		}
 
+		// journal how a restart by the plugin turned out
+		final PeriodicReincarnationBuildCause cause = build
+				.getCause(PeriodicReincarnationBuildCause.class);
+		if (cause != null) {
+			ReincarnationJournal.recordOutcome(build, cause);
+			final boolean isSuccess = build.getResult() != null
+					&& build.getResult().isBetterThan(Result.FAILURE);
+			final RetryStatistics retries = RetryStatistics.get();
+			if (cause.getTriggerKey() != null && retries != null) {
+				retries.record(cause.getTriggerKey(),
+						build.getParent().getFullName(), isSuccess);
+			}
+			CircuitBreaker.get().recordOutcome(build.getParent().getFullName(),
+					isSuccess);
+		}
+
+		// remember the outcome, and the changes of a failed build while its
+		// change set is in memory; the build record is saved after the
+		// listeners ran
+		final BuildHistory history = BuildHistory.get();
+		if (history != null) {
+			history.record(build);
+		}
+
 		// stop if build was a success
 		if (build.getResult() == SUCCESS) {
 			return;
 		}
 
-		final JobLocalConfiguration localConfig = build.getProject()
+		final JobLocalConfiguration localConfig = build.getParent()
 				.getProperty(JobLocalConfiguration.class);
 		final PeriodicReincarnationGlobalConfiguration globalConfig = PeriodicReincarnationGlobalConfiguration
 				.get();
@@ -56,24 +116,29 @@ public class AfterbuildReincarnation extends RunListener<AbstractBuild<?, ?>> {
 		if (globalConfig == null) {
 			return;
 		}
-		setConfigVariables(localConfig, globalConfig);
+		final Settings settings = new Settings(localConfig, globalConfig);
 
 		// stop if not enabled
-		if (!this.isEnabled) {
+		if (!settings.isEnabled) {
 			return;
 		}
 
-		if (!this.isLocallyEnabled) {
+		final CycleMetrics metrics = new CycleMetrics(
+				CycleMetrics.Type.AFTERBUILD);
+		metrics.itemVisited();
+		metrics.candidateFound();
+		if (!settings.isLocallyEnabled) {
 			// try to restart the project by finding a matching regEx or
 			// FailureCause or restart
 			// it because of an unchanged configuration
-			periodicTriggerRestart(build);
-			noChangeRestart(build, globalConfig);
+			periodicTriggerRestart(build, settings, metrics);
+			noChangeRestart(build, globalConfig, settings, metrics);
 		} else {
 			// restart project for which afterbuild restart has been enabled
 			// locally
-			localRestart(build);
+			localRestart(build, settings, metrics);
 		}
+		ReincarnationMetrics.record(metrics);
 	}
 
 	/**
@@ -83,12 +148,17 @@ public class AfterbuildReincarnation extends RunListener<AbstractBuild<?, ?>> {
 	 * 
 	 * @param build
 	 *            The current build.
+	 * @param settings
+	 *            the configuration that applies to the build.
+	 * @param metrics
+	 *            metrics of the current evaluation.
 	 */
-	private void localRestart(AbstractBuild<?, ?> build) {
-		if (checkRestartDepth(build)) {
-			Utils.restart((AbstractProject<?, ?>) build.getProject(),
+	private void localRestart(Run<?, ?> build, Settings settings,
+			CycleMetrics metrics) {
+		if (checkRestartDepth(build, settings)) {
+			Utils.restart(build.getParent(),
 					"(Afterbuild restart) Locally configured project.", null,
-					Constants.AFTERBUILDQUIETPERIOD);
+					getQuietPeriod(build, settings), metrics);
 		}
 	}
 
@@ -99,85 +169,127 @@ public class AfterbuildReincarnation extends RunListener<AbstractBuild<?, ?>> {
 	 *            the build
 	 * @param config
 	 *            the periodic reincarnation configuration
+	 * @param settings
+	 *            the configuration that applies to the build.
+	 * @param metrics
+	 *            metrics of the current evaluation.
 	 */
-	private void noChangeRestart(AbstractBuild<?, ?> build,
-			PeriodicReincarnationGlobalConfiguration config) {
+	private void noChangeRestart(Run<?, ?> build,
+			PeriodicReincarnationGlobalConfiguration config, Settings settings,
+			CycleMetrics metrics) {
 		if (config.isRestartUnchangedJobsEnabled()
-				&& Utils.qualifyForUnchangedRestart(
-						(AbstractProject<?, ?>) build.getProject())
-				&& checkRestartDepth(build)) {
-			Utils.restart((AbstractProject<?, ?>) build.getProject(),
+				&& Utils.qualifyForUnchangedRestart(build.getParent(),
+						config.getUnchangedLookback())
+				&& checkRestartDepth(build, settings)) {
+			Utils.restart(build.getParent(),
 					"(Afterbuild restart) No difference between last two builds",
-					null, Constants.AFTERBUILDQUIETPERIOD);
+					null, getQuietPeriod(build, settings), metrics);
 		}
 	}
 
 	/**
-	 * Checks if we can restart the project for a FailureCause or RegEx hit.
+	 * Checks if we can restart the project for a test result, FailureCause or
+	 * RegEx hit.
 	 * 
 	 * @param build
 	 *            the build
+	 * @param settings
+	 *            the configuration that applies to the build.
+	 * @param metrics
+	 *            metrics of the current evaluation.
 	 */
-	private void periodicTriggerRestart(AbstractBuild<?, ?> build) {
+	private void periodicTriggerRestart(Run<?, ?> build, Settings settings,
+			CycleMetrics metrics) {
+		// the test report is cheaper to check than any log
+		final TestResultTrigger testTrigger = Utils.checkTestResult(build,
+				metrics);
+		if (testTrigger != null && checkRestartDepth(build, settings)) {
+			Utils.restart(build.getParent(),
+					"(Afterbuild restart) Failed tests matched: "
+							+ testTrigger.getKey(),
+					testTrigger, getQuietPeriod(build, settings), metrics);
+			return;
+		}
 		if (Utils.isBfaAvailable()) {
 			final BuildFailureObject bfa = Utils
-					.checkBuildForBuildFailure(build);
-			if (bfa != null && checkRestartDepth(build)) {
+					.checkBuildForBuildFailure(build, metrics);
+			if (bfa != null && checkRestartDepth(build, settings)) {
 				try {
 					String name = bfa.getFailureCauseName();
-					Utils.restart((AbstractProject<?, ?>) build.getProject(),
+					Utils.restart(build.getParent(),
 							"(Afterbuild restart) Build Failure Cause hit: "
 									+ name,
-							bfa, Constants.AFTERBUILDQUIETPERIOD);
+							bfa, getQuietPeriod(build, settings), metrics);
 				} catch (AbortException e) {
-					Utils.restart((AbstractProject<?, ?>) build.getProject(),
+					Utils.restart(build.getParent(),
 							"(Afterbuild restart) Build Failure Cause hit!",
-							bfa, Constants.AFTERBUILDQUIETPERIOD);
+							bfa, getQuietPeriod(build, settings), metrics);
 				}
 				return;
 			}
 		}
-		final RegEx regEx = Utils.checkBuild(build);
-		if (regEx != null && checkRestartDepth(build)) {
-			Utils.restart((AbstractProject<?, ?>) build.getProject(),
+		final RegEx regEx = Utils.checkBuild(build, metrics);
+		final WorkspaceRegEx workspaceRegEx = regEx == null
+				? Utils.checkWorkspace(build, metrics) : null;
+		// the cron cycles reuse the verdicts instead of scanning the log again
+		TriggerVerdictAction.save(build);
+		if (regEx != null && checkRestartDepth(build, settings)) {
+			Utils.restart(build.getParent(),
 					"(Afterbuild restart) RegEx hit in console output: "
 							+ regEx.getValue(),
-					regEx, Constants.AFTERBUILDQUIETPERIOD);
+					regEx, getQuietPeriod(build, settings), metrics);
+		} else if (workspaceRegEx != null && checkRestartDepth(build, settings)) {
+			Utils.restart(build.getParent(),
+					"(Afterbuild restart) RegEx hit in workspace files "
+							+ workspaceRegEx.getFiles() + ": "
+							+ workspaceRegEx.getValue(),
+					workspaceRegEx, getQuietPeriod(build, settings), metrics);
 		}
 	}
 
 	/**
-	 * Retrieves values from global or local config.
+	 * Checks the restart depth for the current project.
 	 * 
-	 * @param localconfig
-	 *            Local configuration.
-	 * @param config
-	 *            Global configuration.
+	 * @param build
+	 *            The current build.
+	 * @param settings
+	 *            the configuration that applies to the build.
+	 * @return true if restart depth is larger than the consecutive restarts for
+	 *         this project, false otherwise.
 	 */
-	private void setConfigVariables(JobLocalConfiguration localconfig,
-			PeriodicReincarnationGlobalConfiguration config) {
-		if (localconfig != null && localconfig.getIsLocallyConfigured()) {
-			this.isEnabled = localconfig.getIsEnabled();
-			this.isLocallyEnabled = localconfig.getIsEnabled();
-			this.maxRestartDepth = localconfig.getMaxDepth();
-		} else {
-			this.isEnabled = config.isTriggerActive();
-			this.maxRestartDepth = config.getMaxDepth();
-		}
+	private static boolean checkRestartDepth(Run<?, ?> build,
+			Settings settings) {
+		return isBelowRestartDepth(build, settings.maxRestartDepth);
 	}
 
 	/**
-	 * Checks the restart depth for the current project.
+	 * Counts the consecutive afterbuild restarts ending with the given build
+	 * and compares them to the maximal restart depth.
 	 * 
 	 * @param build
 	 *            The current build.
-	 * @return true if restart depth is larger than the consecutive restarts for
-	 *         this project, false otherwise.
+	 * @param maxRestartDepth
+	 *            the maximal restart depth, 0 or less means unlimited.
+	 * @return true if restart depth is larger than the consecutive restarts,
+	 *         false otherwise.
 	 */
-	private boolean checkRestartDepth(AbstractBuild<?, ?> build) {
-		if (this.maxRestartDepth <= 0) {
+	static boolean isBelowRestartDepth(Run<?, ?> build, int maxRestartDepth) {
+		if (maxRestartDepth <= 0) {
 			return true;
 		}
+		return countRestarts(build, maxRestartDepth) < maxRestartDepth;
+	}
+
+	/**
+	 * Counts the consecutive afterbuild restarts ending with the given build.
+	 * 
+	 * @param build
+	 *            The current build.
+	 * @param limit
+	 *            counting stops here, 0 or less means no limit.
+	 * @return the number of restarts, at most the limit.
+	 */
+	static int countRestarts(Run<?, ?> build, int limit) {
 		int count = 0;
 
 		// count the number of restarts for the current project
@@ -190,15 +302,28 @@ public class AfterbuildReincarnation extends RunListener<AbstractBuild<?, ?>> {
 					.contains(Constants.AFTERBUILDRESTART)) {
 				count++;
 			}
-			if (count >= this.maxRestartDepth) {
-				return false;
+			if (limit > 0 && count >= limit) {
+				break;
 			}
 			build = build.getPreviousBuild();
 		}
-		return true;
+		return count;
 	}
-	
-	private boolean isMavenBuild(AbstractBuild<?, ?> build) {
-		return (Utils.isMavenPluginAvailable() && build instanceof MavenBuild);
+
+	/**
+	 * Returns the delay of the restart of a build, which grows with the
+	 * number of consecutive restarts before it.
+	 * 
+	 * @param build
+	 *            The current build.
+	 * @param settings
+	 *            the configuration that applies to the build.
+	 * @return the quiet period in s.
+	 */
+	private static int getQuietPeriod(Run<?, ?> build, Settings settings) {
+		// the delay stops growing at the cap, so there is no need to count
+		// further than the restart depth
+		return settings.backoffPolicy.getQuietPeriod(
+				countRestarts(build, settings.maxRestartDepth));
 	}
 }
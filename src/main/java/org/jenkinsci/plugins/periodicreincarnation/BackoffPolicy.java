@@ -0,0 +1,197 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Delay of afterbuild restarts that grows with the number of consecutive
+ * restarts of a job. The delay of the n-th consecutive restart is
+ * {@code base * multiplier^n} seconds, at most {@code cap} seconds, varied
+ * randomly by up to {@code jitter} percent in both directions. The jitter
+ * keeps jobs that failed at the same time, e.g. because a shared dependency
+ * is down, from being restarted in lockstep.
+ *
+ * The default policy restarts after {@link Constants#AFTERBUILDQUIETPERIOD}
+ * seconds every time, as the plugin always did. Its cap of
+ * {@link #DEFAULT_CAP} seconds leaves room to grow when only the base or the
+ * multiplier is configured.
+ */
+public final class BackoffPolicy {
+
+	/**
+	 * Maximal delay in s if no cap is configured, one hour.
+	 */
+	public static final int DEFAULT_CAP = 3600;
+
+	/**
+	 * The default policy.
+	 */
+	public static final BackoffPolicy DEFAULT = new BackoffPolicy(
+			Constants.AFTERBUILDQUIETPERIOD, 1, DEFAULT_CAP, 0);
+
+	/**
+	 * Source of the jitter.
+	 */
+	private static final Random RANDOM = new Random();
+
+	/**
+	 * Delay of the first restart in s.
+	 */
+	private final int base;
+	/**
+	 * Factor the delay grows by with every consecutive restart.
+	 */
+	private final double multiplier;
+	/**
+	 * Maximal delay in s.
+	 */
+	private final int cap;
+	/**
+	 * Maximal random variation of the delay in percent.
+	 */
+	private final int jitter;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param base
+	 *            delay of the first restart in s.
+	 * @param multiplier
+	 *            factor the delay grows by, at least 1.
+	 * @param cap
+	 *            maximal delay in s.
+	 * @param jitter
+	 *            maximal random variation in percent, from 0 to 100.
+	 */
+	public BackoffPolicy(int base, double multiplier, int cap, int jitter) {
+		this.base = Math.max(0, base);
+		this.multiplier = Math.max(1, multiplier);
+		this.cap = Math.max(this.base, cap);
+		this.jitter = Math.min(100, Math.max(0, jitter));
+	}
+
+	/**
+	 * Returns a policy with the values given as text, the values of this
+	 * policy are used where the text is blank or invalid.
+	 *
+	 * @param baseValue
+	 *            delay of the first restart in s.
+	 * @param multiplierValue
+	 *            factor the delay grows by.
+	 * @param capValue
+	 *            maximal delay in s.
+	 * @param jitterValue
+	 *            maximal random variation in percent.
+	 * @return the policy.
+	 */
+	public BackoffPolicy override(String baseValue, String multiplierValue,
+			String capValue, String jitterValue) {
+		return new BackoffPolicy(parseInt(baseValue, this.base),
+				parseDouble(multiplierValue, this.multiplier),
+				parseInt(capValue, this.cap), parseInt(jitterValue, this.jitter));
+	}
+
+	/**
+	 * Returns the delay before a restart.
+	 *
+	 * @param consecutiveRestarts
+	 *            number of restarts of the job in a row before this one.
+	 * @return the quiet period in s.
+	 */
+	public int getQuietPeriod(int consecutiveRestarts) {
+		return getQuietPeriod(consecutiveRestarts, RANDOM.nextDouble());
+	}
+
+	/**
+	 * Returns the delay before a restart.
+	 *
+	 * @param consecutiveRestarts
+	 *            number of restarts of the job in a row before this one.
+	 * @param random
+	 *            a random number from 0 to 1.
+	 * @return the quiet period in s.
+	 */
+	int getQuietPeriod(int consecutiveRestarts, double random) {
+		final double delay = Math.min(this.cap,
+				this.base * Math.pow(this.multiplier, consecutiveRestarts));
+		final double variation = delay * this.jitter / 100 * (2 * random - 1);
+		return (int) Math.max(0, Math.round(delay + variation));
+	}
+
+	/**
+	 * Returns the delay of the first restart.
+	 *
+	 * @return the delay in s.
+	 */
+	public int getBase() {
+		return this.base;
+	}
+
+	/**
+	 * Returns the factor the delay grows by.
+	 *
+	 * @return the factor.
+	 */
+	public double getMultiplier() {
+		return this.multiplier;
+	}
+
+	/**
+	 * Returns the maximal delay.
+	 *
+	 * @return the delay in s.
+	 */
+	public int getCap() {
+		return this.cap;
+	}
+
+	/**
+	 * Returns the maximal random variation of the delay.
+	 *
+	 * @return the variation in percent.
+	 */
+	public int getJitter() {
+		return this.jitter;
+	}
+
+	/**
+	 * Parses a number, falling back to a default.
+	 *
+	 * @param value
+	 *            the text.
+	 * @param defaultValue
+	 *            the default.
+	 * @return the number.
+	 */
+	private static int parseInt(String value, int defaultValue) {
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Parses a decimal number, falling back to a default.
+	 *
+	 * @param value
+	 *            the text.
+	 * @param defaultValue
+	 *            the default.
+	 * @return the number.
+	 */
+	private static double parseDouble(String value, double defaultValue) {
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
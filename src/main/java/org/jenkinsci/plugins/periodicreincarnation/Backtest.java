@@ -0,0 +1,210 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+/**
+ * Backtests triggers: the last failed builds of every restartable job are
+ * evaluated with a {@link DryRun}, which tells how many of them a trigger
+ * would have restarted and how long scanning them took, before the trigger
+ * is enabled. The builds are loaded job by job while the dry run consumes
+ * them, so a backtest over many jobs does not hold all their builds.
+ */
+public final class Backtest {
+
+	/**
+	 * Default number of failed builds per job.
+	 */
+	public static final int DEFAULT_BUILDS = 5;
+	/**
+	 * Maximal number of failed builds per job.
+	 */
+	public static final int MAX_BUILDS = 50;
+	/**
+	 * Default budget of bytes read in MB.
+	 */
+	public static final int DEFAULT_BUDGET_MB = 256;
+	/**
+	 * Default budget of bytes read in MB of a backtest from the
+	 * configuration page, which runs while the request waits.
+	 */
+	public static final int FORM_BUDGET_MB = 16;
+	/**
+	 * Maximal budget of bytes read in MB of a backtest from the
+	 * configuration page.
+	 */
+	public static final int MAX_FORM_BUDGET_MB = 64;
+	/**
+	 * Builds looked at per failed build wanted, so that jobs failing rarely
+	 * do not get their whole history loaded.
+	 */
+	static final int WALK_FACTOR = 4;
+
+	/**
+	 * Utility class.
+	 */
+	private Backtest() {
+	}
+
+	/**
+	 * Tells if a build failed the way the restarts see it: its result is a
+	 * failure or worse.
+	 *
+	 * @param build
+	 *            the build.
+	 * @return true if it failed.
+	 */
+	static boolean isFailed(Run<?, ?> build) {
+		final Result result = build.getResult();
+		return result != null && result.isWorseOrEqualTo(Result.FAILURE);
+	}
+
+	/**
+	 * Returns the last failed builds of all restartable jobs.
+	 *
+	 * @param buildsPerJob
+	 *            number of failed builds per job, limited to
+	 *            {@value #MAX_BUILDS}.
+	 * @return the builds, loaded as they are iterated.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static Iterator<Run<?, ?>> failedBuilds(int buildsPerJob) {
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return new FailedBuilds(Collections.<Job> emptyList().iterator(),
+					1);
+		}
+		return new FailedBuilds(jenkins.getAllItems(Job.class).iterator(),
+				Math.max(1, Math.min(buildsPerJob, MAX_BUILDS)));
+	}
+
+	/**
+	 * Renders the summary of a backtest as HTML table, one row per trigger.
+	 *
+	 * @param summary
+	 *            the summary returned by {@link DryRun#run}.
+	 * @return the HTML.
+	 */
+	public static String toHtml(JSONObject summary) {
+		final StringBuilder html = new StringBuilder();
+		html.append("<table class='pane'><tr><th>Trigger</th>")
+				.append("<th>Failed builds</th><th>Would restart</th>")
+				.append("<th>Jobs</th><th>MB read</th><th>Scan time (s)</th>")
+				.append("</tr>");
+		final JSONObject triggers = summary.getJSONObject("triggers");
+		for (Object key : triggers.keySet()) {
+			final JSONObject trigger = triggers.getJSONObject((String) key);
+			html.append("<tr><td>").append(Util.escape((String) key))
+					.append("</td><td>").append(trigger.getInt("evaluations"))
+					.append("</td><td>").append(trigger.getInt("hits"))
+					.append("</td><td>").append(trigger.getInt("jobs"))
+					.append("</td><td>")
+					.append(String.format(Locale.ENGLISH, "%.1f",
+							trigger.getLong("bytes") / 1048576.0))
+					.append("</td><td>")
+					.append(String.format(Locale.ENGLISH, "%.1f",
+							trigger.getDouble("millis") / 1000))
+					.append("</td></tr>");
+		}
+		html.append("</table>");
+		html.append(String.format(Locale.ENGLISH, "Took %.1f s",
+				summary.getDouble("wallMillis") / 1000));
+		if (summary.getBoolean("budgetExhausted")) {
+			html.append(", stopped as the budget of bytes read was used up");
+		}
+		if (summary.getInt("errors") > 0) {
+			html.append(", ").append(summary.getInt("errors"))
+					.append(" evaluations failed");
+		}
+		html.append('.');
+		return html.toString();
+	}
+
+	/**
+	 * Iterates over the last failed builds of jobs, job by job.
+	 */
+	@SuppressWarnings("rawtypes")
+	static final class FailedBuilds implements Iterator<Run<?, ?>> {
+		/**
+		 * The jobs not looked at yet.
+		 */
+		private final Iterator<Job> jobs;
+		/**
+		 * Number of failed builds per job.
+		 */
+		private final int buildsPerJob;
+		/**
+		 * The failed builds of the current job not returned yet.
+		 */
+		private final Deque<Run<?, ?>> builds = new ArrayDeque<Run<?, ?>>();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param jobs
+		 *            the jobs.
+		 * @param buildsPerJob
+		 *            number of failed builds per job.
+		 */
+		FailedBuilds(Iterator<Job> jobs, int buildsPerJob) {
+			this.jobs = jobs;
+			this.buildsPerJob = buildsPerJob;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (this.builds.isEmpty() && this.jobs.hasNext()) {
+				collect(this.jobs.next());
+			}
+			return !this.builds.isEmpty();
+		}
+
+		@Override
+		public Run<?, ?> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.builds.poll();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Collects the last failed builds of a job, see
+		 * {@link Backtest#isFailed}, looking at a limited number of builds.
+		 * The walk starts at the last unsuccessful build, as the last failed
+		 * build of Jenkins skips newer aborted ones.
+		 *
+		 * @param job
+		 *            the job.
+		 */
+		private void collect(Job<?, ?> job) {
+			if (!PeriodicReincarnation.isRestartable(job)) {
+				return;
+			}
+			Run<?, ?> build = job.getLastUnsuccessfulBuild();
+			for (int i = 0; build != null && i < WALK_FACTOR
+					* this.buildsPerJob
+					&& this.builds.size() < this.buildsPerJob; i++) {
+				if (isFailed(build)) {
+					this.builds.add(build);
+				}
+				build = build.getPreviousBuild();
+			}
+		}
+	}
+}
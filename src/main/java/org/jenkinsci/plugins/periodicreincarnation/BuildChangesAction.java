@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * Remembers if a build had SCM changes or a configuration change, as needed
+ * by the unchanged restart. It is recorded when the build completes, while
+ * its change set is still in memory, and saved with the build record.
+ * Without it the unchanged restart would parse the change log of every
+ * failed build in every cron cycle.
+ */
+public class BuildChangesAction extends InvisibleAction {
+
+	/**
+	 * True if the build had SCM changes.
+	 */
+	private final boolean scmChange;
+	/**
+	 * True if the configuration of the job changed before the build.
+	 */
+	private final boolean configChange;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param scmChange
+	 *            true if the build had SCM changes.
+	 * @param configChange
+	 *            true if the configuration changed before the build.
+	 */
+	BuildChangesAction(boolean scmChange, boolean configChange) {
+		this.scmChange = scmChange;
+		this.configChange = configChange;
+	}
+
+	/**
+	 * Returns the changes of a completed build, determining them if they
+	 * were not recorded, e.g. for builds completed before this plugin was
+	 * updated. Changes determined here are not added to the build, as it
+	 * would not be saved with them.
+	 *
+	 * @param build
+	 *            the build.
+	 * @return the changes.
+	 */
+	public static BuildChangesAction of(Run<?, ?> build) {
+		final BuildChangesAction action = build
+				.getAction(BuildChangesAction.class);
+		return action != null ? action : determine(build);
+	}
+
+	/**
+	 * Determines the changes of a build that completes and adds them to it.
+	 * Only called while the build completes, as its record is saved after
+	 * the listeners ran.
+	 *
+	 * @param build
+	 *            the build.
+	 * @return the changes.
+	 */
+	static BuildChangesAction record(Run<?, ?> build) {
+		final BuildChangesAction action = determine(build);
+		synchronized (build) {
+			final BuildChangesAction recorded = build
+					.getAction(BuildChangesAction.class);
+			if (recorded != null) {
+				return recorded;
+			}
+			build.addAction(action);
+		}
+		return action;
+	}
+
+	/**
+	 * Determines the changes of a build.
+	 *
+	 * @param build
+	 *            the build.
+	 * @return the changes.
+	 */
+	private static BuildChangesAction determine(Run<?, ?> build) {
+		return new BuildChangesAction(Utils.areThereSCMChanges(build),
+				Utils.isThereConfigChange(build));
+	}
+
+	/**
+	 * Tells if the build had SCM changes.
+	 *
+	 * @return true if there were changes, or if it cannot be told.
+	 */
+	public boolean isScmChange() {
+		return this.scmChange;
+	}
+
+	/**
+	 * Tells if the configuration of the job changed before the build.
+	 *
+	 * @return true if it changed.
+	 */
+	public boolean isConfigChange() {
+		return this.configChange;
+	}
+}
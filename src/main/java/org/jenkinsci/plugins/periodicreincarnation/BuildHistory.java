@@ -0,0 +1,579 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.util.AtomicFileWriter;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps the outcome of the last builds of every job in a small ring buffer:
+ * whether a build passed (was better than a failure) and whether a failed
+ * build had SCM or configuration changes. The buffers are updated when a
+ * build completes, so the unchanged restart can tell whether a job has been
+ * failing without changes since it last passed without loading old builds
+ * from disk, see {@link #isUnchangedSincePassed(String, int, int)}.
+ *
+ * The buffers are kept in {@code periodic-reincarnation/build-history} in the
+ * Jenkins home directory, one line per job with the builds oldest first:
+ *
+ * <pre>
+ * 0	41:1 42:2 43:0	folder/job
+ * </pre>
+ *
+ * The periodic work saves the history at most once per minute rather than
+ * on every completed build. Only the lines of jobs that changed are
+ * appended, a later line of a job replacing an earlier one, and a job
+ * without builds is a deleted one. The file is rewritten once it holds
+ * more than twice as many lines as there are jobs. Builds missing after a
+ * crash are noticed and read once from disk.
+ */
+public final class BuildHistory {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(BuildHistory.class.getName());
+
+	/**
+	 * Builds kept per job, the largest lookback possible.
+	 */
+	static final int MAX_LOOKBACK = 50;
+	/**
+	 * Flag of a build better than a failure.
+	 */
+	static final int PASSED = 1;
+	/**
+	 * Flag of a failed build with SCM changes.
+	 */
+	static final int SCM_CHANGE = 2;
+	/**
+	 * Flag of a failed build with a configuration change.
+	 */
+	static final int CONFIG_CHANGE = 4;
+
+	/**
+	 * The history of this Jenkins, loaded on first use.
+	 */
+	private static BuildHistory instance;
+
+	/**
+	 * The file, null if the history is not persisted.
+	 */
+	private final File file;
+	/**
+	 * The last builds by full name of the job.
+	 */
+	private final Map<String, Ring> byJob = new HashMap<String, Ring>();
+	/**
+	 * Full names of the jobs changed or removed since the history was
+	 * written.
+	 */
+	private final Set<String> dirty = new HashSet<String>();
+	/**
+	 * Number of lines in the file.
+	 */
+	private int lines;
+
+	/**
+	 * Ring buffer of the last {@value #MAX_LOOKBACK} builds of a job, ordered
+	 * by build number. An age of 0 means the newest build.
+	 */
+	static final class Ring {
+		/**
+		 * The build numbers.
+		 */
+		private final int[] numbers = new int[MAX_LOOKBACK];
+		/**
+		 * The flags of the builds.
+		 */
+		private final byte[] flags = new byte[MAX_LOOKBACK];
+		/**
+		 * Index of the newest build.
+		 */
+		private int newest = -1;
+		/**
+		 * Number of builds kept.
+		 */
+		private int size;
+		/**
+		 * True if the oldest build kept is the first build of the job.
+		 */
+		private boolean isComplete;
+
+		/**
+		 * Adds a completed build. Builds completing out of order are
+		 * inserted by number, a build already kept is updated.
+		 *
+		 * @param number
+		 *            the build number.
+		 * @param flag
+		 *            the flags of the build.
+		 */
+		void add(int number, int flag) {
+			int age = 0;
+			while (age < this.size && getNumber(age) > number) {
+				age++;
+			}
+			if (age < this.size && getNumber(age) == number) {
+				this.flags[index(age)] = (byte) flag;
+				return;
+			}
+			if (age == MAX_LOOKBACK) {
+				// older than every build kept
+				return;
+			}
+			this.newest = (this.newest + 1) % MAX_LOOKBACK;
+			if (this.size < MAX_LOOKBACK) {
+				this.size++;
+			} else {
+				this.isComplete = false;
+			}
+			// the builds newer than the added one move back into place
+			for (int i = 0; i < age; i++) {
+				this.numbers[index(i)] = getNumber(i + 1);
+				this.flags[index(i)] = (byte) getFlags(i + 1);
+			}
+			this.numbers[index(age)] = number;
+			this.flags[index(age)] = (byte) flag;
+		}
+
+		/**
+		 * Tells if a job has been failing without changes since it last
+		 * passed, within the lookback.
+		 *
+		 * @param lastNumber
+		 *            number of the last build of the job.
+		 * @param lookback
+		 *            number of builds to look at, the last one included.
+		 * @return the verdict, or null if the builds kept do not tell.
+		 */
+		Boolean isUnchangedSincePassed(int lastNumber, int lookback) {
+			if (this.size == 0 || getNumber(0) != lastNumber) {
+				return null;
+			}
+			final int builds = Math.min(this.size, lookback);
+			for (int age = 0; age < builds; age++) {
+				final int flag = getFlags(age);
+				if ((flag & PASSED) != 0) {
+					return age > 0;
+				}
+				if ((flag & (SCM_CHANGE | CONFIG_CHANGE)) != 0) {
+					return false;
+				}
+			}
+			if (this.size >= lookback || this.isComplete) {
+				return false;
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the number of a build.
+		 *
+		 * @param age
+		 *            the age, 0 for the newest build.
+		 * @return the build number.
+		 */
+		int getNumber(int age) {
+			return this.numbers[index(age)];
+		}
+
+		/**
+		 * Returns the flags of a build.
+		 *
+		 * @param age
+		 *            the age, 0 for the newest build.
+		 * @return the flags.
+		 */
+		int getFlags(int age) {
+			return this.flags[index(age)];
+		}
+
+		/**
+		 * Returns the number of builds kept.
+		 *
+		 * @return the size.
+		 */
+		int getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the array index of a build.
+		 *
+		 * @param age
+		 *            the age, 0 for the newest build.
+		 * @return the index.
+		 */
+		private int index(int age) {
+			return (this.newest - age + MAX_LOOKBACK) % MAX_LOOKBACK;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file, or null if the history is not persisted.
+	 */
+	BuildHistory(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the history of this Jenkins.
+	 *
+	 * @return the history or null if Jenkins is not available.
+	 */
+	public static synchronized BuildHistory get() {
+		if (instance == null) {
+			final Jenkins jenkins = Jenkins.getInstance();
+			if (jenkins == null) {
+				return null;
+			}
+			instance = new BuildHistory(new File(
+					new File(jenkins.getRootDir(), "periodic-reincarnation"),
+					"build-history"));
+			instance.load();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the flags of a completed build.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param isCompleting
+	 *            true if the build just completed, then the changes of a
+	 *            failed build are recorded on it as well, see
+	 *            {@link BuildChangesAction}.
+	 * @return the flags.
+	 */
+	static int getFlags(Run<?, ?> build, boolean isCompleting) {
+		final Result result = build.getResult();
+		if (result != null && result.isBetterThan(Result.FAILURE)) {
+			return PASSED;
+		}
+		if (result == null) {
+			// still building, treated as changed so it never qualifies
+			return SCM_CHANGE;
+		}
+		final BuildChangesAction changes = isCompleting
+				? BuildChangesAction.record(build)
+				: BuildChangesAction.of(build);
+		return (changes.isScmChange() ? SCM_CHANGE : 0)
+				| (changes.isConfigChange() ? CONFIG_CHANGE : 0);
+	}
+
+	/**
+	 * Records a completed build.
+	 *
+	 * @param build
+	 *            the build.
+	 */
+	public void record(Run<?, ?> build) {
+		record(build.getParent().getFullName(), build.getNumber(),
+				getFlags(build, true));
+	}
+
+	/**
+	 * Records a completed build.
+	 *
+	 * @param job
+	 *            the full name of the job.
+	 * @param number
+	 *            the build number.
+	 * @param flag
+	 *            the flags of the build.
+	 */
+	synchronized void record(String job, int number, int flag) {
+		Ring ring = this.byJob.get(job);
+		if (ring == null) {
+			ring = new Ring();
+			this.byJob.put(job, ring);
+		}
+		ring.add(number, flag);
+		this.dirty.add(job);
+	}
+
+	/**
+	 * Forgets the builds of a deleted job, or of all jobs in a deleted
+	 * folder.
+	 *
+	 * @param name
+	 *            the full name of the job or folder.
+	 */
+	synchronized void remove(String name) {
+		final String prefix = name + "/";
+		for (Iterator<String> it = this.byJob.keySet().iterator(); it
+				.hasNext();) {
+			final String job = it.next();
+			if (job.equals(name) || job.startsWith(prefix)) {
+				it.remove();
+				this.dirty.add(job);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the builds of a renamed or moved job under its new name.
+	 *
+	 * @param oldName
+	 *            the former full name of the job.
+	 * @param newName
+	 *            the new full name of the job.
+	 */
+	synchronized void rename(String oldName, String newName) {
+		final Ring ring = this.byJob.remove(oldName);
+		if (ring != null) {
+			this.byJob.put(newName, ring);
+			this.dirty.add(oldName);
+			this.dirty.add(newName);
+		}
+	}
+
+	/**
+	 * Tells if a job has been failing without changes since it last passed,
+	 * within the lookback, from the builds kept.
+	 *
+	 * @param job
+	 *            the full name of the job.
+	 * @param lastNumber
+	 *            number of the last build of the job.
+	 * @param lookback
+	 *            number of builds to look at, the last one included.
+	 * @return the verdict, or null if the builds kept do not tell, e.g. as
+	 *         builds completed while the plugin did not watch the job.
+	 */
+	public synchronized Boolean isUnchangedSincePassed(String job,
+			int lastNumber, int lookback) {
+		final Ring ring = this.byJob.get(job);
+		return ring != null ? ring.isUnchangedSincePassed(lastNumber, lookback)
+				: null;
+	}
+
+	/**
+	 * Reads the builds of a job needed for the lookback from disk, back to
+	 * the last build that passed, and replaces the builds kept for it.
+	 *
+	 * @param lastBuild
+	 *            the last build of the job.
+	 * @param lookback
+	 *            number of builds to look at, the last one included.
+	 * @return the verdict for the last build.
+	 */
+	public boolean seed(Run<?, ?> lastBuild, int lookback) {
+		final Ring ring = read(lastBuild, lookback);
+		final String job = lastBuild.getParent().getFullName();
+		synchronized (this) {
+			this.byJob.put(job, ring);
+			this.dirty.add(job);
+		}
+		return Boolean.TRUE.equals(
+				ring.isUnchangedSincePassed(lastBuild.getNumber(), lookback));
+	}
+
+	/**
+	 * Reads the builds needed for the lookback from disk.
+	 *
+	 * @param lastBuild
+	 *            the last build of the job.
+	 * @param lookback
+	 *            number of builds to look at, the last one included.
+	 * @return a ring with these builds.
+	 */
+	static Ring read(Run<?, ?> lastBuild, int lookback) {
+		final int builds = Math.max(1, Math.min(lookback, MAX_LOOKBACK));
+		final Ring ring = new Ring();
+		Run<?, ?> build = lastBuild;
+		for (int i = 0; i < builds && build != null; i++) {
+			final int flag = getFlags(build, false);
+			ring.add(build.getNumber(), flag);
+			if ((flag & PASSED) != 0) {
+				return ring;
+			}
+			build = build.getPreviousBuild();
+		}
+		ring.isComplete = build == null;
+		return ring;
+	}
+
+	/**
+	 * Writes the history if it changed since it was last written: appends
+	 * the jobs changed, or rewrites the file if it grew too large.
+	 */
+	public synchronized void saveIfDirty() {
+		if (this.dirty.isEmpty() || this.file == null) {
+			return;
+		}
+		final File dir = this.file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			LOGGER.warning("Cannot create " + dir);
+			return;
+		}
+		try {
+			if (this.lines + this.dirty.size() > 2 * this.byJob.size()) {
+				writeAll();
+			} else {
+				append();
+			}
+			this.dirty.clear();
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Appends the lines of the jobs changed since the history was written.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	private void append() throws IOException {
+		final List<String> jobs = new ArrayList<String>(this.dirty);
+		try (Writer writer = new OutputStreamWriter(
+				new FileOutputStream(this.file, true), "UTF-8")) {
+			for (String job : jobs) {
+				final Ring ring = this.byJob.get(job);
+				writer.write(toLine(job, ring != null ? ring : new Ring()));
+			}
+		}
+		this.lines += jobs.size();
+	}
+
+	/**
+	 * Rewrites the file with one line per job.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	private void writeAll() throws IOException {
+		AtomicFileWriter writer = new AtomicFileWriter(this.file);
+		try {
+			for (Entry<String, Ring> job : this.byJob.entrySet()) {
+				writer.write(toLine(job.getKey(), job.getValue()));
+			}
+			writer.commit();
+			writer = null;
+		} finally {
+			if (writer != null) {
+				writer.abort();
+			}
+		}
+		this.lines = this.byJob.size();
+	}
+
+	/**
+	 * Returns the line of a job in the file.
+	 *
+	 * @param job
+	 *            the full name of the job.
+	 * @param ring
+	 *            the builds kept, none for a removed job.
+	 * @return the line.
+	 */
+	private static String toLine(String job, Ring ring) {
+		final StringBuilder line = new StringBuilder();
+		line.append(ring.isComplete ? '1' : '0').append('\t');
+		for (int age = ring.size - 1; age >= 0; age--) {
+			line.append(ring.getNumber(age)).append(':')
+					.append(ring.getFlags(age));
+			if (age > 0) {
+				line.append(' ');
+			}
+		}
+		return line.append('\t').append(job).append('\n').toString();
+	}
+
+	/**
+	 * Reads the history from the file.
+	 */
+	void load() {
+		if (this.file == null || !this.file.isFile()) {
+			return;
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(this.file), "UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				this.lines++;
+				final String[] parts = line.split("\t", 3);
+				if (parts.length < 3) {
+					continue;
+				}
+				try {
+					final Ring ring = new Ring();
+					for (String build : parts[1].split(" ")) {
+						final int colon = build.indexOf(':');
+						if (colon > 0) {
+							ring.add(
+									Integer.parseInt(
+											build.substring(0, colon)),
+									Integer.parseInt(
+											build.substring(colon + 1)));
+						}
+					}
+					ring.isComplete = "1".equals(parts[0]);
+					if (ring.size > 0) {
+						this.byJob.put(parts[2], ring);
+					} else {
+						// the job was deleted
+						this.byJob.remove(parts[2]);
+					}
+				} catch (NumberFormatException e) {
+					// skip corrupt line
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Cannot read " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Forgets deleted jobs and follows renamed or moved ones, so the history
+	 * does not keep builds of jobs that are gone.
+	 */
+	@Extension
+	public static final class JobListener extends ItemListener {
+
+		@Override
+		public void onDeleted(Item item) {
+			final BuildHistory history = get();
+			if (history != null) {
+				history.remove(item.getFullName());
+			}
+		}
+
+		@Override
+		public void onLocationChanged(Item item, String oldFullName,
+				String newFullName) {
+			final BuildHistory history = get();
+			if (history != null) {
+				history.rename(oldFullName, newFullName);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+/**
+ * Cheap checks that rule out jobs before their last build is inspected. The
+ * last successful and last completed build of a job are looked up through
+ * its permalinks, which Jenkins caches per job, instead of walking its
+ * builds.
+ *
+ * The checks only say no when the permalinks prove it.
+ */
+public final class CandidateFilter {
+
+	/**
+	 * Utility class.
+	 */
+	private CandidateFilter() {
+	}
+
+	/**
+	 * Tells if the last completed build of a job may be a failure. False if
+	 * the job never completed a build or its last completed build was
+	 * successful or unstable.
+	 *
+	 * @param job
+	 *            the job.
+	 * @return false if the job is no candidate for a restart.
+	 */
+	static boolean mayHaveFailed(Job<?, ?> job) {
+		final Run<?, ?> lastCompleted = job.getLastCompletedBuild();
+		if (lastCompleted == null) {
+			return false;
+		}
+		// successful or unstable
+		final Run<?, ?> lastSuccessful = job.getLastSuccessfulBuild();
+		return lastSuccessful == null
+				|| lastSuccessful.getNumber() != lastCompleted.getNumber();
+	}
+
+	/**
+	 * Tells if a job may have had a build that was better than a failure.
+	 * False if the job never had a successful or unstable build, so the
+	 * build before its last one cannot have been one.
+	 *
+	 * @param job
+	 *            the job.
+	 * @return false if the job cannot qualify for the unchanged restart.
+	 */
+	static boolean mayHaveSucceeded(Job<?, ?> job) {
+		return job.getLastSuccessfulBuild() != null;
+	}
+}
@@ -0,0 +1,541 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import hudson.model.AbstractProject;
+import hudson.model.Job;
+import hudson.model.Label;
+
+/**
+ * Circuit breakers against restarting hundreds of jobs into an outage. When
+ * a shared resource, e.g. an agent pool or an artifact repository, is down,
+ * the same trigger matches many jobs at once and restarting them right away
+ * fails again.
+ *
+ * There is one breaker per periodic trigger and one per agent label. Every
+ * restart decision is a hit for the breaker of its trigger and the one of the
+ * label the job is assigned to. When a breaker gets more hits than the
+ * threshold within the window, it opens: restarts are held instead of
+ * scheduled, except for {@value #PROBES} probe jobs. When a probe succeeds,
+ * the held restarts are released gradually, at most threshold / window per
+ * minute, and the breaker closes when none are left. A failed probe is
+ * replaced by the next held restart, and so is a probe that was not
+ * scheduled or left the queue without a build, see {@link #cancelProbe}.
+ *
+ * The breakers are kept in memory only. Restarts held when Jenkins stops are
+ * lost; the next cron cycle finds their builds again only if the cron
+ * restarts are enabled, which is logged when a breaker opens.
+ */
+public final class CircuitBreaker {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(CircuitBreaker.class.getName());
+
+	/**
+	 * Probe jobs restarted at a time while a breaker is open.
+	 */
+	static final int PROBES = 2;
+	/**
+	 * A probe that has not completed after this time is given up.
+	 */
+	static final long PROBE_TIMEOUT = TimeUnit.HOURS.toMillis(2);
+	/**
+	 * Time a probe gets to show up in the queue or as a build.
+	 */
+	static final long PROBE_GRACE = TimeUnit.MINUTES.toMillis(2);
+
+	/**
+	 * State of a breaker.
+	 */
+	public enum State {
+		/**
+		 * Restarts are scheduled.
+		 */
+		CLOSED,
+		/**
+		 * Restarts are held, only probes are scheduled.
+		 */
+		OPEN,
+		/**
+		 * A probe succeeded, held restarts are released gradually.
+		 */
+		RELEASING
+	}
+
+	/**
+	 * The breakers of this Jenkins.
+	 */
+	private static final CircuitBreaker INSTANCE = new CircuitBreaker();
+
+	/**
+	 * Breakers by key, see {@link #getKeys(Job, PeriodicTrigger)}.
+	 */
+	private final Map<String, Breaker> breakers = new LinkedHashMap<String, Breaker>();
+
+	/**
+	 * A restart held by an open breaker.
+	 */
+	public static final class HeldRestart {
+		/**
+		 * Full name of the job.
+		 */
+		private final String fullName;
+		/**
+		 * The restart cause.
+		 */
+		private final String cause;
+		/**
+		 * Key of the trigger that matched, or null.
+		 */
+		private final String triggerKey;
+		/**
+		 * Quiet period of the restart in s.
+		 */
+		private final int quietPeriod;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param fullName
+		 *            full name of the job.
+		 * @param cause
+		 *            the restart cause.
+		 * @param triggerKey
+		 *            key of the trigger that matched, or null.
+		 * @param quietPeriod
+		 *            quiet period of the restart in s.
+		 */
+		HeldRestart(String fullName, String cause, String triggerKey,
+				int quietPeriod) {
+			this.fullName = fullName;
+			this.cause = cause;
+			this.triggerKey = triggerKey;
+			this.quietPeriod = quietPeriod;
+		}
+
+		/**
+		 * Returns the full name of the job.
+		 *
+		 * @return the full name.
+		 */
+		public String getFullName() {
+			return this.fullName;
+		}
+
+		/**
+		 * Returns the restart cause.
+		 *
+		 * @return the cause.
+		 */
+		public String getCause() {
+			return this.cause;
+		}
+
+		/**
+		 * Returns the key of the trigger that matched.
+		 *
+		 * @return the key or null if the restart was not caused by a trigger.
+		 */
+		public String getTriggerKey() {
+			return this.triggerKey;
+		}
+
+		/**
+		 * Returns the quiet period of the restart.
+		 *
+		 * @return the quiet period in s.
+		 */
+		public int getQuietPeriod() {
+			return this.quietPeriod;
+		}
+	}
+
+	/**
+	 * The breaker of one trigger or label.
+	 */
+	public static final class Breaker {
+		/**
+		 * The key.
+		 */
+		private final String key;
+		/**
+		 * The state.
+		 */
+		private State state = State.CLOSED;
+		/**
+		 * Times of the hits within the window in ms since epoch, oldest
+		 * first.
+		 */
+		private final Deque<Long> hits = new ArrayDeque<Long>();
+		/**
+		 * Held restarts by full name, oldest first.
+		 */
+		private final Map<String, HeldRestart> held = new LinkedHashMap<String, HeldRestart>();
+		/**
+		 * Start times of the probes by full name.
+		 */
+		private final Map<String, Long> probes = new LinkedHashMap<String, Long>();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param key
+		 *            the key.
+		 */
+		Breaker(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Returns a copy of a breaker.
+		 *
+		 * @param other
+		 *            the breaker.
+		 */
+		private Breaker(Breaker other) {
+			this.key = other.key;
+			this.state = other.state;
+			this.hits.addAll(other.hits);
+			this.held.putAll(other.held);
+			this.probes.putAll(other.probes);
+		}
+
+		/**
+		 * Returns the key.
+		 *
+		 * @return "trigger:" and the key of the trigger or "label:" and the
+		 *         name of the label.
+		 */
+		public String getKey() {
+			return this.key;
+		}
+
+		/**
+		 * Returns the state.
+		 *
+		 * @return the state.
+		 */
+		public State getState() {
+			return this.state;
+		}
+
+		/**
+		 * Returns the hits within the window.
+		 *
+		 * @return the number as int.
+		 */
+		public int getHits() {
+			return this.hits.size();
+		}
+
+		/**
+		 * Returns the held restarts.
+		 *
+		 * @return the number as int.
+		 */
+		public int getHeld() {
+			return this.held.size();
+		}
+
+		/**
+		 * Returns the probes running.
+		 *
+		 * @return the number as int.
+		 */
+		public int getProbes() {
+			return this.probes.size();
+		}
+
+		/**
+		 * Records a hit and forgets the ones that left the window.
+		 *
+		 * @param now
+		 *            current time in ms since epoch.
+		 * @param windowMillis
+		 *            length of the window.
+		 */
+		private void hit(long now, long windowMillis) {
+			expireHits(now, windowMillis);
+			this.hits.addLast(now);
+		}
+
+		/**
+		 * Forgets the hits that left the window.
+		 *
+		 * @param now
+		 *            current time in ms since epoch.
+		 * @param windowMillis
+		 *            length of the window.
+		 */
+		private void expireHits(long now, long windowMillis) {
+			while (!this.hits.isEmpty()
+					&& this.hits.peekFirst() <= now - windowMillis) {
+				this.hits.removeFirst();
+			}
+		}
+
+		/**
+		 * Offers a restart to a breaker that is not closed.
+		 *
+		 * @param restart
+		 *            the restart.
+		 * @param now
+		 *            current time in ms since epoch.
+		 * @return true if the restart is scheduled as a probe, false if it is
+		 *         held.
+		 */
+		private boolean offer(HeldRestart restart, long now) {
+			if (this.state == State.OPEN && this.probes.size() < PROBES
+					&& !this.probes.containsKey(restart.fullName)) {
+				this.probes.put(restart.fullName, now);
+				return true;
+			}
+			this.held.put(restart.fullName, restart);
+			return false;
+		}
+
+		/**
+		 * Removes the oldest held restart.
+		 *
+		 * @return the restart.
+		 */
+		private HeldRestart poll() {
+			final Iterator<HeldRestart> i = this.held.values().iterator();
+			final HeldRestart restart = i.next();
+			i.remove();
+			return restart;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 */
+	CircuitBreaker() {
+	}
+
+	/**
+	 * Returns the breakers of this Jenkins.
+	 *
+	 * @return the breakers.
+	 */
+	public static CircuitBreaker get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the keys of the breakers a restart counts for.
+	 *
+	 * @param project
+	 *            the project.
+	 * @param perTri
+	 *            the trigger that matched, or null.
+	 * @return the keys, the one of the trigger first.
+	 */
+	static List<String> getKeys(Job<?, ?> project, PeriodicTrigger perTri) {
+		final List<String> keys = new ArrayList<String>(2);
+		if (perTri != null) {
+			keys.add("trigger:" + perTri.getKey());
+		}
+		if (project instanceof AbstractProject) {
+			final Label label = ((AbstractProject<?, ?>) project)
+					.getAssignedLabel();
+			if (label != null) {
+				keys.add("label:" + label.getName());
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Decides if a restart is scheduled now. The restart counts as a hit for
+	 * the breakers of its keys, which may open them.
+	 *
+	 * @param keys
+	 *            the keys, see {@link #getKeys(Job, PeriodicTrigger)}.
+	 * @param restart
+	 *            the restart.
+	 * @param threshold
+	 *            hits within the window that open a breaker, 0 or less
+	 *            disables the breakers.
+	 * @param windowMinutes
+	 *            length of the window in minutes.
+	 * @param now
+	 *            current time in ms since epoch.
+	 * @return true if the restart is to be scheduled, false if it is held.
+	 */
+	public synchronized boolean admit(List<String> keys, HeldRestart restart,
+			int threshold, int windowMinutes, long now) {
+		if (threshold <= 0) {
+			return true;
+		}
+		// a breaker already open decides alone
+		for (String key : keys) {
+			final Breaker breaker = this.breakers.get(key);
+			if (breaker != null && breaker.state != State.CLOSED) {
+				return breaker.offer(restart, now);
+			}
+		}
+		final long windowMillis = TimeUnit.MINUTES.toMillis(windowMinutes);
+		Breaker tripped = null;
+		for (String key : keys) {
+			Breaker breaker = this.breakers.get(key);
+			if (breaker == null) {
+				breaker = new Breaker(key);
+				this.breakers.put(key, breaker);
+			}
+			breaker.hit(now, windowMillis);
+			if (tripped == null && breaker.hits.size() > threshold) {
+				LOGGER.warning("Circuit breaker " + key + " opened after "
+						+ breaker.hits.size() + " restarts within "
+						+ windowMinutes + " minutes. Held restarts are kept"
+						+ " in memory only and are lost if Jenkins restarts.");
+				breaker.state = State.OPEN;
+				tripped = breaker;
+			}
+		}
+		return tripped == null || tripped.offer(restart, now);
+	}
+
+	/**
+	 * Records the result of a restarted build. A successful probe starts the
+	 * release of the held restarts, a failed one makes room for the next
+	 * probe.
+	 *
+	 * @param fullName
+	 *            full name of the job.
+	 * @param isSuccess
+	 *            true if the build succeeded.
+	 */
+	public synchronized void recordOutcome(String fullName, boolean isSuccess) {
+		for (Breaker breaker : this.breakers.values()) {
+			if (breaker.state != State.OPEN
+					|| breaker.probes.remove(fullName) == null) {
+				continue;
+			}
+			if (isSuccess) {
+				LOGGER.info("Probe " + fullName + " of circuit breaker "
+						+ breaker.key + " succeeded, releasing "
+						+ breaker.held.size() + " held restarts.");
+				breaker.state = State.RELEASING;
+				breaker.probes.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the probes of the open breakers started before a given time.
+	 *
+	 * @param startedBefore
+	 *            time in ms since epoch.
+	 * @return the full names of the jobs.
+	 */
+	public synchronized List<String> getProbes(long startedBefore) {
+		final List<String> probes = new ArrayList<String>();
+		for (Breaker breaker : this.breakers.values()) {
+			for (Map.Entry<String, Long> probe : breaker.probes.entrySet()) {
+				if (probe.getValue() < startedBefore
+						&& !probes.contains(probe.getKey())) {
+					probes.add(probe.getKey());
+				}
+			}
+		}
+		return probes;
+	}
+
+	/**
+	 * Gives up a probe that will never report an outcome, because it was not
+	 * scheduled or left the queue without a build. The next release replaces
+	 * it with a held restart.
+	 *
+	 * @param fullName
+	 *            full name of the job.
+	 */
+	public synchronized void cancelProbe(String fullName) {
+		for (Breaker breaker : this.breakers.values()) {
+			breaker.probes.remove(fullName);
+		}
+	}
+
+	/**
+	 * Returns the held restarts to schedule now. Called once per minute: open
+	 * breakers replace finished probes, releasing breakers release up to
+	 * threshold / window restarts and close when none are left.
+	 *
+	 * @param threshold
+	 *            hits within the window that open a breaker, 0 or less
+	 *            releases all held restarts.
+	 * @param windowMinutes
+	 *            length of the window in minutes.
+	 * @param now
+	 *            current time in ms since epoch.
+	 * @return the restarts, oldest first.
+	 */
+	public synchronized List<HeldRestart> release(int threshold,
+			int windowMinutes, long now) {
+		final List<HeldRestart> released = new ArrayList<HeldRestart>();
+		final int rate = Math.max(1, threshold / Math.max(1, windowMinutes));
+		for (Iterator<Breaker> i = this.breakers.values().iterator(); i
+				.hasNext();) {
+			final Breaker breaker = i.next();
+			if (threshold <= 0) {
+				released.addAll(breaker.held.values());
+				i.remove();
+				continue;
+			}
+			for (Iterator<Long> p = breaker.probes.values().iterator(); p
+					.hasNext();) {
+				if (p.next() < now - PROBE_TIMEOUT) {
+					p.remove();
+				}
+			}
+			if (breaker.state == State.OPEN) {
+				while (breaker.probes.size() < PROBES
+						&& !breaker.held.isEmpty()) {
+					final HeldRestart probe = breaker.poll();
+					breaker.probes.put(probe.fullName, now);
+					released.add(probe);
+				}
+			} else if (breaker.state == State.RELEASING) {
+				for (int n = 0; n < rate && !breaker.held.isEmpty(); n++) {
+					released.add(breaker.poll());
+				}
+				if (breaker.held.isEmpty()) {
+					LOGGER.info("Circuit breaker " + breaker.key + " closed.");
+					breaker.state = State.CLOSED;
+					breaker.hits.clear();
+				}
+			}
+			breaker.expireHits(now, TimeUnit.MINUTES.toMillis(windowMinutes));
+			if (breaker.state == State.CLOSED && breaker.hits.isEmpty()) {
+				i.remove();
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Returns the breakers that are not closed.
+	 *
+	 * @return copies of the breakers.
+	 */
+	public synchronized List<Breaker> getOpenBreakers() {
+		final List<Breaker> open = new ArrayList<Breaker>();
+		for (Breaker breaker : this.breakers.values()) {
+			if (breaker.state != State.CLOSED) {
+				open.add(new Breaker(breaker));
+			}
+		}
+		return open;
+	}
+}
@@ -0,0 +1,315 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cron sweep over all jobs, split into shards. Every job belongs to the
+ * shard given by a stable hash of its full name, and one shard is swept per
+ * minute, starting with the minute the cron time was hit. With one shard the
+ * whole sweep happens in that minute, as it always did.
+ *
+ * The triggers due and whether the unchanged restart is due are fixed when
+ * the sweep starts, so every shard is checked against the same triggers. A
+ * cron time hit before the sweep is done adds its triggers to the sweep,
+ * which then goes on from the shard it is at until every shard was swept
+ * once more, so the shards already swept are checked against the new
+ * triggers too. Triggers that are due again while they are still being
+ * swept add nothing, so a trigger due every minute does not keep a sweep
+ * from reaching its last shard.
+ *
+ * The jobs of the current shard that were already evaluated are remembered
+ * with their verdict, so a shard that could not be finished in its minute is
+ * continued in the next one, also after a restart of Jenkins through
+ * {@link SweepCheckpoint}.
+ */
+final class CronSweep {
+
+	/**
+	 * The periodic triggers due since the sweep started.
+	 */
+	private final List<PeriodicTrigger> dueTriggers;
+	/**
+	 * True if the unchanged restart was due since the sweep started.
+	 */
+	private boolean isUnchangedDue;
+	/**
+	 * Number of shards.
+	 */
+	private final int shards;
+	/**
+	 * Start of the sweep in ms since epoch.
+	 */
+	private final long startTime;
+	/**
+	 * The next shard to sweep.
+	 */
+	private int nextShard;
+	/**
+	 * Number of shards still to sweep, the next one included.
+	 */
+	private int shardsLeft;
+	/**
+	 * Verdicts of the jobs of the next shard evaluated so far, by full name.
+	 */
+	private final Map<String, String> evaluated = new LinkedHashMap<String, String>();
+	/**
+	 * Full names of the restartable jobs, collected once per sweep. Null
+	 * until they were collected, also for a sweep continued after a restart
+	 * of Jenkins.
+	 */
+	private List<String> jobs;
+
+	/**
+	 * Verdict of a job that is not restarted.
+	 */
+	static final String NO_RESTART = "-";
+	/**
+	 * Verdict of a job restarted by the unchanged restart.
+	 */
+	static final String UNCHANGED_RESTART = "u";
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dueTriggers
+	 *            the periodic triggers due.
+	 * @param isUnchangedDue
+	 *            true if the unchanged restart is due.
+	 * @param shards
+	 *            number of shards, at least 1.
+	 */
+	CronSweep(List<PeriodicTrigger> dueTriggers, boolean isUnchangedDue,
+			int shards) {
+		this(dueTriggers, isUnchangedDue, shards, System.currentTimeMillis(),
+				0, Math.max(1, shards));
+	}
+
+	/**
+	 * Constructor for a sweep that is continued.
+	 *
+	 * @param dueTriggers
+	 *            the periodic triggers due.
+	 * @param isUnchangedDue
+	 *            true if the unchanged restart is due.
+	 * @param shards
+	 *            number of shards, at least 1.
+	 * @param startTime
+	 *            start of the sweep in ms since epoch.
+	 * @param nextShard
+	 *            the next shard to sweep.
+	 * @param shardsLeft
+	 *            number of shards still to sweep, the next one included.
+	 */
+	CronSweep(List<PeriodicTrigger> dueTriggers, boolean isUnchangedDue,
+			int shards, long startTime, int nextShard, int shardsLeft) {
+		this.dueTriggers = new ArrayList<PeriodicTrigger>(dueTriggers);
+		this.isUnchangedDue = isUnchangedDue;
+		this.shards = Math.max(1, shards);
+		this.startTime = startTime;
+		this.nextShard = nextShard;
+		this.shardsLeft = shardsLeft;
+	}
+
+	/**
+	 * Adds the triggers due now to this sweep. Used when a cron time is hit
+	 * before this sweep is done. If any of them is new to the sweep, the
+	 * current shard is evaluated again from its start and the sweep goes on
+	 * until every shard was swept once more. The number of shards is kept,
+	 * so every job stays in its shard.
+	 *
+	 * @param newTriggers
+	 *            the periodic triggers due now.
+	 * @param isUnchangedDueNow
+	 *            true if the unchanged restart is due now.
+	 * @return true if the sweep was extended.
+	 */
+	boolean merge(List<PeriodicTrigger> newTriggers,
+			boolean isUnchangedDueNow) {
+		boolean isExtended = isUnchangedDueNow && !this.isUnchangedDue;
+		this.isUnchangedDue = this.isUnchangedDue || isUnchangedDueNow;
+		for (PeriodicTrigger perTri : newTriggers) {
+			if (!this.dueTriggers.contains(perTri)) {
+				this.dueTriggers.add(perTri);
+				isExtended = true;
+			}
+		}
+		if (isExtended) {
+			this.shardsLeft = this.shards;
+			this.evaluated.clear();
+		}
+		return isExtended;
+	}
+
+	/**
+	 * Returns the shard of a job.
+	 *
+	 * @param fullName
+	 *            the full name of the job.
+	 * @param shards
+	 *            number of shards.
+	 * @return the shard, from 0 to shards - 1.
+	 */
+	static int getShard(String fullName, int shards) {
+		if (shards <= 1) {
+			return 0;
+		}
+		// String.hashCode() is specified, so a job keeps its shard across
+		// restarts of Jenkins
+		return (fullName.hashCode() & Integer.MAX_VALUE) % shards;
+	}
+
+	/**
+	 * Tells if a job belongs to the shard swept now.
+	 *
+	 * @param fullName
+	 *            the full name of the job.
+	 * @return true if the job is to be checked in this minute.
+	 */
+	boolean isInCurrentShard(String fullName) {
+		return getShard(fullName, this.shards) == this.nextShard;
+	}
+
+	/**
+	 * Tells if a job of the current shard was already evaluated.
+	 *
+	 * @param fullName
+	 *            the full name of the job.
+	 * @return true if it has a verdict.
+	 */
+	boolean isEvaluated(String fullName) {
+		return this.evaluated.containsKey(fullName);
+	}
+
+	/**
+	 * Records the verdict of a job of the current shard.
+	 *
+	 * @param fullName
+	 *            the full name of the job.
+	 * @param verdict
+	 *            {@link #NO_RESTART}, {@link #UNCHANGED_RESTART} or the
+	 *            verdict of the trigger, see {@link #getVerdict(int)}.
+	 */
+	void evaluated(String fullName, String verdict) {
+		this.evaluated.put(fullName, verdict);
+	}
+
+	/**
+	 * Returns the verdicts of the jobs of the current shard evaluated so far.
+	 *
+	 * @return the verdicts by full name, in the order evaluated.
+	 */
+	Map<String, String> getEvaluated() {
+		return Collections.unmodifiableMap(this.evaluated);
+	}
+
+	/**
+	 * Returns the full names of the restartable jobs of this sweep.
+	 *
+	 * @return the names in the order visited, null if they were not
+	 *         collected yet.
+	 */
+	List<String> getJobs() {
+		return this.jobs;
+	}
+
+	/**
+	 * Sets the full names of the restartable jobs of this sweep. Jobs
+	 * created after this are swept by the next sweep.
+	 *
+	 * @param fullNames
+	 *            the names in the order visited.
+	 */
+	void setJobs(Collection<String> fullNames) {
+		this.jobs = Collections
+				.unmodifiableList(new ArrayList<String>(fullNames));
+	}
+
+	/**
+	 * Returns the verdict of a job restarted by a due trigger.
+	 *
+	 * @param index
+	 *            the index of the trigger in {@link #getDueTriggers()}.
+	 * @return the verdict.
+	 */
+	static String getVerdict(int index) {
+		return "t" + index;
+	}
+
+	/**
+	 * Moves on to the next shard, after the current one was swept. After the
+	 * last shard the sweep goes on with the first, if shards are left.
+	 */
+	void advance() {
+		this.nextShard = (this.nextShard + 1) % this.shards;
+		this.shardsLeft--;
+		this.evaluated.clear();
+	}
+
+	/**
+	 * Tells if all shards were swept.
+	 *
+	 * @return true if the sweep is done.
+	 */
+	boolean isDone() {
+		return this.shardsLeft <= 0;
+	}
+
+	/**
+	 * Returns the next shard to sweep.
+	 *
+	 * @return the shard, from 0 to shards - 1.
+	 */
+	int getNextShard() {
+		return this.nextShard;
+	}
+
+	/**
+	 * Returns the number of shards still to sweep.
+	 *
+	 * @return the number, the next shard included.
+	 */
+	int getShardsLeft() {
+		return this.shardsLeft;
+	}
+
+	/**
+	 * Returns the start of the sweep.
+	 *
+	 * @return ms since epoch.
+	 */
+	long getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return the number as int.
+	 */
+	int getShards() {
+		return this.shards;
+	}
+
+	/**
+	 * Returns the periodic triggers due since the sweep started.
+	 *
+	 * @return the triggers.
+	 */
+	List<PeriodicTrigger> getDueTriggers() {
+		return Collections.unmodifiableList(this.dueTriggers);
+	}
+
+	/**
+	 * Tells if the unchanged restart was due since the sweep started.
+	 *
+	 * @return true if it was due.
+	 */
+	boolean isUnchangedDue() {
+		return this.isUnchangedDue;
+	}
+}
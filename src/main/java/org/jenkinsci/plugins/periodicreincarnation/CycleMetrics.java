@@ -0,0 +1,439 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Counters and timings collected during one cron cycle or one afterbuild
+ * evaluation. An instance is created at the beginning of the work, passed
+ * along to every place that reads logs or restarts projects and handed over
+ * to {@link ReincarnationMetrics} when the work is done.
+ */
+public class CycleMetrics {
+
+	/**
+	 * The kind of work these metrics were collected for.
+	 */
+	public enum Type {
+		/**
+		 * A cycle of {@link PeriodicReincarnation}.
+		 */
+		CRON,
+		/**
+		 * An evaluation of {@link AfterbuildReincarnation}.
+		 */
+		AFTERBUILD
+	}
+
+	/**
+	 * Kind of work.
+	 */
+	private final Type type;
+	/**
+	 * Start of the work in ms since epoch.
+	 */
+	private final long startTime;
+	/**
+	 * Start of the work as System.nanoTime(), used for the wall time.
+	 */
+	private final long startNanos;
+	/**
+	 * Wall time in ns, set by {@link #finish()} or summed up by
+	 * {@link #add(CycleMetrics)}. Negative while the work is running.
+	 */
+	private final AtomicLong wallTimeNanos = new AtomicLong(-1);
+	/**
+	 * Items visited while looking for candidates.
+	 */
+	private final AtomicLong itemsVisited = new AtomicLong();
+	/**
+	 * Item groups, e.g. folders, descended into while looking for candidates.
+	 */
+	private final AtomicLong itemGroupsVisited = new AtomicLong();
+	/**
+	 * Items reached a second time through another item group and skipped.
+	 */
+	private final AtomicLong duplicatesSkipped = new AtomicLong();
+	/**
+	 * Projects that passed the candidate checks.
+	 */
+	private final AtomicLong candidates = new AtomicLong();
+	/**
+	 * Projects ruled out by their permalinks, before their last build is
+	 * inspected.
+	 */
+	private final AtomicLong candidatesSkipped = new AtomicLong();
+	/**
+	 * Log files opened.
+	 */
+	private final AtomicLong logsOpened = new AtomicLong();
+	/**
+	 * Log bytes read.
+	 */
+	private final AtomicLong bytesScanned = new AtomicLong();
+	/**
+	 * Verdicts of regular expressions reused from an earlier scan of a build.
+	 */
+	private final AtomicLong verdictsReused = new AtomicLong();
+	/**
+	 * Lookups of Build Failure Analyzer causes.
+	 */
+	private final AtomicLong bfaLookups = new AtomicLong();
+	/**
+	 * Builds scheduled by the plugin.
+	 */
+	private final AtomicLong restartsScheduled = new AtomicLong();
+	/**
+	 * Node and master scripts executed.
+	 */
+	private final AtomicLong scriptsExecuted = new AtomicLong();
+	/**
+	 * Time in ns spent evaluating each trigger, keyed by
+	 * {@link PeriodicTrigger#getKey()}, which tells the trigger types apart.
+	 */
+	private final ConcurrentMap<String, AtomicLong> regExNanos = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Constructor. Starts the clock.
+	 *
+	 * @param type
+	 *            the kind of work that is measured.
+	 */
+	public CycleMetrics(Type type) {
+		this.type = type;
+		this.startTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Stops the clock.
+	 */
+	public void finish() {
+		this.wallTimeNanos.set(System.nanoTime() - this.startNanos);
+	}
+
+	/**
+	 * Counts a visited item.
+	 */
+	public void itemVisited() {
+		this.itemsVisited.incrementAndGet();
+	}
+
+	/**
+	 * Counts an item group descended into.
+	 */
+	public void itemGroupVisited() {
+		this.itemGroupsVisited.incrementAndGet();
+	}
+
+	/**
+	 * Counts an item that was reached a second time and skipped.
+	 */
+	public void duplicateSkipped() {
+		this.duplicatesSkipped.incrementAndGet();
+	}
+
+	/**
+	 * Counts a project that qualified as restart candidate.
+	 */
+	public void candidateFound() {
+		this.candidates.incrementAndGet();
+	}
+
+	/**
+	 * Counts a project ruled out by its permalinks.
+	 */
+	public void candidateSkipped() {
+		this.candidatesSkipped.incrementAndGet();
+	}
+
+	/**
+	 * Counts an opened log and the bytes read from it.
+	 *
+	 * @param bytes
+	 *            number of bytes read from the log.
+	 */
+	public void logScanned(long bytes) {
+		this.logsOpened.incrementAndGet();
+		this.bytesScanned.addAndGet(bytes);
+	}
+
+	/**
+	 * Counts a verdict reused instead of scanning a log again.
+	 */
+	public void verdictReused() {
+		this.verdictsReused.incrementAndGet();
+	}
+
+	/**
+	 * Counts a lookup of the failure causes of a build.
+	 */
+	public void bfaLookup() {
+		this.bfaLookups.incrementAndGet();
+	}
+
+	/**
+	 * Counts a scheduled build.
+	 */
+	public void restartScheduled() {
+		this.restartsScheduled.incrementAndGet();
+	}
+
+	/**
+	 * Counts an executed node or master script.
+	 */
+	public void scriptExecuted() {
+		this.scriptsExecuted.incrementAndGet();
+	}
+
+	/**
+	 * Adds time spent on evaluating a regular expression.
+	 *
+	 * @param regEx
+	 *            the key of the trigger, see {@link PeriodicTrigger#getKey()}.
+	 * @param nanos
+	 *            time spent in ns.
+	 */
+	public void addRegExTime(String regEx, long nanos) {
+		final String key = regEx == null ? "" : regEx;
+		AtomicLong counter = this.regExNanos.get(key);
+		if (counter == null) {
+			final AtomicLong newCounter = new AtomicLong();
+			counter = this.regExNanos.putIfAbsent(key, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.addAndGet(nanos);
+	}
+
+	/**
+	 * Returns the kind of work.
+	 *
+	 * @return the type.
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the start of the work.
+	 *
+	 * @return ms since epoch.
+	 */
+	public long getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * Returns the wall time of the work, or the time elapsed so far if it has
+	 * not finished yet.
+	 *
+	 * @return wall time in ms.
+	 */
+	public long getWallTimeMillis() {
+		final long finished = this.wallTimeNanos.get();
+		final long nanos = finished >= 0 ? finished
+				: System.nanoTime() - this.startNanos;
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * Returns the number of visited items.
+	 *
+	 * @return the number as long.
+	 */
+	public long getItemsVisited() {
+		return this.itemsVisited.get();
+	}
+
+	/**
+	 * Returns the number of item groups descended into.
+	 *
+	 * @return the number as long.
+	 */
+	public long getItemGroupsVisited() {
+		return this.itemGroupsVisited.get();
+	}
+
+	/**
+	 * Returns the number of items reached a second time and skipped.
+	 *
+	 * @return the number as long.
+	 */
+	public long getDuplicatesSkipped() {
+		return this.duplicatesSkipped.get();
+	}
+
+	/**
+	 * Returns the number of restart candidates.
+	 *
+	 * @return the number as long.
+	 */
+	public long getCandidates() {
+		return this.candidates.get();
+	}
+
+	/**
+	 * Returns the number of projects ruled out by their permalinks.
+	 *
+	 * @return the number as long.
+	 */
+	public long getCandidatesSkipped() {
+		return this.candidatesSkipped.get();
+	}
+
+	/**
+	 * Returns the number of opened logs.
+	 *
+	 * @return the number as long.
+	 */
+	public long getLogsOpened() {
+		return this.logsOpened.get();
+	}
+
+	/**
+	 * Returns the number of verdicts reused instead of scanning a log.
+	 *
+	 * @return the number as long.
+	 */
+	public long getVerdictsReused() {
+		return this.verdictsReused.get();
+	}
+
+	/**
+	 * Returns the number of log bytes read.
+	 *
+	 * @return the number as long.
+	 */
+	public long getBytesScanned() {
+		return this.bytesScanned.get();
+	}
+
+	/**
+	 * Returns the number of failure cause lookups.
+	 *
+	 * @return the number as long.
+	 */
+	public long getBfaLookups() {
+		return this.bfaLookups.get();
+	}
+
+	/**
+	 * Returns the number of scheduled builds.
+	 *
+	 * @return the number as long.
+	 */
+	public long getRestartsScheduled() {
+		return this.restartsScheduled.get();
+	}
+
+	/**
+	 * Returns the number of executed scripts.
+	 *
+	 * @return the number as long.
+	 */
+	public long getScriptsExecuted() {
+		return this.scriptsExecuted.get();
+	}
+
+	/**
+	 * Returns the time spent per trigger.
+	 *
+	 * @return sorted map from trigger key to time in ms.
+	 */
+	public Map<String, Long> getRegExTimeMillis() {
+		final Map<String, Long> result = new TreeMap<String, Long>();
+		for (Entry<String, AtomicLong> entry : this.regExNanos.entrySet()) {
+			result.put(entry.getKey(), TimeUnit.NANOSECONDS
+					.toMillis(entry.getValue().get()));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the time spent on one trigger.
+	 *
+	 * @param key
+	 *            the key of the trigger, see {@link PeriodicTrigger#getKey()}.
+	 * @return time in ms, 0 if the trigger was not evaluated.
+	 */
+	public long getRegExTimeMillis(String key) {
+		final AtomicLong nanos = this.regExNanos.get(key);
+		return nanos != null
+				? TimeUnit.NANOSECONDS.toMillis(nanos.get()) : 0;
+	}
+
+	/**
+	 * Forgets the time spent on triggers that are no longer configured.
+	 *
+	 * @param keys
+	 *            the keys of the configured triggers.
+	 */
+	void retainRegExTimes(Set<String> keys) {
+		this.regExNanos.keySet().retainAll(keys);
+	}
+
+	/**
+	 * Adds all counters of another instance to this one. Used to keep totals.
+	 *
+	 * @param other
+	 *            the metrics to add.
+	 */
+	public void add(CycleMetrics other) {
+		this.wallTimeNanos.compareAndSet(-1, 0);
+		this.wallTimeNanos.addAndGet(TimeUnit.MILLISECONDS
+				.toNanos(other.getWallTimeMillis()));
+		this.itemsVisited.addAndGet(other.getItemsVisited());
+		this.itemGroupsVisited.addAndGet(other.getItemGroupsVisited());
+		this.duplicatesSkipped.addAndGet(other.getDuplicatesSkipped());
+		this.candidates.addAndGet(other.getCandidates());
+		this.candidatesSkipped.addAndGet(other.getCandidatesSkipped());
+		this.logsOpened.addAndGet(other.getLogsOpened());
+		this.bytesScanned.addAndGet(other.getBytesScanned());
+		this.verdictsReused.addAndGet(other.getVerdictsReused());
+		this.bfaLookups.addAndGet(other.getBfaLookups());
+		this.restartsScheduled.addAndGet(other.getRestartsScheduled());
+		this.scriptsExecuted.addAndGet(other.getScriptsExecuted());
+		for (Entry<String, AtomicLong> entry : other.regExNanos.entrySet()) {
+			addRegExTime(entry.getKey(), entry.getValue().get());
+		}
+	}
+
+	/**
+	 * Returns all values as JSON object.
+	 *
+	 * @return the JSON representation.
+	 */
+	public JSONObject toJSON() {
+		final JSONObject json = new JSONObject();
+		json.put("type", this.type.name());
+		json.put("startTime", this.startTime);
+		json.put("wallTimeMillis", getWallTimeMillis());
+		json.put("itemsVisited", getItemsVisited());
+		json.put("itemGroupsVisited", getItemGroupsVisited());
+		json.put("duplicatesSkipped", getDuplicatesSkipped());
+		json.put("candidates", getCandidates());
+		json.put("candidatesSkipped", getCandidatesSkipped());
+		json.put("logsOpened", getLogsOpened());
+		json.put("bytesScanned", getBytesScanned());
+		json.put("verdictsReused", getVerdictsReused());
+		json.put("bfaLookups", getBfaLookups());
+		json.put("restartsScheduled", getRestartsScheduled());
+		json.put("scriptsExecuted", getScriptsExecuted());
+		final JSONObject regExTimes = new JSONObject();
+		for (Entry<String, Long> entry : getRegExTimeMillis().entrySet()) {
+			regExTimes.put(entry.getKey(), entry.getValue());
+		}
+		json.put("regExTimeMillis", regExTimes);
+		return json;
+	}
+}
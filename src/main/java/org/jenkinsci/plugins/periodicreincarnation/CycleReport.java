@@ -0,0 +1,234 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * What a cron cycle restarted: the number of restarts per cause and the first
+ * {@value #MAX_JOBS} jobs restarted. Its size is bounded however many jobs a
+ * cycle restarts, the log gets a single line from it and the last
+ * {@value #MAX_REPORTS} reports are kept for the management page.
+ */
+public final class CycleReport {
+
+	/**
+	 * Jobs listed per report.
+	 */
+	static final int MAX_JOBS = 100;
+	/**
+	 * Reports kept.
+	 */
+	static final int MAX_REPORTS = 10;
+	/**
+	 * Causes listed in the log line.
+	 */
+	static final int MAX_LOGGED_CAUSES = 10;
+
+	/**
+	 * The last reports, newest first.
+	 */
+	private static final Deque<CycleReport> REPORTS = new ArrayDeque<CycleReport>();
+
+	/**
+	 * Start of the report in ms.
+	 */
+	private final long time;
+	/**
+	 * Restarts by cause, in the order they were added.
+	 */
+	private final Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+	/**
+	 * The first jobs restarted.
+	 */
+	private final List<Restart> jobs = new ArrayList<Restart>();
+	/**
+	 * Number of restarts.
+	 */
+	private int restarts;
+
+	/**
+	 * A job restarted and why.
+	 */
+	public static final class Restart {
+		/**
+		 * Full name of the job.
+		 */
+		private final String job;
+		/**
+		 * The cause.
+		 */
+		private final String cause;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param job
+		 *            full name of the job.
+		 * @param cause
+		 *            the cause.
+		 */
+		Restart(String job, String cause) {
+			this.job = job;
+			this.cause = cause;
+		}
+
+		/**
+		 * Returns the full name of the job.
+		 *
+		 * @return the name.
+		 */
+		public String getJob() {
+			return this.job;
+		}
+
+		/**
+		 * Returns the cause of the restart.
+		 *
+		 * @return the cause.
+		 */
+		public String getCause() {
+			return this.cause;
+		}
+	}
+
+	/**
+	 * Constructor, starting a report now.
+	 */
+	public CycleReport() {
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param time
+	 *            start of the report in ms.
+	 */
+	CycleReport(long time) {
+		this.time = time;
+	}
+
+	/**
+	 * Adds a restart that was scheduled. Restarts held by a circuit breaker
+	 * or that could not be scheduled are not added.
+	 *
+	 * @param cause
+	 *            the cause.
+	 * @param job
+	 *            full name of the job.
+	 */
+	public void add(String cause, String job) {
+		final Integer count = this.counts.get(cause);
+		this.counts.put(cause, count != null ? count + 1 : 1);
+		this.restarts++;
+		if (this.jobs.size() < MAX_JOBS) {
+			this.jobs.add(new Restart(job, cause));
+		}
+	}
+
+	/**
+	 * Keeps a finished report, dropping the oldest one if there are
+	 * {@value #MAX_REPORTS}.
+	 *
+	 * @param report
+	 *            the report.
+	 */
+	public static void record(CycleReport report) {
+		synchronized (REPORTS) {
+			REPORTS.addFirst(report);
+			while (REPORTS.size() > MAX_REPORTS) {
+				REPORTS.removeLast();
+			}
+		}
+	}
+
+	/**
+	 * Returns the last reports.
+	 *
+	 * @return the reports, newest first.
+	 */
+	public static List<CycleReport> getRecent() {
+		synchronized (REPORTS) {
+			return new ArrayList<CycleReport>(REPORTS);
+		}
+	}
+
+	/**
+	 * Returns the start of the report.
+	 *
+	 * @return the date.
+	 */
+	public Date getTime() {
+		return new Date(this.time);
+	}
+
+	/**
+	 * Returns the number of restarts.
+	 *
+	 * @return the number.
+	 */
+	public int getRestarts() {
+		return this.restarts;
+	}
+
+	/**
+	 * Returns the restarts by cause.
+	 *
+	 * @return the counts, in the order the causes were added.
+	 */
+	public Map<String, Integer> getCounts() {
+		return Collections.unmodifiableMap(this.counts);
+	}
+
+	/**
+	 * Returns the first jobs restarted.
+	 *
+	 * @return at most {@value #MAX_JOBS} restarts.
+	 */
+	public List<Restart> getJobs() {
+		return Collections.unmodifiableList(this.jobs);
+	}
+
+	/**
+	 * Returns the number of restarts not listed.
+	 *
+	 * @return the number.
+	 */
+	public int getOmittedJobs() {
+		return this.restarts - this.jobs.size();
+	}
+
+	/**
+	 * Returns the report as a single log line.
+	 *
+	 * @return the line.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder line = new StringBuilder(
+				"Periodic Reincarnation cron restart summary: ")
+						.append(this.restarts)
+						.append(" projects scheduled for restart");
+		int causes = 0;
+		for (Entry<String, Integer> count : this.counts.entrySet()) {
+			line.append(causes == 0 ? " (" : ", ");
+			if (causes == MAX_LOGGED_CAUSES) {
+				line.append(this.counts.size() - causes).append(" more causes");
+				break;
+			}
+			line.append(count.getKey()).append(": ").append(count.getValue());
+			causes++;
+		}
+		if (causes > 0) {
+			line.append(')');
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,629 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Evaluates periodic triggers against builds without restarting anything,
+ * to find out whether a new trigger would match and what it costs before it
+ * is saved. The builds are evaluated in parallel with the matchers of the
+ * cron and afterbuild restarts, but nothing is recorded: no verdicts, no
+ * statistics, and a trigger exceeding its time budget is reported instead of
+ * disabled.
+ *
+ * The verdicts are written as they come in, one JSON object per line,
+ * followed by a summary line.
+ */
+public final class DryRun {
+
+	/**
+	 * Default number of threads evaluating builds.
+	 */
+	public static final int DEFAULT_THREADS = 4;
+	/**
+	 * Maximal number of threads evaluating builds.
+	 */
+	public static final int MAX_THREADS = 16;
+	/**
+	 * Maximal number of matched lines reported per log.
+	 */
+	public static final int MAX_MATCHES = 100;
+
+	/**
+	 * The triggers to evaluate.
+	 */
+	private final List<PeriodicTrigger> triggers;
+	/**
+	 * Number of threads evaluating builds.
+	 */
+	private final int threads;
+	/**
+	 * Matched lines reported per log, the scan stops after them.
+	 */
+	private final int matches;
+	/**
+	 * Time budget per line in ms.
+	 */
+	private final long timeout;
+	/**
+	 * Bytes that may be read before no more builds are evaluated, 0 means
+	 * unlimited.
+	 */
+	private long byteBudget;
+
+	/**
+	 * The totals of a trigger over all builds evaluated.
+	 */
+	private static final class Totals {
+		/**
+		 * Builds evaluated.
+		 */
+		private int evaluations;
+		/**
+		 * Builds matched, which would have been restarted.
+		 */
+		private int hits;
+		/**
+		 * Full names of the jobs with a matched build.
+		 */
+		private final Set<String> jobs = new HashSet<String>();
+		/**
+		 * Bytes read.
+		 */
+		private long bytes;
+		/**
+		 * Time of the evaluations in ns.
+		 */
+		private long nanos;
+
+		/**
+		 * Returns the totals as JSON.
+		 *
+		 * @return the JSON object.
+		 */
+		private JSONObject toJSON() {
+			final JSONObject json = new JSONObject();
+			json.put("evaluations", this.evaluations);
+			json.put("hits", this.hits);
+			json.put("jobs", this.jobs.size());
+			json.put("bytes", this.bytes);
+			json.put("millis", this.nanos / 1000000.0);
+			return json;
+		}
+	}
+
+	/**
+	 * The verdict of a trigger on a build.
+	 */
+	public static final class Verdict {
+		/**
+		 * Full name of the job.
+		 */
+		private final String job;
+		/**
+		 * Number of the build.
+		 */
+		private final int number;
+		/**
+		 * The trigger.
+		 */
+		private final PeriodicTrigger trigger;
+		/**
+		 * True if the trigger matched.
+		 */
+		private boolean isHit;
+		/**
+		 * Time of the evaluation in ns.
+		 */
+		private long nanos;
+		/**
+		 * Lines read.
+		 */
+		private long lines;
+		/**
+		 * Bytes read.
+		 */
+		private long bytes;
+		/**
+		 * Numbers of the matched lines, starting at 1.
+		 */
+		private final List<Long> matchedLines = new ArrayList<Long>();
+		/**
+		 * Why the trigger could not be evaluated, null if it was.
+		 */
+		private String error;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param build
+		 *            the build.
+		 * @param trigger
+		 *            the trigger.
+		 */
+		Verdict(Run<?, ?> build, PeriodicTrigger trigger) {
+			this.job = build.getParent().getFullName();
+			this.number = build.getNumber();
+			this.trigger = trigger;
+		}
+
+		/**
+		 * Returns the full name of the job.
+		 *
+		 * @return the name.
+		 */
+		public String getJob() {
+			return this.job;
+		}
+
+		/**
+		 * Returns the number of the build.
+		 *
+		 * @return the number.
+		 */
+		public int getNumber() {
+			return this.number;
+		}
+
+		/**
+		 * Returns the trigger.
+		 *
+		 * @return the trigger.
+		 */
+		public PeriodicTrigger getTrigger() {
+			return this.trigger;
+		}
+
+		/**
+		 * Tells if the trigger matched.
+		 *
+		 * @return true if it matched.
+		 */
+		public boolean isHit() {
+			return this.isHit;
+		}
+
+		/**
+		 * Returns the time of the evaluation.
+		 *
+		 * @return the time in ns.
+		 */
+		public long getNanos() {
+			return this.nanos;
+		}
+
+		/**
+		 * Returns the bytes read.
+		 *
+		 * @return the bytes.
+		 */
+		public long getBytes() {
+			return this.bytes;
+		}
+
+		/**
+		 * Returns why the trigger could not be evaluated.
+		 *
+		 * @return the message or null.
+		 */
+		public String getError() {
+			return this.error;
+		}
+
+		/**
+		 * Returns the verdict as JSON.
+		 *
+		 * @return the JSON object.
+		 */
+		public JSONObject toJSON() {
+			final JSONObject json = new JSONObject();
+			json.put("job", this.job);
+			json.put("build", this.number);
+			json.put("trigger", this.trigger.getKey());
+			json.put("type", this.trigger.getClass().getSimpleName());
+			json.put("hit", this.isHit);
+			json.put("millis", this.nanos / 1000000.0);
+			json.put("lines", this.lines);
+			json.put("bytes", this.bytes);
+			json.put("matchedLines", JSONArray.fromObject(this.matchedLines));
+			if (this.error != null) {
+				json.put("error", this.error);
+			}
+			return json;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param triggers
+	 *            the triggers to evaluate.
+	 * @param threads
+	 *            number of threads, limited to {@value #MAX_THREADS}.
+	 * @param matches
+	 *            matched lines reported per log, limited to
+	 *            {@value #MAX_MATCHES}; 1 scans a log as far as the restarts
+	 *            do.
+	 * @param timeout
+	 *            time budget per line in ms, 0 means unlimited.
+	 */
+	public DryRun(List<PeriodicTrigger> triggers, int threads, int matches,
+			long timeout) {
+		this.triggers = triggers;
+		this.threads = Math.max(1, Math.min(threads, MAX_THREADS));
+		this.matches = Math.max(1, Math.min(matches, MAX_MATCHES));
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Limits the bytes read. Once they are exceeded no more builds are
+	 * evaluated, the builds being evaluated are finished.
+	 *
+	 * @param bytes
+	 *            the budget, 0 means unlimited.
+	 */
+	public void setByteBudget(long bytes) {
+		this.byteBudget = Math.max(0, bytes);
+	}
+
+	/**
+	 * Selects the triggers of a dry run.
+	 *
+	 * @param config
+	 *            the global configuration.
+	 * @param keys
+	 *            keys of configured triggers, may be null.
+	 * @param regExprs
+	 *            regular expressions not configured yet, may be null.
+	 * @return the selected triggers, all enabled configured triggers if none
+	 *         was given.
+	 * @throws AbortException
+	 *             if a key does not belong to a configured trigger.
+	 */
+	public static List<PeriodicTrigger> selectTriggers(
+			PeriodicReincarnationGlobalConfiguration config, String[] keys,
+			String[] regExprs) throws AbortException {
+		final List<PeriodicTrigger> selected = new ArrayList<PeriodicTrigger>();
+		if (keys != null) {
+			for (String key : keys) {
+				selected.add(findTrigger(config, key));
+			}
+		}
+		if (regExprs != null) {
+			for (String regEx : regExprs) {
+				selected.add(new RegEx(regEx, "Dry run", "", "", ""));
+			}
+		}
+		if (selected.isEmpty()) {
+			for (PeriodicTrigger perTri : config.getPeriodicTriggers()) {
+				if (!perTri.isDisabled()) {
+					selected.add(perTri);
+				}
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Finds a configured trigger by its key.
+	 *
+	 * @param config
+	 *            the global configuration.
+	 * @param key
+	 *            the key.
+	 * @return the trigger.
+	 * @throws AbortException
+	 *             if there is no such trigger.
+	 */
+	private static PeriodicTrigger findTrigger(
+			PeriodicReincarnationGlobalConfiguration config, String key)
+			throws AbortException {
+		for (PeriodicTrigger perTri : config.getPeriodicTriggers()) {
+			if (perTri.getKey().equals(key)) {
+				return perTri;
+			}
+		}
+		throw new AbortException("No such trigger: " + key);
+	}
+
+	/**
+	 * Resolves the builds of a dry run. A job stands for its last completed
+	 * build, a specific build is given as {@code folder/job#42}.
+	 *
+	 * @param specs
+	 *            full names of jobs, optionally with a build number.
+	 * @return the builds.
+	 * @throws AbortException
+	 *             if a job or build does not exist.
+	 */
+	public static List<Run<?, ?>> resolveBuilds(List<String> specs)
+			throws AbortException {
+		final Jenkins jenkins = Jenkins.getInstance();
+		final List<Run<?, ?>> builds = new ArrayList<Run<?, ?>>();
+		for (String spec : specs) {
+			final int hash = spec.lastIndexOf('#');
+			final String name = hash >= 0 ? spec.substring(0, hash) : spec;
+			final Job<?, ?> job = jenkins != null
+					? jenkins.getItemByFullName(name, Job.class) : null;
+			if (job == null) {
+				throw new AbortException("No such job: " + name);
+			}
+			Run<?, ?> build;
+			if (hash < 0) {
+				build = job.getLastCompletedBuild();
+			} else {
+				try {
+					build = job.getBuildByNumber(
+							Integer.parseInt(spec.substring(hash + 1)));
+				} catch (NumberFormatException e) {
+					throw new AbortException("Not a build number: " + spec);
+				}
+			}
+			if (build == null) {
+				throw new AbortException("No such build: " + spec);
+			}
+			builds.add(build);
+		}
+		return builds;
+	}
+
+	/**
+	 * Evaluates the triggers against builds and writes the verdicts as they
+	 * come in, one JSON object per line, then a summary line with the totals
+	 * per trigger. Builds are taken from the iterator only as threads become
+	 * free, so it may load them lazily, and only while the byte budget
+	 * lasts.
+	 *
+	 * @param builds
+	 *            the builds.
+	 * @param out
+	 *            where the verdicts are written.
+	 * @return the summary.
+	 * @throws IOException
+	 *             if the verdicts cannot be written.
+	 * @throws InterruptedException
+	 *             if the dry run was interrupted.
+	 */
+	public JSONObject run(Iterator<? extends Run<?, ?>> builds, Writer out)
+			throws IOException, InterruptedException {
+		final long start = System.nanoTime();
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				this.threads,
+				new NamingThreadFactory(new DaemonThreadFactory(),
+						"Periodic Reincarnation dry run"));
+		int evaluations = 0;
+		int hits = 0;
+		int errors = 0;
+		long bytes = 0;
+		long nanos = 0;
+		final Map<String, Totals> totals = new LinkedHashMap<String, Totals>();
+		for (PeriodicTrigger perTri : this.triggers) {
+			totals.put(perTri.getKey(), new Totals());
+		}
+		try {
+			final CompletionService<List<Verdict>> completion = new ExecutorCompletionService<List<Verdict>>(
+					executor);
+			int pending = 0;
+			while (pending > 0 || builds.hasNext() && !isOverBudget(bytes)) {
+				// keep every thread busy without loading all builds at once
+				while (pending < 2 * this.threads && builds.hasNext()
+						&& !isOverBudget(bytes)) {
+					final Run<?, ?> build = builds.next();
+					completion.submit(new Callable<List<Verdict>>() {
+						@Override
+						public List<Verdict> call() {
+							return evaluate(build);
+						}
+					});
+					pending++;
+				}
+				final List<Verdict> verdicts = completion.take().get();
+				pending--;
+				for (Verdict verdict : verdicts) {
+					evaluations++;
+					hits += verdict.isHit ? 1 : 0;
+					errors += verdict.error != null ? 1 : 0;
+					bytes += verdict.bytes;
+					nanos += verdict.nanos;
+					final Totals trigger = totals
+							.get(verdict.trigger.getKey());
+					trigger.evaluations++;
+					trigger.bytes += verdict.bytes;
+					trigger.nanos += verdict.nanos;
+					if (verdict.isHit) {
+						trigger.hits++;
+						trigger.jobs.add(verdict.job);
+					}
+					out.write(verdict.toJSON().toString());
+					out.write('\n');
+				}
+				out.flush();
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Dry run failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		final JSONObject summary = new JSONObject();
+		summary.put("evaluations", evaluations);
+		summary.put("hits", hits);
+		summary.put("errors", errors);
+		summary.put("bytes", bytes);
+		summary.put("scanMillis", nanos / 1000000.0);
+		summary.put("wallMillis", (System.nanoTime() - start) / 1000000.0);
+		summary.put("budgetExhausted", isOverBudget(bytes));
+		final JSONObject byTrigger = new JSONObject();
+		for (Map.Entry<String, Totals> trigger : totals.entrySet()) {
+			byTrigger.put(trigger.getKey(), trigger.getValue().toJSON());
+		}
+		summary.put("triggers", byTrigger);
+		final JSONObject line = new JSONObject();
+		line.put("summary", summary);
+		out.write(line.toString());
+		out.write('\n');
+		out.flush();
+		return summary;
+	}
+
+	/**
+	 * Tells if the byte budget is exceeded.
+	 *
+	 * @param bytes
+	 *            the bytes read so far.
+	 * @return true if no more builds are to be evaluated.
+	 */
+	private boolean isOverBudget(long bytes) {
+		return this.byteBudget > 0 && bytes >= this.byteBudget;
+	}
+
+	/**
+	 * Evaluates all triggers against a build.
+	 *
+	 * @param build
+	 *            the build.
+	 * @return the verdicts in the order of the triggers.
+	 */
+	List<Verdict> evaluate(Run<?, ?> build) {
+		final List<Verdict> verdicts = new ArrayList<Verdict>();
+		// the flow graph of a Pipeline is walked once for all triggers
+		final PipelineSupport.FlowGraph graph = new PipelineSupport.FlowGraph(
+				build);
+		for (PeriodicTrigger perTri : this.triggers) {
+			verdicts.add(evaluate(build, perTri, graph));
+		}
+		return verdicts;
+	}
+
+	/**
+	 * Evaluates a trigger against a build, the way the restarts do.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param perTri
+	 *            the trigger.
+	 * @param graph
+	 *            the flow graph of the build, shared by all triggers.
+	 * @return the verdict.
+	 */
+	Verdict evaluate(Run<?, ?> build, PeriodicTrigger perTri,
+			PipelineSupport.FlowGraph graph) {
+		final Verdict verdict = new Verdict(build, perTri);
+		final long start = System.nanoTime();
+		try {
+			if (perTri.getClass() == RegEx.class) {
+				scanLog(build, graph,
+						((RegEx) perTri).getLineMatcher(this.timeout), verdict);
+			} else if (perTri.getClass() == WorkspaceRegEx.class) {
+				scanWorkspace(build, (WorkspaceRegEx) perTri, verdict);
+			} else if (perTri.getClass() == TestResultTrigger.class) {
+				verdict.isHit = ((TestResultTrigger) perTri)
+						.matches(FailedTestIndex.of(build), this.timeout);
+			} else if (perTri.getClass() == BuildFailureObject.class) {
+				verdict.isHit = Utils.isBfaAvailable() && Utils
+						.matchesFailureCause(build, (BuildFailureObject) perTri);
+			}
+		} catch (AbortException e) {
+			verdict.error = e.getMessage();
+		} catch (RegExTimeoutException e) {
+			verdict.error = "Exceeded the time budget of " + this.timeout
+					+ " ms on a line";
+		} catch (IOException e) {
+			verdict.error = "Cannot be read: " + e.getMessage();
+		} catch (InterruptedException e) {
+			verdict.error = "Interrupted";
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			// one broken build or trigger does not end the dry run
+			verdict.error = "Failed: " + e;
+		} finally {
+			verdict.nanos = System.nanoTime() - start;
+		}
+		return verdict;
+	}
+
+	/**
+	 * Searches the log of a build with the scan of the restarts, see
+	 * {@link Utils#scanLog}, so a Pipeline is searched flow node by flow
+	 * node as well. The scan goes on after a hit until the matched lines to
+	 * report are found.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param graph
+	 *            the flow graph of the build.
+	 * @param matcher
+	 *            the matcher.
+	 * @param verdict
+	 *            receives the hit, the matched lines and the bytes read.
+	 * @throws IOException
+	 *             if the log cannot be read.
+	 */
+	private void scanLog(Run<?, ?> build, PipelineSupport.FlowGraph graph,
+			LineMatcher matcher, final Verdict verdict) throws IOException {
+		final ScanResult result = Utils.scanLog(build, graph, matcher,
+				new MatchCallback() {
+					@Override
+					public boolean matched(long line) {
+						verdict.matchedLines.add(line);
+						return verdict.matchedLines.size() < DryRun.this.matches;
+					}
+				}, null);
+		verdict.isHit = result.isHit();
+		verdict.lines = result.getLines();
+		verdict.bytes = result.getBytes();
+	}
+
+	/**
+	 * Searches files in the workspace of a build on its agent.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param regEx
+	 *            the reg ex with the files.
+	 * @param verdict
+	 *            the verdict to fill in.
+	 * @throws IOException
+	 *             if the workspace cannot be searched.
+	 * @throws InterruptedException
+	 *             if the search was interrupted.
+	 */
+	private void scanWorkspace(Run<?, ?> build, WorkspaceRegEx regEx,
+			Verdict verdict) throws IOException, InterruptedException {
+		if (!(build instanceof AbstractBuild)) {
+			return;
+		}
+		final FilePath workspace = ((AbstractBuild<?, ?>) build)
+				.getWorkspace();
+		if (workspace == null || workspace.getChannel() == null) {
+			throw new AbortException("Workspace is not available");
+		}
+		final ScanResult result = workspace.act(regEx.getScan(this.timeout));
+		verdict.isHit = result.isHit();
+		verdict.lines = result.getLines();
+		verdict.bytes = result.getBytes();
+	}
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.model.Jenkins;
+
+/**
+ * CLI command evaluating triggers against jobs or builds without restarting
+ * them, the same as {@code /manage/periodic-reincarnation/dryRun}:
+ *
+ * <pre>
+ * java -jar jenkins-cli.jar periodic-reincarnation-dry-run -r 'Connection reset' folder/job folder/other#42
+ * </pre>
+ */
+@Extension
+public class DryRunCommand extends CLICommand {
+
+	/**
+	 * Jobs, or builds as {@code folder/job#42}.
+	 */
+	@Argument(metaVar = "JOB", usage = "Full name of a job, or job#number for a build.", required = true, multiValued = true)
+	public List<String> jobs = new ArrayList<String>();
+
+	/**
+	 * Keys of configured triggers.
+	 */
+	@Option(name = "-t", metaVar = "KEY", usage = "Key of a configured trigger, e.g. 'RegEx:Connection reset'. Repeatable.")
+	public List<String> triggers = new ArrayList<String>();
+
+	/**
+	 * Regular expressions not configured yet.
+	 */
+	@Option(name = "-r", metaVar = "REGEX", usage = "Regular expression to try before configuring it. Repeatable.")
+	public List<String> regExprs = new ArrayList<String>();
+
+	/**
+	 * Number of threads.
+	 */
+	@Option(name = "-p", metaVar = "THREADS", usage = "Number of builds evaluated in parallel.")
+	public int threads = DryRun.DEFAULT_THREADS;
+
+	/**
+	 * Matched lines reported per log.
+	 */
+	@Option(name = "-m", metaVar = "MATCHES", usage = "Matched lines reported per log, 1 scans as far as a restart does.")
+	public int matches = 1;
+
+	@Override
+	public String getName() {
+		return "periodic-reincarnation-dry-run";
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Evaluates Periodic Reincarnation triggers against builds "
+				+ "without restarting them.";
+	}
+
+	@Override
+	protected int run() throws Exception {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null) {
+			throw new AbortException("No configuration available");
+		}
+		final DryRun dryRun = new DryRun(
+				DryRun.selectTriggers(config,
+						this.triggers.toArray(new String[0]),
+						this.regExprs.toArray(new String[0])),
+				this.threads, this.matches, config.getRegExTimeout());
+		final Writer out = new OutputStreamWriter(this.stdout, "UTF-8");
+		dryRun.run(DryRun.resolveBuilds(this.jobs).iterator(), out);
+		return 0;
+	}
+}
@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import hudson.model.Run;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.tasks.test.TestResult;
+
+/**
+ * The failed tests of a build, read once from its test report and cached
+ * while the build is in memory. Checking a {@link TestResultTrigger} against
+ * it takes a hash lookup per test name instead of a scan of the console log.
+ */
+public final class FailedTestIndex {
+
+	/**
+	 * Index of a build without test report or failed tests.
+	 */
+	static final FailedTestIndex EMPTY = new FailedTestIndex(
+			Collections.<String, String> emptyMap());
+
+	/**
+	 * The indexes of the builds in memory.
+	 */
+	private static final Map<Run<?, ?>, FailedTestIndex> INDEXES = new WeakHashMap<Run<?, ?>, FailedTestIndex>();
+
+	/**
+	 * Error details by full name of the failed test, in report order.
+	 */
+	private final Map<String, String> errors;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param errors
+	 *            error details by full name of the failed test.
+	 */
+	FailedTestIndex(Map<String, String> errors) {
+		this.errors = Collections.unmodifiableMap(errors);
+	}
+
+	/**
+	 * Returns the index of the failed tests of a completed build.
+	 *
+	 * @param build
+	 *            the build.
+	 * @return the index, empty if the build has no test report.
+	 */
+	public static FailedTestIndex of(Run<?, ?> build) {
+		synchronized (INDEXES) {
+			final FailedTestIndex index = INDEXES.get(build);
+			if (index != null) {
+				return index;
+			}
+		}
+		final AbstractTestResultAction<?> action = build
+				.getAction(AbstractTestResultAction.class);
+		if (action == null || action.getFailCount() == 0) {
+			return EMPTY;
+		}
+		final Map<String, String> errors = new LinkedHashMap<String, String>();
+		for (TestResult test : action.getFailedTests()) {
+			final String details = test.getErrorDetails();
+			errors.put(test.getFullName(), details != null ? details : "");
+		}
+		final FailedTestIndex index = new FailedTestIndex(errors);
+		if (!build.isBuilding()) {
+			synchronized (INDEXES) {
+				INDEXES.put(build, index);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Tells if a test failed.
+	 *
+	 * @param fullName
+	 *            full name of the test, class and method.
+	 * @return true if it failed.
+	 */
+	public boolean hasFailed(String fullName) {
+		return this.errors.containsKey(fullName);
+	}
+
+	/**
+	 * Returns the failed tests.
+	 *
+	 * @return error details by full name of the test, in report order.
+	 */
+	public Map<String, String> getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Tells if no test failed.
+	 *
+	 * @return true if there is no failed test.
+	 */
+	public boolean isEmpty() {
+		return this.errors.isEmpty();
+	}
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+/**
+ * A CharSequence that stops a regular expression match once a deadline has
+ * passed. java.util.regex reads its input only through charAt, so counting
+ * these calls and looking at the clock every few thousand of them bounds the
+ * time a backtracking pattern can spend on a single line.
+ */
+final class InterruptibleCharSequence implements CharSequence {
+
+	/**
+	 * Number of reads between two looks at the clock, a power of two.
+	 */
+	private static final int CHECK_INTERVAL = 4096;
+
+	/**
+	 * The wrapped characters.
+	 */
+	private final CharSequence inner;
+	/**
+	 * Deadline as System.nanoTime().
+	 */
+	private final long deadline;
+	/**
+	 * Reads so far.
+	 */
+	private int reads;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param inner
+	 *            the wrapped characters.
+	 * @param deadline
+	 *            deadline as System.nanoTime().
+	 */
+	InterruptibleCharSequence(CharSequence inner, long deadline) {
+		this.inner = inner;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if ((++this.reads & (CHECK_INTERVAL - 1)) == 0
+				&& System.nanoTime() - this.deadline > 0) {
+			throw new RegExTimeoutException(
+					"RegEx match exceeded its time budget");
+		}
+		return this.inner.charAt(index);
+	}
+
+	@Override
+	public int length() {
+		return this.inner.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new InterruptibleCharSequence(this.inner.subSequence(start, end),
+				this.deadline);
+	}
+
+	@Override
+	public String toString() {
+		return this.inner.toString();
+	}
+}
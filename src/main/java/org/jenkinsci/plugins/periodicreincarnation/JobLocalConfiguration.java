@@ -1,9 +1,9 @@
 package org.jenkinsci.plugins.periodicreincarnation;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import hudson.Extension;
-import hudson.model.AbstractProject;
 import hudson.model.Job;
 import hudson.model.JobProperty;
 import hudson.model.JobPropertyDescriptor;
@@ -79,6 +79,60 @@ public class JobLocalConfiguration extends JobProperty<Job<?, ?>> {
 		return this.localValues.maxDepth;
 	}
 
+	/**
+	 * Returns the delay of the first afterbuild restart as entered.
+	 * 
+	 * @return backoffBase value, blank to use the global one.
+	 */
+	public String getBackoffBase() {
+		return this.localValues != null ? this.localValues.backoffBase : null;
+	}
+
+	/**
+	 * Returns the factor of the afterbuild restart delay as entered.
+	 * 
+	 * @return backoffMultiplier value, blank to use the global one.
+	 */
+	public String getBackoffMultiplier() {
+		return this.localValues != null ? this.localValues.backoffMultiplier
+				: null;
+	}
+
+	/**
+	 * Returns the maximal afterbuild restart delay as entered.
+	 * 
+	 * @return backoffCap value, blank to use the global one.
+	 */
+	public String getBackoffCap() {
+		return this.localValues != null ? this.localValues.backoffCap : null;
+	}
+
+	/**
+	 * Returns the jitter of the afterbuild restart delay as entered.
+	 * 
+	 * @return backoffJitter value, blank to use the global one.
+	 */
+	public String getBackoffJitter() {
+		return this.localValues != null ? this.localValues.backoffJitter
+				: null;
+	}
+
+	/**
+	 * Returns the policy for the delay of afterbuild restarts of this job.
+	 * 
+	 * @param global
+	 *            the global policy, used for the values not set locally.
+	 * @return the policy.
+	 */
+	public BackoffPolicy getBackoffPolicy(BackoffPolicy global) {
+		if (this.localValues == null) {
+			return global;
+		}
+		return global.override(this.localValues.backoffBase,
+				this.localValues.backoffMultiplier,
+				this.localValues.backoffCap, this.localValues.backoffJitter);
+	}
+
 	/**
 	 * Returns isLocallyConfigured.
 	 * 
@@ -132,13 +186,16 @@ public class JobLocalConfiguration extends JobProperty<Job<?, ?>> {
 		}
 
 		/**
-		 * Certainly does something.
+		 * The local configuration is available for every kind of job,
+		 * Pipelines included.
 		 * 
-		 * @param item
-		 *            Some item, I guess
+		 * @param jobType
+		 *            the type of the job.
 		 * @return true
 		 */
-		public boolean isApplicable(AbstractProject<?, ?> item) {
+		@SuppressWarnings("rawtypes")
+		@Override
+		public boolean isApplicable(Class<? extends Job> jobType) {
 			return true;
 		}
 	}
@@ -163,6 +220,24 @@ public class JobLocalConfiguration extends JobProperty<Job<?, ?>> {
 		 * Tells if this job is deactivated for global reincarnations.
 		 */
 		private boolean isLocallyDeactivated;
+		/**
+		 * Delay of the first afterbuild restart in s, blank for the global
+		 * value.
+		 */
+		private String backoffBase;
+		/**
+		 * Factor the delay grows by, blank for the global value.
+		 */
+		private String backoffMultiplier;
+		/**
+		 * Maximal delay in s, blank for the global value.
+		 */
+		private String backoffCap;
+		/**
+		 * Maximal random variation of the delay in percent, blank for the
+		 * global value.
+		 */
+		private String backoffJitter;
 
 		/**
 		 * Constructor.
@@ -179,5 +254,49 @@ public class JobLocalConfiguration extends JobProperty<Job<?, ?>> {
 			this.maxDepth = maxDepth;
 			this.isLocallyDeactivated = isLocallyDeactivated;
 		}
+
+		/**
+		 * Sets the delay of the first afterbuild restart.
+		 * 
+		 * @param backoffBase
+		 *            the delay in s, blank for the global value.
+		 */
+		@DataBoundSetter
+		public void setBackoffBase(String backoffBase) {
+			this.backoffBase = backoffBase;
+		}
+
+		/**
+		 * Sets the factor the delay grows by.
+		 * 
+		 * @param backoffMultiplier
+		 *            the factor, blank for the global value.
+		 */
+		@DataBoundSetter
+		public void setBackoffMultiplier(String backoffMultiplier) {
+			this.backoffMultiplier = backoffMultiplier;
+		}
+
+		/**
+		 * Sets the maximal delay.
+		 * 
+		 * @param backoffCap
+		 *            the delay in s, blank for the global value.
+		 */
+		@DataBoundSetter
+		public void setBackoffCap(String backoffCap) {
+			this.backoffCap = backoffCap;
+		}
+
+		/**
+		 * Sets the maximal random variation of the delay.
+		 * 
+		 * @param backoffJitter
+		 *            the variation in percent, blank for the global value.
+		 */
+		@DataBoundSetter
+		public void setBackoffJitter(String backoffJitter) {
+			this.backoffJitter = backoffJitter;
+		}
 	}
 }
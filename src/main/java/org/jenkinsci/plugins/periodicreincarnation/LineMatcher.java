@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Matches single log lines against a compiled regular expression. Patterns
+ * without any meta characters are searched with String.indexOf, which runs in
+ * linear time. All other patterns run with a time budget per line and throw
+ * {@link RegExTimeoutException} when they exceed it.
+ */
+public class LineMatcher {
+
+	/**
+	 * Characters with a special meaning in java.util.regex.
+	 */
+	private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+	/**
+	 * The compiled pattern.
+	 */
+	private final Pattern pattern;
+	/**
+	 * The pattern as plain text if it contains no meta characters, null
+	 * otherwise.
+	 */
+	private final String literal;
+	/**
+	 * Time budget per line in ns, 0 or less means unlimited.
+	 */
+	private final long budgetNanos;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param pattern
+	 *            the compiled pattern.
+	 * @param budgetMillis
+	 *            time budget per line in ms, 0 or less means unlimited.
+	 */
+	public LineMatcher(Pattern pattern, long budgetMillis) {
+		this.pattern = pattern;
+		this.literal = toLiteral(pattern);
+		this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+	}
+
+	/**
+	 * Returns the pattern as plain text if it can be searched without the
+	 * regular expression engine.
+	 * 
+	 * @param pattern
+	 *            the pattern.
+	 * @return the text or null.
+	 */
+	private static String toLiteral(Pattern pattern) {
+		if (pattern.flags() != 0) {
+			return null;
+		}
+		final String source = pattern.pattern();
+		if (source.isEmpty()) {
+			return null;
+		}
+		for (int i = 0; i < source.length(); i++) {
+			if (META_CHARACTERS.indexOf(source.charAt(i)) >= 0) {
+				return null;
+			}
+		}
+		return source;
+	}
+
+	/**
+	 * Returns the compiled pattern.
+	 * 
+	 * @return the pattern.
+	 */
+	public Pattern getPattern() {
+		return this.pattern;
+	}
+
+	/**
+	 * Returns the time budget per line.
+	 * 
+	 * @return the budget in ms, 0 or less means unlimited.
+	 */
+	public long getBudgetMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.budgetNanos);
+	}
+
+	/**
+	 * Tells if the pattern is searched in linear time.
+	 * 
+	 * @return true if the pattern is plain text.
+	 */
+	public boolean isLiteral() {
+		return this.literal != null;
+	}
+
+	/**
+	 * Searches the pattern in a line.
+	 * 
+	 * @param line
+	 *            the line.
+	 * @return true if the pattern was found.
+	 * @throws RegExTimeoutException
+	 *             if the search exceeded the time budget.
+	 */
+	public boolean find(String line) {
+		if (this.literal != null) {
+			return line.indexOf(this.literal) >= 0;
+		}
+		if (this.budgetNanos <= 0) {
+			return this.pattern.matcher(line).find();
+		}
+		return this.pattern.matcher(new InterruptibleCharSequence(line,
+				System.nanoTime() + this.budgetNanos)).find();
+	}
+}
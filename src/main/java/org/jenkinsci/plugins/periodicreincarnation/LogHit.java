@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.Serializable;
+
+/**
+ * Where in a Pipeline a log hit was found: the flow node whose log matched,
+ * the stage and parallel branch around it and the agent it ran on.
+ */
+public class LogHit implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Id of the flow node whose log matched.
+	 */
+	private final String nodeId;
+	/**
+	 * Name of the outermost stage around the node, null if there is none.
+	 */
+	private final String stage;
+	/**
+	 * Name of the innermost parallel branch around the node, null if there is
+	 * none.
+	 */
+	private final String branch;
+	/**
+	 * Name of the agent the node ran on, empty for the master, null if
+	 * unknown.
+	 */
+	private final String agent;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param nodeId
+	 *            id of the flow node whose log matched.
+	 * @param stage
+	 *            name of the outermost stage or null.
+	 * @param branch
+	 *            name of the innermost parallel branch or null.
+	 * @param agent
+	 *            name of the agent, empty for the master or null.
+	 */
+	public LogHit(String nodeId, String stage, String branch, String agent) {
+		this.nodeId = nodeId;
+		this.stage = stage;
+		this.branch = branch;
+		this.agent = agent;
+	}
+
+	/**
+	 * Returns the id of the flow node whose log matched.
+	 *
+	 * @return the id.
+	 */
+	public String getNodeId() {
+		return this.nodeId;
+	}
+
+	/**
+	 * Returns the name of the outermost stage around the node.
+	 *
+	 * @return the name or null.
+	 */
+	public String getStage() {
+		return this.stage;
+	}
+
+	/**
+	 * Returns the name of the innermost parallel branch around the node.
+	 *
+	 * @return the name or null.
+	 */
+	public String getBranch() {
+		return this.branch;
+	}
+
+	/**
+	 * Returns the name of the agent the node ran on.
+	 *
+	 * @return the name, empty for the master, null if unknown.
+	 */
+	public String getAgent() {
+		return this.agent;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("flow node " + this.nodeId);
+		if (this.stage != null) {
+			sb.append(", stage ").append(this.stage);
+		}
+		if (this.branch != null) {
+			sb.append(", branch ").append(this.branch);
+		}
+		if (this.agent != null) {
+			sb.append(", agent ")
+					.append(this.agent.isEmpty() ? "master" : this.agent);
+		}
+		return sb.toString();
+	}
+}
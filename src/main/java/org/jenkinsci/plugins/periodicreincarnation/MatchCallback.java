@@ -0,0 +1,38 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+/**
+ * Told about every line that matched while a log is scanned, and decides
+ * whether the scan goes on. The restarts stop at the first hit, a dry run
+ * collects several matched lines per log.
+ */
+interface MatchCallback {
+
+	/**
+	 * Stops the scan at the first hit.
+	 */
+	MatchCallback FIRST_HIT = new MatchCallback() {
+		@Override
+		public boolean matched(long line) {
+			return false;
+		}
+	};
+
+	/**
+	 * Scans the whole log.
+	 */
+	MatchCallback ALL_HITS = new MatchCallback() {
+		@Override
+		public boolean matched(long line) {
+			return true;
+		}
+	};
+
+	/**
+	 * Called for a line that matched.
+	 *
+	 * @param line
+	 *            number of the line among the lines read, starting at 1.
+	 * @return true to go on scanning, false to stop.
+	 */
+	boolean matched(long line);
+}
@@ -1,26 +1,33 @@
 package org.jenkinsci.plugins.periodicreincarnation;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.cloudbees.hudson.plugins.folder.Folder;
-
 import antlr.ANTLRException;
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.maven.MavenModule;
-import hudson.model.AbstractProject;
 import hudson.model.AsyncPeriodicWork;
 import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
 import hudson.model.Result;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.scheduler.CronTab;
 import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
 
 /**
  * Main class of the periodic reincarnation plug-in. Method execute is called
@@ -52,11 +59,12 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 	 * For every periodicTrigger holds the projects being restarted because of
 	 * it.
 	 */
-	private HashMap<PeriodicTrigger, ArrayList<AbstractProject<?, ?>>> periodicTriggerRestartList;
+	private HashMap<PeriodicTrigger, ArrayList<Job<?, ?>>> periodicTriggerRestartList;
 
 	/**
-	 * Set with all projects scheduled for restart. Used to determine if a
-	 * project is already scheduled for restart.
+	 * Full names of all projects scheduled for restart. Used to determine if a
+	 * project is already scheduled for restart. Full names are unique, unlike
+	 * display names.
 	 */
 	private Set<String> scheduledProjects;
 
@@ -65,7 +73,34 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 	 * between the last builds and the last failed, but the second last was a
 	 * success.
 	 */
-	private ArrayList<AbstractProject<?, ?>> unchangedRestartProjects;
+	private ArrayList<Job<?, ?>> unchangedRestartProjects;
+
+	/**
+	 * Metrics of the current cron cycle.
+	 */
+	private CycleMetrics metrics;
+
+	/**
+	 * Lookback of the unchanged restart in the current cron cycle.
+	 */
+	private int unchangedLookback;
+
+	/**
+	 * The sweep in progress, null if all shards of the last one were swept.
+	 */
+	private CronSweep sweep;
+
+	/**
+	 * The checkpoint of the sweep on disk, null until the first cycle.
+	 */
+	private SweepCheckpoint checkpoint;
+
+	/**
+	 * Time a cycle may spend on evaluating jobs. The rest of the shard is
+	 * evaluated in the next cycle, so a cycle never runs into the next minute.
+	 */
+	private static final long SWEEP_BUDGET_NANOS = TimeUnit.SECONDS
+			.toNanos(50);
 
 	/**
 	 * Constructor.
@@ -95,6 +130,20 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 			return;
 		}
 
+		// write the outcomes of the builds completed since the last minute
+		final BuildHistory history = BuildHistory.get();
+		if (history != null) {
+			history.saveIfDirty();
+		}
+		final RetryStatistics retries = RetryStatistics.get();
+		if (retries != null) {
+			retries.saveIfDirty();
+		}
+
+		// restarts held by circuit breakers are released whether the cron is
+		// active or not, as the afterbuild restarts are held as well
+		releaseHeldRestarts(config);
+
 		final String cron = config.getCronTime();
 
 		// if cron is not enabled just exit with no calculations.
@@ -105,39 +154,166 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 		// Initialize the data structures where the to-be-restarted projects are
 		// held temporarily.
 		// Needed for sorting them by the reason for the restart.
-		this.periodicTriggerRestartList = new HashMap<PeriodicTrigger, ArrayList<AbstractProject<?, ?>>>();
+		this.periodicTriggerRestartList = new HashMap<PeriodicTrigger, ArrayList<Job<?, ?>>>();
 		this.scheduledProjects = new HashSet<String>();
-		this.unchangedRestartProjects = new ArrayList<AbstractProject<?, ?>>();
+		this.unchangedRestartProjects = new ArrayList<Job<?, ?>>();
+		this.metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+		this.unchangedLookback = config.getUnchangedLookback();
 
 		// record current time
 		final long currentTime = System.currentTimeMillis();
 
-		// Add projects to be restarted.
-		addProjectsFoundByPeriodicTriggerHit(currentTime);
-		if (cron != null && config.isRestartUnchangedJobsEnabled()) {
-			addUnchangedProjects(cron, currentTime);
+		// continue a sweep interrupted by a restart of Jenkins
+		if (this.checkpoint == null) {
+			this.checkpoint = SweepCheckpoint.get();
+			if (this.checkpoint == null) {
+				return;
+			}
+			this.sweep = this.checkpoint.load(config.getPeriodicTriggers(),
+					currentTime);
+			if (this.sweep != null) {
+				LOGGER.info("Continuing the cron sweep from shard "
+						+ this.sweep.getNextShard() + " of "
+						+ this.sweep.getShards() + " with "
+						+ this.sweep.getEvaluated().size()
+						+ " jobs already evaluated.");
+			}
+		}
+
+		// A cron time hit starts a sweep, which may be split into shards
+		// swept one per minute.
+		final List<PeriodicTrigger> dueTriggers = getDueTriggers(config,
+				currentTime);
+		final boolean isUnchangedDue = cron != null
+				&& config.isRestartUnchangedJobsEnabled()
+				&& isCronDue(cron, currentTime);
+		if (!dueTriggers.isEmpty() || isUnchangedDue) {
+			if (this.sweep == null) {
+				this.sweep = new CronSweep(dueTriggers, isUnchangedDue,
+						config.getCronShards());
+				this.checkpoint.save(this.sweep);
+			} else if (this.sweep.merge(dueTriggers, isUnchangedDue)) {
+				// the shards already swept missed the new triggers, so the
+				// sweep goes on until every shard was swept once more
+				LOGGER.fine("Cron time was hit before shard "
+						+ this.sweep.getNextShard() + " of "
+						+ this.sweep.getShards()
+						+ " was swept, sweeping all shards with the new triggers.");
+				this.checkpoint.save(this.sweep);
+			}
+		}
+		final Jenkins jenkins = Jenkins.getInstance();
+		final boolean isDue = this.sweep != null && jenkins != null;
+		// jobs of an unfinished shard listed for restart, checkpointed once
+		// their restart was scheduled
+		final Map<String, String> restartVerdicts = new LinkedHashMap<String, String>();
+		if (isDue) {
+			// a single shard is swept in one go, its jobs are not worth a
+			// line each
+			final boolean isCheckpointed = this.sweep.getShards() > 1;
+			// the item tree is walked once per sweep, the later shards look
+			// their jobs up by name
+			if (this.sweep.getJobs() == null) {
+				this.sweep.setJobs(
+						getRestartableJobs(jenkins, this.metrics).keySet());
+			}
+			// Add projects to be restarted. All triggers and the unchanged
+			// restart are checked in one pass over the jobs of the shard.
+			final long start = System.nanoTime();
+			boolean isShardSwept = true;
+			for (String fullName : this.sweep.getJobs()) {
+				if (!this.sweep.isInCurrentShard(fullName)
+						|| this.sweep.isEvaluated(fullName)) {
+					continue;
+				}
+				if (System.nanoTime() - start > SWEEP_BUDGET_NANOS) {
+					isShardSwept = false;
+					break;
+				}
+				final Job<?, ?> project = jenkins.getItemByFullName(fullName,
+						Job.class);
+				// deleted or renamed since the sweep started
+				final String verdict = project != null
+						? checkProject(fullName, project,
+								this.sweep.getDueTriggers(),
+								this.sweep.isUnchangedDue())
+						: CronSweep.NO_RESTART;
+				this.sweep.evaluated(fullName, verdict);
+				if (!isCheckpointed) {
+					continue;
+				}
+				if (CronSweep.NO_RESTART.equals(verdict)) {
+					this.checkpoint.append(fullName, verdict);
+				} else {
+					restartVerdicts.put(fullName, verdict);
+				}
+			}
+			if (!isShardSwept) {
+				LOGGER.fine("Shard " + this.sweep.getNextShard()
+						+ " not swept in time, continuing in the next cycle.");
+				this.checkpoint.flush();
+			} else {
+				restartVerdicts.clear();
+				this.sweep.advance();
+				if (this.sweep.isDone()) {
+					this.sweep = null;
+					this.checkpoint.delete();
+				} else {
+					this.checkpoint.save(this.sweep);
+				}
+			}
 		}
 
 		// Do the actual restart.
 		if (this.countProjectsForRestart() > 0) {
 			restartCronProjects();
 		}
+		if (!restartVerdicts.isEmpty()) {
+			for (Entry<String, String> entry : restartVerdicts.entrySet()) {
+				this.checkpoint.append(entry.getKey(), entry.getValue());
+			}
+			this.checkpoint.flush();
+		}
+
+		// only cycles in which a shard was swept are worth recording
+		if (isDue) {
+			ReincarnationMetrics.record(this.metrics);
+		}
 	}
 
 	/**
-	 * Returns the number of projects scheduled for restart because of a
-	 * periodicTrigger hit.
+	 * Schedules the probes and the restarts released by the circuit breakers.
 	 * 
-	 * @return the number as int.
+	 * @param config
+	 *            the global configuration.
 	 */
-	private int getNumberOfProjectsForPeriodicTriggerRestart() {
-		int count = 0;
-		for (Entry<PeriodicTrigger, ArrayList<AbstractProject<?, ?>>> entry : this.periodicTriggerRestartList
-				.entrySet()) {
-			count += entry.getValue().size();
+	private void releaseHeldRestarts(
+			PeriodicReincarnationGlobalConfiguration config) {
+		final CircuitBreaker breakers = CircuitBreaker.get();
+		final long now = System.currentTimeMillis();
+		// probes that left the queue without a build never report
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins != null) {
+			for (String fullName : breakers
+					.getProbes(now - CircuitBreaker.PROBE_GRACE)) {
+				final Job<?, ?> project = jenkins.getItemByFullName(fullName,
+						Job.class);
+				if (project == null || !Utils.isPending(project)) {
+					LOGGER.fine("Probe " + fullName + " is gone.");
+					breakers.cancelProbe(fullName);
+				}
+			}
 		}
-
-		return count;
+		final List<CircuitBreaker.HeldRestart> released = breakers.release(
+				config.getBreakerThreshold(), config.getBreakerWindow(), now);
+		if (released.isEmpty()) {
+			return;
+		}
+		LOGGER.info("Circuit breakers released " + released.size()
+				+ " held restarts.");
+		// released restarts are journaled, but not recorded as a cron cycle
+		Utils.restartReleased(released,
+				new CycleMetrics(CycleMetrics.Type.CRON));
 	}
 
 	/**
@@ -150,87 +326,54 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 	}
 
 	/**
-	 * Counts the projects that will be restarted becaue of unchanged restart in
-	 * this cycle.
-	 * 
-	 * @return the number as int.
-	 */
-	private int getNumberOfProjectsForUnchangedRestart() {
-		return this.unchangedRestartProjects.size();
-	}
-
-	/**
-	 * Prints all projects that are scheduled for restart in this current cron
-	 * cycle. Groups them according to the reason they were restarted.
+	 * Restarts all projects scheduled in this current cron cycle, grouped by
+	 * the reason they were restarted, and logs a one-line summary. The
+	 * details are kept in a bounded {@link CycleReport}.
 	 */
 	private void restartCronProjects() {
-		// Initialize summary. This variables contains the whole output that
-		// shows which projects have been restarted during this cron-cycle.
-		String summary = "Periodic Reincarnation cron restart summary:" + "\n";
-		summary += "Number of projects to restart: "
-				+ this.countProjectsForRestart() + " (Periodic Trigger hit "
-				+ this.getNumberOfProjectsForPeriodicTriggerRestart()
-				+ ", Unchanged restart "
-				+ this.getNumberOfProjectsForUnchangedRestart() + ")" + "\n";
-
-		// Restarts all projects found by periodicTrigger (also adds them to
-		// summary for
-		// printing)
-		summary += restartPeriodicTriggerProjects();
-
-		// Restarts all projects found by no difference between the last two
-		// builds criteria (also adds them to summary for printing)
+		final CycleReport report = new CycleReport();
+		restartPeriodicTriggerProjects(report);
 		if (this.unchangedRestartProjects.size() > 0) {
-			summary += restartUnchanged();
+			restartUnchanged(report);
 		}
-		LOGGER.info(summary);
+		CycleReport.record(report);
+		LOGGER.info(report.toString());
 	}
 
 	/**
 	 * Restarts all projects listed for unchanged restart.
 	 * 
-	 * @return the output that should be added to summary String.
+	 * @param report
+	 *            the report of the cycle.
 	 */
-	private String restartUnchanged() {
-		String summary = Constants.NODIFFERENCERESTART + ": "
-				+ this.unchangedRestartProjects.size()
-				+ " projects scheduled for restart" + "\n";
-		final StringBuilder sb = new StringBuilder();
-		for (AbstractProject<?, ?> proj : this.unchangedRestartProjects) {
-			Utils.restart(proj,
+	private void restartUnchanged(CycleReport report) {
+		for (Job<?, ?> proj : this.unchangedRestartProjects) {
+			if (Utils.restart(proj,
 					"(Cron restart) " + Constants.NODIFFERENCERESTART, null,
-					Constants.NORMALQUIETPERIOD);
-			sb.append("\t" + proj.getDisplayName() + "\n");
+					Constants.NORMALQUIETPERIOD, this.metrics)) {
+				report.add(Constants.NODIFFERENCERESTART, proj.getFullName());
+			}
 		}
-		summary += sb.toString();
-		return summary;
 	}
 
 	/**
-	 * Restarts all projects found via PeriodicTrigger Hit. Also produces log
-	 * information and returns it upon exit.
+	 * Restarts all projects found via PeriodicTrigger Hit.
 	 * 
-	 * @return the output that should be added to summary String.
+	 * @param report
+	 *            the report of the cycle.
 	 */
-	private String restartPeriodicTriggerProjects() {
-		final StringBuilder summary = new StringBuilder();
-		for (Entry<PeriodicTrigger, ArrayList<AbstractProject<?, ?>>> entry : this.periodicTriggerRestartList
+	private void restartPeriodicTriggerProjects(CycleReport report) {
+		for (Entry<PeriodicTrigger, ArrayList<Job<?, ?>>> entry : this.periodicTriggerRestartList
 				.entrySet()) {
-			PeriodicTrigger perTri = entry.getKey();
-			ArrayList<AbstractProject<?, ?>> projects = entry.getValue();
-			summary.append(getRestartCause(perTri) + ": " + projects.size()
-					+ " projects scheduled for restart" + "\n");
-			final StringBuilder sb = new StringBuilder();
-			for (AbstractProject<?, ?> proj : projects) {
-				Utils.restart(proj, getRestartCause(perTri), perTri,
-						Constants.NORMALQUIETPERIOD);
-				sb.append("\t" + proj.getDisplayName() + "\n");
+			final PeriodicTrigger perTri = entry.getKey();
+			final String cause = getRestartCause(perTri);
+			for (Job<?, ?> proj : entry.getValue()) {
+				if (Utils.restart(proj, cause, perTri,
+						Constants.NORMALQUIETPERIOD, this.metrics)) {
+					report.add(cause, proj.getFullName());
+				}
 			}
-
-			summary.append(sb.toString());
 		}
-
-		return summary.toString();
 	}
 
 	/**
@@ -290,145 +433,195 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 	}
 
 	/**
-	 * Adds all projects found because of a periodicTrigger hit to the
-	 * periodicTriggerRestartList Map.
+	 * Returns the periodic triggers that are due in this cycle, build failure
+	 * causes first.
 	 * 
+	 * @param config
+	 *            the global configuration.
 	 * @param currentTime
 	 *            current time, recorded previously.
+	 * @return the enabled triggers whose cron time is now.
 	 */
-	private void addProjectsFoundByPeriodicTriggerHit(final long currentTime) {
+	private List<PeriodicTrigger> getDueTriggers(
+			PeriodicReincarnationGlobalConfiguration config,
+			final long currentTime) {
 		// IMPORTANT: Here you have to catch every PeriodicTrigger Class
 		// existing!
-		if (PeriodicReincarnationGlobalConfiguration.get()
-				.getPeriodicTriggers() == null
-				|| PeriodicReincarnationGlobalConfiguration.get()
-						.getPeriodicTriggers().isEmpty()) {
-			return;
-		}
-		for (PeriodicTrigger perTri : PeriodicReincarnationGlobalConfiguration
-				.get().getPeriodicTriggers()) {
-			if (perTri.isTimeToRestart(currentTime)) {
-				Jenkins jenkins = Jenkins.getInstance();
-				if (jenkins == null)
-					continue;
-				for (Item item : jenkins.getAllItems()) {
-					if(item instanceof Folder)
-						checkFolder((Folder)item, perTri);
-					if (item instanceof AbstractProject<?, ?> && !(isMavenModule((AbstractProject<?, ?>)item)))
-						checkProject((AbstractProject<?, ?>)item, perTri);
-				}
-			}
+		final List<PeriodicTrigger> dueTriggers = new ArrayList<PeriodicTrigger>();
+		if (config.getPeriodicTriggers() == null) {
+			return dueTriggers;
 		}
-	}
-
-	private void checkProject(AbstractProject<?, ?> project, PeriodicTrigger perTri) {
-		if (isValidCandidateForRestart(project)
-				&& !scheduledProjects.contains(project.getFullDisplayName())) {
-			if ((Utils.isBfaAvailable()
-					&& perTri.getClass() == BuildFailureObject.class
-					&& Utils.checkBuild(project.getLastBuild(),
-							(BuildFailureObject) perTri))
-					|| perTri.getClass() == RegEx.class && Utils.checkBuild(
-							project.getLastBuild(), (RegEx) perTri)) {
-				this.scheduledProjects.add(project.getFullDisplayName());
-				if (this.periodicTriggerRestartList.containsKey(perTri)) {
-					this.periodicTriggerRestartList.get(perTri).add(project);
-				} else {
-					final ArrayList<AbstractProject<?, ?>> newList = new ArrayList<AbstractProject<?, ?>>();
-					newList.add(project);
-					this.periodicTriggerRestartList.put(perTri, newList);
-				}
-			}
-		}
-	}
-
-	private void checkFolder(Folder folder, PeriodicTrigger perTri) {
-		for (Item itemInFolder : folder.getItems()) {
-			if (itemInFolder instanceof Folder) {
-				checkFolder((Folder)itemInFolder, perTri);
-			} else if (itemInFolder instanceof AbstractProject<?, ?> && !(isMavenModule((AbstractProject<?, ?>)itemInFolder))){
-				checkProject((AbstractProject<?, ?>)itemInFolder, perTri);
+		for (PeriodicTrigger perTri : config.getPeriodicTriggers()) {
+			if (!perTri.isDisabled() && perTri.isTimeToRestart(currentTime)) {
+				dueTriggers.add(perTri);
 			}
 		}
+		return dueTriggers;
 	}
 
 	/**
-	 * Populates the array unchangedRestartProjects, that contains unchanged
-	 * projects failing for the first time.
+	 * Tells if the global cron time of the unchanged restart is now.
 	 * 
 	 * @param cron
 	 *            cron parameter as String
 	 * @param currentTime
 	 *            current time recorded previously
+	 * @return true if the global cron time is due.
 	 */
-	private void addUnchangedProjects(final String cron,
-			final long currentTime) {
-		CronTab cronTab;
+	private boolean isCronDue(final String cron, final long currentTime) {
 		try {
-			cronTab = new CronTab(cron);
-			if ((cronTab.ceil(currentTime).getTimeInMillis()
-					- currentTime) == 0) {
-				Jenkins jenkins = Jenkins.getInstance();
-				if (jenkins == null)
-					return;
-				for (Item item : jenkins.getAllItems()) {
-					checkFolder(item);
-					if (item instanceof AbstractProject<?, ?> && !(isMavenModule((AbstractProject<?, ?>)item)))
-						checkProject((AbstractProject<?, ?>)item);
-				}
-			}
+			final CronTab cronTab = new CronTab(cron);
+			return cronTab.ceil(currentTime).getTimeInMillis()
+					- currentTime == 0;
 		} catch (ANTLRException e1) {
 			LOGGER.fine("Global cron time could not be parsed!");
 			e1.printStackTrace();
 		}
+		return false;
 	}
 
-	private void checkFolder(Item item) {
-		if (item instanceof Folder) {
-			Folder folder = (Folder) item;
-			for (Item itemInFolder : folder.getItems()) {
-				if (itemInFolder instanceof Folder) {
-					checkFolder(itemInFolder);
-				} else if (itemInFolder instanceof AbstractProject && !(isMavenModule((AbstractProject<?, ?>)itemInFolder))){
-					checkProject((AbstractProject<?, ?>)itemInFolder);
+	/**
+	 * Collects all jobs that can be restarted. The item tree is walked once,
+	 * descending into every item group: folders, organization folders,
+	 * multibranch projects and whatever else holds items. An item reached a
+	 * second time is skipped, so no log is read twice in a cycle.
+	 * 
+	 * @param root
+	 *            the item group to start from, usually Jenkins.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the items visited.
+	 * @return the restartable jobs by full name, in the order visited.
+	 */
+	static Map<String, Job<?, ?>> getRestartableJobs(ItemGroup<?> root,
+			CycleMetrics metrics) {
+		final Map<String, Job<?, ?>> jobs = new LinkedHashMap<String, Job<?, ?>>();
+		final Set<String> visited = new HashSet<String>();
+		final Deque<ItemGroup<?>> groups = new ArrayDeque<ItemGroup<?>>();
+		groups.add(root);
+		while (!groups.isEmpty()) {
+			final ItemGroup<?> group = groups.poll();
+			metrics.itemGroupVisited();
+			for (Item item : group.getItems()) {
+				final String fullName = item.getFullName();
+				if (!visited.add(fullName)) {
+					metrics.duplicateSkipped();
+					continue;
+				}
+				metrics.itemVisited();
+				if (item instanceof ItemGroup) {
+					groups.add((ItemGroup<?>) item);
+				}
+				if (isRestartable(item)) {
+					jobs.put(fullName, (Job<?, ?>) item);
 				}
 			}
 		}
+		return jobs;
 	}
 
-	private void checkProject(AbstractProject<?, ?> project) {
-		if (isValidCandidateForRestart(project)
-				&& Utils.qualifyForUnchangedRestart(project)
-				&& !scheduledProjects.contains(project.getFullDisplayName())) {
-			this.scheduledProjects.add(project.getFullDisplayName());
+	/**
+	 * Checks a project against all due triggers and then against the
+	 * unchanged restart, and lists it for restart on the first that applies.
+	 * The candidate checks run once per project, no matter how many triggers
+	 * are due.
+	 * 
+	 * @param fullName
+	 *            the full name of the project.
+	 * @param project
+	 *            the project.
+	 * @param dueTriggers
+	 *            the triggers due in this cycle.
+	 * @param isUnchangedDue
+	 *            true if the unchanged restart is due in this cycle.
+	 * @return the verdict, see {@link CronSweep#evaluated(String, String)}.
+	 */
+	private String checkProject(String fullName, Job<?, ?> project,
+			List<PeriodicTrigger> dueTriggers, boolean isUnchangedDue) {
+		if (this.scheduledProjects.contains(fullName)
+				|| !isValidCandidateForRestart(project)) {
+			return CronSweep.NO_RESTART;
+		}
+		this.metrics.candidateFound();
+		final Run<?, ?> lastBuild = project.getLastBuild();
+		// the flow graph of a Pipeline is walked once for all due triggers
+		final PipelineSupport.FlowGraph graph = new PipelineSupport.FlowGraph(
+				lastBuild);
+		try {
+			for (int i = 0; i < dueTriggers.size(); i++) {
+				final PeriodicTrigger perTri = dueTriggers.get(i);
+				if (Utils.isSuppressed(project, perTri)) {
+					continue;
+				}
+				if ((Utils.isBfaAvailable()
+						&& perTri.getClass() == BuildFailureObject.class
+						&& Utils.checkBuild(lastBuild,
+								(BuildFailureObject) perTri, this.metrics))
+						|| perTri.getClass() == RegEx.class
+								&& Utils.checkBuild(lastBuild, (RegEx) perTri,
+										graph, this.metrics)
+						|| perTri.getClass() == WorkspaceRegEx.class
+								&& Utils.checkWorkspace(lastBuild,
+										(WorkspaceRegEx) perTri,
+										this.metrics)
+						|| perTri.getClass() == TestResultTrigger.class
+								&& Utils.checkTestResult(lastBuild,
+										(TestResultTrigger) perTri,
+										this.metrics)) {
+					this.scheduledProjects.add(fullName);
+					if (this.periodicTriggerRestartList.containsKey(perTri)) {
+						this.periodicTriggerRestartList.get(perTri)
+								.add(project);
+					} else {
+						final ArrayList<Job<?, ?>> newList = new ArrayList<Job<?, ?>>();
+						newList.add(project);
+						this.periodicTriggerRestartList.put(perTri, newList);
+					}
+					return CronSweep.getVerdict(i);
+				}
+			}
+		} finally {
+			// keep the verdicts of the scans for the next cycles
+			TriggerVerdictAction.save(lastBuild);
+		}
+		if (isUnchangedDue && Utils.qualifyForUnchangedRestart(project,
+				this.unchangedLookback)) {
+			this.scheduledProjects.add(fullName);
 			this.unchangedRestartProjects.add(project);
+			return CronSweep.UNCHANGED_RESTART;
 		}
+		return CronSweep.NO_RESTART;
 	}
 
 	/**
 	 * Determines if a project should be tested for periodicTrigger match or no
-	 * error between the last two builds.
+	 * error between the last two builds. The checks that need no build come
+	 * first, then the permalinks of the project, and only a project
+	 * passing all of them gets its last build inspected.
 	 * 
 	 * @param project
 	 *            the current project
 	 * @return true should be tested, false otherwise
 	 */
 	private boolean isValidCandidateForRestart(
-			final AbstractProject<?, ?> project) {
+			final Job<?, ?> project) {
 		if (project == null)
 			return false;
-		boolean isLocallyDeactivated = false;
 		JobLocalConfiguration property = (JobLocalConfiguration) project
 				.getProperty(JobLocalConfiguration.class);
-		if (property != null) {
-			isLocallyDeactivated = property.getIsLocallyDeactivated();
+		if (property != null && property.getIsLocallyDeactivated()) {
+			return false;
+		}
+		if (!project.isBuildable() || project.isInQueue()) {
+			return false;
+		}
+		if (!CandidateFilter.mayHaveFailed(project)) {
+			this.metrics.candidateSkipped();
+			return false;
 		}
-		return !isLocallyDeactivated && !project.isDisabled()
-				&& project.isBuildable() && project.getLastBuild() != null
-				&& project.getLastBuild().getResult() != null
-				&& project.getLastBuild().getResult()
-						.isWorseOrEqualTo(Result.FAILURE)
-				&& !project.isBuilding() && !project.isInQueue();
+		final Run<?, ?> lastBuild = project.getLastBuild();
+		return lastBuild != null && !lastBuild.isBuilding()
+				&& lastBuild.getResult() != null
+				&& lastBuild.getResult().isWorseOrEqualTo(Result.FAILURE);
 	}
 
 	/**
@@ -452,7 +645,20 @@ public class PeriodicReincarnation extends AsyncPeriodicWork {
 		return AsyncPeriodicWork.all().get(PeriodicReincarnation.class);
 	}
 	
-	private boolean isMavenModule(AbstractProject<?, ?> project) {
-		return (Utils.isMavenPluginAvailable() && project instanceof MavenModule);
+	/**
+	 * Tells if an item is a job the plugin can restart. These are all jobs
+	 * that can be scheduled with parameters, freestyle projects as well as
+	 * Pipelines and multibranch branches, except maven modules which are
+	 * built by their parent.
+	 * 
+	 * @param item
+	 *            the item.
+	 * @return true if the item can be restarted.
+	 */
+	static boolean isRestartable(Item item) {
+		return item instanceof Job
+				&& item instanceof ParameterizedJobMixIn.ParameterizedJob
+				&& !(Utils.isMavenPluginAvailable()
+						&& item instanceof MavenModule);
 	}
 }
@@ -13,6 +13,11 @@ public class PeriodicReincarnationBuildCause extends Cause {
 	 * Cause of restart for a certain job.
 	 */
 	private String restartCause;
+	/**
+	 * Key of the periodic trigger that caused the restart, null if it was
+	 * caused by something else, e.g. the unchanged restart.
+	 */
+	private String triggerKey;
 
 	/**
 	 * Constructor.
@@ -21,8 +26,31 @@ public class PeriodicReincarnationBuildCause extends Cause {
 	 *            The reason/cause for restart.
 	 */
 	public PeriodicReincarnationBuildCause(String s) {
+		this(s, null);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param s
+	 *            The reason/cause for restart.
+	 * @param triggerKey
+	 *            the key of the periodic trigger that caused the restart, or
+	 *            null.
+	 */
+	public PeriodicReincarnationBuildCause(String s, String triggerKey) {
 		super();
 		this.restartCause = s;
+		this.triggerKey = triggerKey;
+	}
+
+	/**
+	 * Returns the key of the periodic trigger that caused the restart.
+	 * 
+	 * @return the key, see {@link PeriodicTrigger#getKey()}, or null.
+	 */
+	public String getTriggerKey() {
+		return this.triggerKey;
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.periodicreincarnation;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -11,19 +12,23 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import org.apache.commons.io.output.NullWriter;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 
 import antlr.ANTLRException;
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.scheduler.CronTab;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 /**
@@ -58,6 +63,14 @@ public class PeriodicReincarnationGlobalConfiguration
 	 * List of all regular expressions.
 	 */
 	private List<RegEx> regExprs;
+	/**
+	 * List of all regular expressions searched in workspace files.
+	 */
+	private List<WorkspaceRegEx> workspaceRegExprs;
+	/**
+	 * List of all triggers matching failed tests.
+	 */
+	private List<TestResultTrigger> testResultTriggers;
 	/**
 	 * List of all Build Failure Cause Objects.
 	 */
@@ -72,6 +85,63 @@ public class PeriodicReincarnationGlobalConfiguration
 	 * build should be restarted.
 	 */
 	private String noChange;
+	/**
+	 * Number of builds the unchanged restart looks back, blank for the
+	 * default.
+	 */
+	private String unchangedLookback;
+	/**
+	 * Time budget in ms for matching one log line with a regular expression.
+	 */
+	private String regExTimeout;
+	/**
+	 * Number of shards a cron sweep is split into, one swept per minute.
+	 */
+	private String cronShards;
+	/**
+	 * Minimal share in percent of restarts by a trigger that have to succeed,
+	 * blank for no suppression.
+	 */
+	private String minRetrySuccessRate;
+	/**
+	 * Restarts within the window that open a circuit breaker, blank for none.
+	 */
+	private String breakerThreshold;
+	/**
+	 * Length of the window of the circuit breakers in minutes.
+	 */
+	private String breakerWindow;
+	/**
+	 * Delay of the first afterbuild restart in s, blank for the default.
+	 */
+	private String backoffBase;
+	/**
+	 * Factor the delay of consecutive afterbuild restarts grows by.
+	 */
+	private String backoffMultiplier;
+	/**
+	 * Maximal delay of an afterbuild restart in s.
+	 */
+	private String backoffCap;
+	/**
+	 * Maximal random variation of the delay in percent.
+	 */
+	private String backoffJitter;
+
+	/**
+	 * Default time budget in ms for matching one log line.
+	 */
+	public static final int DEFAULT_REGEX_TIMEOUT = 1000;
+
+	/**
+	 * Default window of the circuit breakers in minutes.
+	 */
+	public static final int DEFAULT_BREAKER_WINDOW = 10;
+
+	/**
+	 * Default lookback of the unchanged restart, the last two builds.
+	 */
+	public static final int DEFAULT_UNCHANGED_LOOKBACK = 2;
 
 	/**
 	 * Constructor. Loads the configuration upon invoke.
@@ -127,12 +197,30 @@ public class PeriodicReincarnationGlobalConfiguration
 				PeriodicReincarnationGlobalConfiguration.class, json).regExprs;
 		this.bfas = req.bindJSON(PeriodicReincarnationGlobalConfiguration.class,
 				json).bfas;
+		this.workspaceRegExprs = req.bindJSONToList(WorkspaceRegEx.class,
+				json.opt("workspaceRegExprs"));
+		this.testResultTriggers = req.bindJSONToList(TestResultTrigger.class,
+				json.opt("testResultTriggers"));
 		this.activeTrigger = json.getString("activeTrigger").trim();
 		this.maxDepth = json.getString("maxDepth").trim();
 		this.activeCron = json.getString("activeCron").trim();
 		this.cronTime = json.getString("cronTime");
 		this.noChange = json.getString("noChange");
+		this.unchangedLookback = json.optString("unchangedLookback").trim();
+		this.regExTimeout = json.optString("regExTimeout").trim();
+		this.cronShards = json.optString("cronShards").trim();
+		this.minRetrySuccessRate = json.optString("minRetrySuccessRate")
+				.trim();
+		this.breakerThreshold = json.optString("breakerThreshold").trim();
+		this.breakerWindow = json.optString("breakerWindow").trim();
+		this.backoffBase = json.optString("backoffBase").trim();
+		this.backoffMultiplier = json.optString("backoffMultiplier").trim();
+		this.backoffCap = json.optString("backoffCap").trim();
+		this.backoffJitter = json.optString("backoffJitter").trim();
 		save();
+		// edited and removed triggers keep no statistics
+		TriggerStatistics.retainAll(getPeriodicTriggers());
+		ReincarnationMetrics.retainAll(getPeriodicTriggers());
 		return true;
 	}
 
@@ -173,10 +261,238 @@ public class PeriodicReincarnationGlobalConfiguration
 		}
 		try {
 			Pattern.compile(value);
-			return FormValidation.ok();
 		} catch (PatternSyntaxException e) {
 			return FormValidation.error("RegEx cannot be compiled!");
 		}
+		if (RegExAnalyzer.isBacktrackingRisk(value)) {
+			return FormValidation.warning("RegEx contains nested or adjacent "
+					+ "unbounded quantifiers and may take very long on some "
+					+ "lines. It will be disabled if it exceeds the time budget.");
+		}
+		return FormValidation.ok();
+	}
+
+	/**
+	 * Checks the time budget for matching one log line.
+	 * 
+	 * @param value
+	 *            the time budget in ms.
+	 * @return ok if the value is a non negative number, error otherwise.
+	 */
+	public FormValidation doCheckRegExTimeout(@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		return FormValidation.validateNonNegativeInteger(value.trim());
+	}
+
+	/**
+	 * Check method for the number of cron shards.
+	 * 
+	 * @param value
+	 *            the number of shards.
+	 * @return ok if the value is a positive number, error otherwise.
+	 */
+	public FormValidation doCheckCronShards(@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		return FormValidation.validatePositiveInteger(value.trim());
+	}
+
+	/**
+	 * Check method for the minimal retry success rate.
+	 * 
+	 * @param value
+	 *            the rate in percent.
+	 * @return ok if the value is a number from 0 to 100, error otherwise.
+	 */
+	public FormValidation doCheckMinRetrySuccessRate(
+			@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		final FormValidation validation = FormValidation
+				.validateNonNegativeInteger(value.trim());
+		if (validation.kind == FormValidation.Kind.OK
+				&& Integer.parseInt(value.trim()) > 100) {
+			return FormValidation.error("Not a percentage");
+		}
+		return validation;
+	}
+
+	/**
+	 * Check method for the delay of the first afterbuild restart.
+	 * 
+	 * @param value
+	 *            the delay in s.
+	 * @return ok if the value is a number, error otherwise.
+	 */
+	public FormValidation doCheckBackoffBase(@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		return FormValidation.validateNonNegativeInteger(value.trim());
+	}
+
+	/**
+	 * Check method for the factor the delay of afterbuild restarts grows by.
+	 * 
+	 * @param value
+	 *            the factor.
+	 * @return ok if the value is a number of at least 1, error otherwise.
+	 */
+	public FormValidation doCheckBackoffMultiplier(
+			@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		try {
+			if (Double.parseDouble(value.trim()) < 1) {
+				return FormValidation.error("At least 1");
+			}
+			return FormValidation.ok();
+		} catch (NumberFormatException e) {
+			return FormValidation.error("Not a number");
+		}
+	}
+
+	/**
+	 * Check method for the maximal delay of afterbuild restarts.
+	 * 
+	 * @param value
+	 *            the delay in s.
+	 * @return ok if the value is a number, error otherwise.
+	 */
+	public FormValidation doCheckBackoffCap(@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		return FormValidation.validateNonNegativeInteger(value.trim());
+	}
+
+	/**
+	 * Check method for the random variation of the delay of afterbuild
+	 * restarts.
+	 * 
+	 * @param value
+	 *            the variation in percent.
+	 * @return ok if the value is a number from 0 to 100, error otherwise.
+	 */
+	public FormValidation doCheckBackoffJitter(@QueryParameter String value) {
+		return doCheckMinRetrySuccessRate(value);
+	}
+
+	/**
+	 * Check method for the circuit breaker threshold.
+	 * 
+	 * @param value
+	 *            the number of restarts.
+	 * @return ok if the value is a number, error otherwise.
+	 */
+	public FormValidation doCheckBreakerThreshold(
+			@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		return FormValidation.validateNonNegativeInteger(value.trim());
+	}
+
+	/**
+	 * Check method for the lookback of the unchanged restart.
+	 * 
+	 * @param value
+	 *            the number of builds.
+	 * @return ok if the value is a number from 2 to 50, error otherwise.
+	 */
+	public FormValidation doCheckUnchangedLookback(
+			@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		try {
+			final int lookback = Integer.parseInt(value.trim());
+			if (lookback < 2 || lookback > BuildHistory.MAX_LOOKBACK) {
+				return FormValidation.error("Between 2 and "
+						+ BuildHistory.MAX_LOOKBACK + " builds");
+			}
+			return FormValidation.ok();
+		} catch (NumberFormatException e) {
+			return FormValidation.error("Not a number");
+		}
+	}
+
+	/**
+	 * Backtests the saved triggers, or a regular expression not saved yet,
+	 * against the last failed builds of every job, see {@link Backtest}. The
+	 * page waits for the result, so at most
+	 * {@value Backtest#MAX_FORM_BUDGET_MB} MB are read; larger backtests are
+	 * run through the management page.
+	 * 
+	 * @param backtestRegEx
+	 *            the regular expression, blank for all enabled triggers.
+	 * @param backtestBuilds
+	 *            failed builds per job, blank for the default.
+	 * @param backtestBudget
+	 *            megabytes that may be read, blank for
+	 *            {@value Backtest#FORM_BUDGET_MB}.
+	 * @return a table of the builds each trigger would have restarted.
+	 * @throws IOException
+	 *             never, the verdicts are discarded.
+	 * @throws InterruptedException
+	 *             if the backtest was interrupted.
+	 */
+	@RequirePOST
+	public FormValidation doBacktest(@QueryParameter String backtestRegEx,
+			@QueryParameter String backtestBuilds,
+			@QueryParameter String backtestBudget)
+			throws IOException, InterruptedException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		final int builds;
+		final int budget;
+		try {
+			builds = StringUtils.isBlank(backtestBuilds)
+					? Backtest.DEFAULT_BUILDS
+					: Integer.parseInt(backtestBuilds.trim());
+			budget = StringUtils.isBlank(backtestBudget)
+					? Backtest.FORM_BUDGET_MB
+					: Integer.parseInt(backtestBudget.trim());
+		} catch (NumberFormatException e) {
+			return FormValidation.error("Not a number");
+		}
+		if (budget < 1 || budget > Backtest.MAX_FORM_BUDGET_MB) {
+			return FormValidation.error("Between 1 and "
+					+ Backtest.MAX_FORM_BUDGET_MB
+					+ " MB, larger backtests are run through "
+					+ "/manage/periodic-reincarnation/backtest");
+		}
+		final DryRun dryRun;
+		try {
+			dryRun = new DryRun(
+					DryRun.selectTriggers(this, null,
+							StringUtils.isBlank(backtestRegEx) ? null
+									: new String[] { backtestRegEx }),
+					DryRun.DEFAULT_THREADS, 1, getRegExTimeout());
+		} catch (AbortException e) {
+			return FormValidation.error(e.getMessage());
+		}
+		dryRun.setByteBudget(budget * 1024L * 1024L);
+		return FormValidation.okWithMarkup(Backtest.toHtml(
+				dryRun.run(Backtest.failedBuilds(builds), new NullWriter())));
+	}
+
+	/**
+	 * Check method for the circuit breaker window.
+	 * 
+	 * @param value
+	 *            the window in minutes.
+	 * @return ok if the value is a positive number, error otherwise.
+	 */
+	public FormValidation doCheckBreakerWindow(@QueryParameter String value) {
+		if (StringUtils.isBlank(value)) {
+			return FormValidation.ok();
+		}
+		return FormValidation.validatePositiveInteger(value.trim());
 	}
 
 	/**
@@ -280,6 +596,25 @@ public class PeriodicReincarnationGlobalConfiguration
 		return this.noChange != null && this.noChange.equals("true");
 	}
 
+	/**
+	 * Returns the number of builds the unchanged restart looks back: a job
+	 * qualifies if it has been failing without changes since its last build
+	 * that did not fail, which has to be one of these builds.
+	 * 
+	 * @return the number of builds, the last one included, 2 by default.
+	 */
+	public int getUnchangedLookback() {
+		if (StringUtils.isBlank(this.unchangedLookback)) {
+			return DEFAULT_UNCHANGED_LOOKBACK;
+		}
+		try {
+			return Math.min(BuildHistory.MAX_LOOKBACK, Math.max(2,
+					Integer.parseInt(this.unchangedLookback.trim())));
+		} catch (NumberFormatException e) {
+			return DEFAULT_UNCHANGED_LOOKBACK;
+		}
+	}
+
 	/**
 	 * Returns a list containing all regular expressions.
 	 * 
@@ -289,6 +624,25 @@ public class PeriodicReincarnationGlobalConfiguration
 		return this.regExprs;
 	}
 
+	/**
+	 * Returns a list containing all regular expressions searched in
+	 * workspace files.
+	 * 
+	 * @return the list with workspace reg exs.
+	 */
+	public List<WorkspaceRegEx> getWorkspaceRegExprs() {
+		return this.workspaceRegExprs;
+	}
+
+	/**
+	 * Returns a list containing all triggers matching failed tests.
+	 * 
+	 * @return the list with test result triggers.
+	 */
+	public List<TestResultTrigger> getTestResultTriggers() {
+		return this.testResultTriggers;
+	}
+
 	/**
 	 * Returns a list containing all Build Failure Cause Objects.
 	 * 
@@ -311,11 +665,18 @@ public class PeriodicReincarnationGlobalConfiguration
 				perTri.add(bfa);
 			}
 		}
+		// test reports are cheaper to check than logs
+		if (this.testResultTriggers != null) {
+			perTri.addAll(this.testResultTriggers);
+		}
 		if (this.regExprs != null) {
 			for (RegEx re : regExprs) {
 				perTri.add(re);
 			}
 		}
+		if (this.workspaceRegExprs != null) {
+			perTri.addAll(this.workspaceRegExprs);
+		}
 		return perTri;
 	}
 
@@ -377,4 +738,174 @@ public class PeriodicReincarnationGlobalConfiguration
 		}
 		return Integer.parseInt(this.maxDepth);
 	}
+
+	/**
+	 * Returns the field regExTimeout.
+	 * 
+	 * @return regExTimeout.
+	 */
+	public String getRegExTimeoutValue() {
+		return this.regExTimeout;
+	}
+
+	/**
+	 * Returns the time budget for matching one log line with a regular
+	 * expression. A regular expression exceeding it gets disabled.
+	 * 
+	 * @return the time budget in ms, 0 means unlimited.
+	 */
+	public int getRegExTimeout() {
+		if (StringUtils.isBlank(this.regExTimeout)) {
+			return DEFAULT_REGEX_TIMEOUT;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(this.regExTimeout.trim()));
+		} catch (NumberFormatException e) {
+			return DEFAULT_REGEX_TIMEOUT;
+		}
+	}
+
+	/**
+	 * Returns the number of cron shards as entered.
+	 * 
+	 * @return cronShards.
+	 */
+	public String getCronShardsValue() {
+		return this.cronShards;
+	}
+
+	/**
+	 * Returns the number of shards a cron sweep is split into. Every shard is
+	 * swept in its own minute, starting with the minute the cron time was
+	 * hit.
+	 * 
+	 * @return the number of shards, 1 means the whole sweep at once.
+	 */
+	public int getCronShards() {
+		if (StringUtils.isBlank(this.cronShards)) {
+			return 1;
+		}
+		try {
+			return Math.max(1, Integer.parseInt(this.cronShards.trim()));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the minimal retry success rate as entered.
+	 * 
+	 * @return minRetrySuccessRate.
+	 */
+	public String getMinRetrySuccessRateValue() {
+		return this.minRetrySuccessRate;
+	}
+
+	/**
+	 * Returns the minimal share of restarts by a trigger that have to
+	 * succeed. A trigger whose restarts of a job succeeded less often is
+	 * suppressed for that job, see {@link RetryStatistics}.
+	 * 
+	 * @return the rate in percent, 0 means no suppression.
+	 */
+	public int getMinRetrySuccessRate() {
+		if (StringUtils.isBlank(this.minRetrySuccessRate)) {
+			return 0;
+		}
+		try {
+			return Math.min(100, Math.max(0,
+					Integer.parseInt(this.minRetrySuccessRate.trim())));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the circuit breaker threshold as entered.
+	 * 
+	 * @return breakerThreshold.
+	 */
+	public String getBreakerThresholdValue() {
+		return this.breakerThreshold;
+	}
+
+	/**
+	 * Returns the number of restarts per trigger or agent label within the
+	 * window that opens a circuit breaker, see {@link CircuitBreaker}.
+	 * 
+	 * @return the number of restarts, 0 means no circuit breakers.
+	 */
+	public int getBreakerThreshold() {
+		if (StringUtils.isBlank(this.breakerThreshold)) {
+			return 0;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(this.breakerThreshold.trim()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the window of the circuit breakers.
+	 * 
+	 * @return window in minutes, 10 by default.
+	 */
+	public int getBreakerWindow() {
+		if (StringUtils.isBlank(this.breakerWindow)) {
+			return DEFAULT_BREAKER_WINDOW;
+		}
+		try {
+			return Math.max(1, Integer.parseInt(this.breakerWindow.trim()));
+		} catch (NumberFormatException e) {
+			return DEFAULT_BREAKER_WINDOW;
+		}
+	}
+
+	/**
+	 * Returns the delay of the first afterbuild restart as entered.
+	 * 
+	 * @return backoffBase.
+	 */
+	public String getBackoffBase() {
+		return this.backoffBase;
+	}
+
+	/**
+	 * Returns the factor of the afterbuild restart delay as entered.
+	 * 
+	 * @return backoffMultiplier.
+	 */
+	public String getBackoffMultiplier() {
+		return this.backoffMultiplier;
+	}
+
+	/**
+	 * Returns the maximal afterbuild restart delay as entered.
+	 * 
+	 * @return backoffCap.
+	 */
+	public String getBackoffCap() {
+		return this.backoffCap;
+	}
+
+	/**
+	 * Returns the jitter of the afterbuild restart delay as entered.
+	 * 
+	 * @return backoffJitter.
+	 */
+	public String getBackoffJitter() {
+		return this.backoffJitter;
+	}
+
+	/**
+	 * Returns the policy for the delay of afterbuild restarts.
+	 * 
+	 * @return the policy, blank values taken from
+	 *         {@link BackoffPolicy#DEFAULT}.
+	 */
+	public BackoffPolicy getBackoffPolicy() {
+		return BackoffPolicy.DEFAULT.override(this.backoffBase,
+				this.backoffMultiplier, this.backoffCap, this.backoffJitter);
+	}
 }
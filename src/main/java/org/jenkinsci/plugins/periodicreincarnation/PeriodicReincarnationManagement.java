@@ -0,0 +1,350 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+
+/**
+ * Management page of the plugin. Shows what the plugin has been doing and
+ * offers the same information as JSON under
+ * {@code /manage/periodic-reincarnation/metrics}.
+ */
+@Extension
+public class PeriodicReincarnationManagement extends ManagementLink {
+
+	@Override
+	public String getIconFileName() {
+		return "clock.png";
+	}
+
+	@Override
+	public String getDisplayName() {
+		return "Periodic Reincarnation";
+	}
+
+	@Override
+	public String getUrlName() {
+		return "periodic-reincarnation";
+	}
+
+	@Override
+	public String getDescription() {
+		return "Metrics of the periodic reincarnation of failed builds "
+				+ "and statistics of its periodic triggers.";
+	}
+
+	/**
+	 * Returns the metrics of the last cron cycle.
+	 *
+	 * @return the metrics or null.
+	 */
+	public CycleMetrics getLastCronCycle() {
+		return ReincarnationMetrics.getLastCronCycle();
+	}
+
+	/**
+	 * Returns the metrics of the last afterbuild evaluation.
+	 *
+	 * @return the metrics or null.
+	 */
+	public CycleMetrics getLastAfterbuildEvaluation() {
+		return ReincarnationMetrics.getLastAfterbuildEvaluation();
+	}
+
+	/**
+	 * Returns the totals of all cron cycles.
+	 *
+	 * @return the metrics.
+	 */
+	public CycleMetrics getCronTotals() {
+		return ReincarnationMetrics.getCronTotals();
+	}
+
+	/**
+	 * Returns the number of journal records dropped because the journal
+	 * writer fell behind.
+	 *
+	 * @return the number as long.
+	 */
+	public long getJournalDropped() {
+		final ReincarnationJournal journal = ReincarnationJournal.get();
+		return journal != null ? journal.getDropped() : 0;
+	}
+
+	/**
+	 * Returns the totals of all afterbuild evaluations.
+	 *
+	 * @return the metrics.
+	 */
+	public CycleMetrics getAfterbuildTotals() {
+		return ReincarnationMetrics.getAfterbuildTotals();
+	}
+
+	/**
+	 * Returns all configured periodic triggers.
+	 *
+	 * @return the triggers.
+	 */
+	public List<PeriodicTrigger> getPeriodicTriggers() {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null) {
+			return Collections.emptyList();
+		}
+		return config.getPeriodicTriggers();
+	}
+
+	/**
+	 * Returns the statistics of a periodic trigger.
+	 *
+	 * @param perTri
+	 *            the trigger.
+	 * @return the statistics.
+	 */
+	public TriggerStatistics getStatistics(PeriodicTrigger perTri) {
+		return TriggerStatistics.of(perTri);
+	}
+
+	/**
+	 * Returns the retries and successes of the restarts by a periodic
+	 * trigger.
+	 *
+	 * @param perTri
+	 *            the trigger.
+	 * @return the counts or null if they are not available.
+	 */
+	public RetryStatistics.Counts getRetryCounts(PeriodicTrigger perTri) {
+		final RetryStatistics retries = RetryStatistics.get();
+		return retries != null ? retries.getCounts(perTri.getKey()) : null;
+	}
+
+	/**
+	 * Returns the circuit breakers that hold restarts.
+	 *
+	 * @return copies of the breakers.
+	 */
+	public List<CircuitBreaker.Breaker> getOpenCircuitBreakers() {
+		return CircuitBreaker.get().getOpenBreakers();
+	}
+
+	/**
+	 * Returns the reports of the last cron cycles that restarted jobs.
+	 *
+	 * @return the reports, newest first.
+	 */
+	public List<CycleReport> getRecentCycleReports() {
+		return CycleReport.getRecent();
+	}
+
+	/**
+	 * Forgets the statistics of all triggers, including the retry
+	 * statistics, which lifts all suppressions.
+	 *
+	 * @param req
+	 *            the request.
+	 * @param rsp
+	 *            the response.
+	 * @throws IOException
+	 *             if the redirect fails.
+	 */
+	@RequirePOST
+	public void doResetStatistics(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		TriggerStatistics.resetAll();
+		final RetryStatistics retries = RetryStatistics.get();
+		if (retries != null) {
+			retries.reset();
+		}
+		rsp.sendRedirect(".");
+	}
+
+	/**
+	 * Writes all metrics as JSON.
+	 *
+	 * @param req
+	 *            the request.
+	 * @param rsp
+	 *            the response.
+	 * @throws IOException
+	 *             if the response cannot be written.
+	 */
+	public void doMetrics(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(ReincarnationMetrics.toJSON().toString(2));
+	}
+
+	/**
+	 * Writes the most recent restart decisions and outcomes as JSON, read
+	 * from memory and from the journal files. The
+	 * optional parameters {@code job} and {@code trigger} filter by the full
+	 * name of the job and the key of the trigger, {@code limit} sets the
+	 * maximal number of records, 100 by default.
+	 *
+	 * @param req
+	 *            the request.
+	 * @param rsp
+	 *            the response.
+	 * @throws IOException
+	 *             if the response cannot be written.
+	 */
+	public void doJournal(StaplerRequest req, StaplerResponse rsp)
+			throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		final JSONArray records = new JSONArray();
+		final ReincarnationJournal journal = ReincarnationJournal.get();
+		if (journal != null) {
+			int limit = 100;
+			try {
+				if (req.getParameter("limit") != null) {
+					limit = Integer.parseInt(req.getParameter("limit"));
+				}
+			} catch (NumberFormatException e) {
+				rsp.sendError(StaplerResponse.SC_BAD_REQUEST,
+						"limit must be a number");
+				return;
+			}
+			records.addAll(journal.query(req.getParameter("job"),
+					req.getParameter("trigger"), limit));
+		}
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(records.toString(2));
+	}
+
+	/**
+	 * Evaluates triggers against builds without restarting them and streams
+	 * the verdicts, one JSON object per line, see {@link DryRun}. The
+	 * parameter {@code job} is repeated for every job, or build as
+	 * {@code folder/job#42}. The optional parameters {@code trigger} and
+	 * {@code regex} select configured triggers by key and add regular
+	 * expressions not configured yet, all enabled triggers are evaluated
+	 * without them. {@code threads} and {@code matches} set the number of
+	 * threads and of matched lines reported per log.
+	 *
+	 * @param req
+	 *            the request.
+	 * @param rsp
+	 *            the response.
+	 * @throws IOException
+	 *             if the response cannot be written.
+	 * @throws InterruptedException
+	 *             if the dry run was interrupted.
+	 */
+	@RequirePOST
+	public void doDryRun(StaplerRequest req, StaplerResponse rsp)
+			throws IOException, InterruptedException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		final String[] jobs = req.getParameterValues("job");
+		if (config == null || jobs == null) {
+			rsp.sendError(StaplerResponse.SC_BAD_REQUEST, "job is required");
+			return;
+		}
+		final DryRun dryRun;
+		final List<Run<?, ?>> builds;
+		try {
+			dryRun = new DryRun(
+					DryRun.selectTriggers(config,
+							req.getParameterValues("trigger"),
+							req.getParameterValues("regex")),
+					getIntParameter(req, "threads", DryRun.DEFAULT_THREADS),
+					getIntParameter(req, "matches", 1),
+					config.getRegExTimeout());
+			builds = DryRun.resolveBuilds(Arrays.asList(jobs));
+		} catch (NumberFormatException e) {
+			rsp.sendError(StaplerResponse.SC_BAD_REQUEST,
+					"threads and matches must be numbers");
+			return;
+		} catch (AbortException e) {
+			rsp.sendError(StaplerResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		rsp.setContentType("application/x-ndjson;charset=UTF-8");
+		dryRun.run(builds.iterator(), rsp.getWriter());
+	}
+
+	/**
+	 * Backtests triggers against the last failed builds of every job and
+	 * streams the verdicts like {@link #doDryRun}, see {@link Backtest}. The
+	 * optional parameters {@code builds} and {@code budget} set the failed
+	 * builds per job and the megabytes that may be read, {@code trigger},
+	 * {@code regex} and {@code threads} are the same as for a dry run.
+	 *
+	 * @param req
+	 *            the request.
+	 * @param rsp
+	 *            the response.
+	 * @throws IOException
+	 *             if the response cannot be written.
+	 * @throws InterruptedException
+	 *             if the backtest was interrupted.
+	 */
+	@RequirePOST
+	public void doBacktest(StaplerRequest req, StaplerResponse rsp)
+			throws IOException, InterruptedException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null) {
+			rsp.sendError(StaplerResponse.SC_BAD_REQUEST,
+					"No configuration available");
+			return;
+		}
+		final DryRun dryRun;
+		final int builds;
+		try {
+			dryRun = new DryRun(
+					DryRun.selectTriggers(config,
+							req.getParameterValues("trigger"),
+							req.getParameterValues("regex")),
+					getIntParameter(req, "threads", DryRun.DEFAULT_THREADS), 1,
+					config.getRegExTimeout());
+			dryRun.setByteBudget(getIntParameter(req, "budget",
+					Backtest.DEFAULT_BUDGET_MB) * 1024L * 1024L);
+			builds = getIntParameter(req, "builds", Backtest.DEFAULT_BUILDS);
+		} catch (NumberFormatException e) {
+			rsp.sendError(StaplerResponse.SC_BAD_REQUEST,
+					"threads, builds and budget must be numbers");
+			return;
+		} catch (AbortException e) {
+			rsp.sendError(StaplerResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		rsp.setContentType("application/x-ndjson;charset=UTF-8");
+		dryRun.run(Backtest.failedBuilds(builds), rsp.getWriter());
+	}
+
+	/**
+	 * Returns a number given as request parameter.
+	 *
+	 * @param req
+	 *            the request.
+	 * @param name
+	 *            name of the parameter.
+	 * @param defaultValue
+	 *            the value if the parameter is missing.
+	 * @return the number.
+	 * @throws NumberFormatException
+	 *             if the parameter is not a number.
+	 */
+	private static int getIntParameter(StaplerRequest req, String name,
+			int defaultValue) {
+		final String value = req.getParameter(name);
+		return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+	}
+}
@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.periodicreincarnation;
 import java.util.logging.Logger;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import antlr.ANTLRException;
 import hudson.scheduler.CronTab;
@@ -44,6 +45,16 @@ public class PeriodicTrigger {
 	 * Script for master.
 	 */
 	public String masterAction;
+	/**
+	 * Tells if this periodic trigger is disabled, either by the user or
+	 * because it exceeded its time budget.
+	 */
+	private boolean disabled;
+	/**
+	 * Tells if a failed Pipeline should be restarted from the stage that
+	 * failed instead of being rebuilt from the start.
+	 */
+	private boolean restartFromStage;
 
 	/**
 	 * Constructor. Creates a periodic trigger.
@@ -114,6 +125,67 @@ public class PeriodicTrigger {
 		return this.masterAction;
 	}
 
+	/**
+	 * Tells if this periodic trigger is disabled.
+	 * 
+	 * @return true if disabled.
+	 */
+	public boolean isDisabled() {
+		return this.disabled;
+	}
+
+	/**
+	 * Enables or disables this periodic trigger.
+	 * 
+	 * @param disabled
+	 *            true to disable.
+	 */
+	@DataBoundSetter
+	public void setDisabled(boolean disabled) {
+		this.disabled = disabled;
+	}
+
+	/**
+	 * Tells if failed Pipelines are restarted from the failing stage.
+	 * 
+	 * @return true if restarted from the failing stage.
+	 */
+	public boolean isRestartFromStage() {
+		return this.restartFromStage;
+	}
+
+	/**
+	 * Enables or disables the restart of failed Pipelines from the failing
+	 * stage.
+	 * 
+	 * @param restartFromStage
+	 *            true to restart from the failing stage.
+	 */
+	@DataBoundSetter
+	public void setRestartFromStage(boolean restartFromStage) {
+		this.restartFromStage = restartFromStage;
+	}
+
+	/**
+	 * Returns a key identifying this periodic trigger, built from its type and
+	 * value. Used to keep statistics about the trigger.
+	 * 
+	 * @return the key as String.
+	 */
+	public String getKey() {
+		return this.getClass().getSimpleName() + ":" + this.value;
+	}
+
+	/**
+	 * Tells if evaluating this periodic trigger risks catastrophic
+	 * backtracking.
+	 * 
+	 * @return false, only regular expressions can backtrack.
+	 */
+	public boolean isBacktrackingRisk() {
+		return false;
+	}
+
 	/**
 	 * Checks if the current time corresponds to the cron tab configured for
 	 * this value. If such cron tab is missing or could not be parsed then the
@@ -0,0 +1,847 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.console.AnnotatedLargeText;
+import hudson.model.Action;
+import hudson.model.Actionable;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.ParametersAction;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
+
+/**
+ * Access to the flow graph of Pipeline runs. The Pipeline plugins are
+ * optional and require a newer core than this plugin, so their classes are
+ * looked up by name when they are installed. Every method returns null or
+ * false if Pipeline is not available or the graph cannot be read, and the
+ * caller falls back to handling the run like any other.
+ */
+public final class PipelineSupport {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(PipelineSupport.class.getName());
+
+	/**
+	 * Pipeline run.
+	 */
+	private static final String WORKFLOW_RUN = "org.jenkinsci.plugins.workflow.job.WorkflowRun";
+	/**
+	 * Action holding the log of a flow node.
+	 */
+	private static final String LOG_ACTION = "org.jenkinsci.plugins.workflow.actions.LogAction";
+	/**
+	 * Action naming a block, e.g. a stage.
+	 */
+	private static final String LABEL_ACTION = "org.jenkinsci.plugins.workflow.actions.LabelAction";
+	/**
+	 * Action naming a parallel branch.
+	 */
+	private static final String THREAD_NAME_ACTION = "org.jenkinsci.plugins.workflow.actions.ThreadNameAction";
+	/**
+	 * Action marking a node that failed.
+	 */
+	private static final String ERROR_ACTION = "org.jenkinsci.plugins.workflow.actions.ErrorAction";
+	/**
+	 * Start of a block.
+	 */
+	private static final String BLOCK_START_NODE = "org.jenkinsci.plugins.workflow.graph.BlockStartNode";
+	/**
+	 * End of a block.
+	 */
+	private static final String BLOCK_END_NODE = "org.jenkinsci.plugins.workflow.graph.BlockEndNode";
+	/**
+	 * Action holding the agent of a node block.
+	 */
+	private static final String WORKSPACE_ACTION = "org.jenkinsci.plugins.workflow.actions.WorkspaceAction";
+	/**
+	 * Declarative action restarting a run from a stage.
+	 */
+	private static final String RESTART_ACTION = "org.jenkinsci.plugins.pipeline.modeldefinition.actions.RestartDeclarativePipelineAction";
+	/**
+	 * Cause of a run restarted from a stage.
+	 */
+	private static final String RESTART_CAUSE = "org.jenkinsci.plugins.pipeline.modeldefinition.causes.RestartDeclarativePipelineCause";
+	/**
+	 * Action making a run resume the flow of the run it restarts.
+	 */
+	private static final String RESTART_FLOW_FACTORY_ACTION = "org.jenkinsci.plugins.pipeline.modeldefinition.actions.RestartFlowFactoryAction";
+
+	/**
+	 * Where triggers matched recent runs, by run and trigger key. Runs are
+	 * held weakly and the entries go away with them.
+	 */
+	private static final Map<Run<?, ?>, Map<String, LogHit>> HITS = new WeakHashMap<Run<?, ?>, Map<String, LogHit>>();
+
+	/**
+	 * Utility class.
+	 */
+	private PipelineSupport() {
+	}
+
+	/**
+	 * Determine if the plugin workflow-job is available.
+	 *
+	 * @return true iff pluginManager contains "workflow-job"
+	 */
+	public static boolean isAvailable() {
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return false;
+		return jenkins.pluginManager.getPlugin("workflow-job") != null;
+	}
+
+	/**
+	 * Tells if a run is a Pipeline run.
+	 *
+	 * @param run
+	 *            the run.
+	 * @return true for a Pipeline run.
+	 */
+	public static boolean isPipeline(Run<?, ?> run) {
+		if (run == null || !isAvailable()) {
+			return false;
+		}
+		final Class<?> workflowRun = load(WORKFLOW_RUN);
+		return workflowRun != null && workflowRun.isInstance(run);
+	}
+
+	/**
+	 * Searches a regular expression in the logs of the flow nodes of a
+	 * Pipeline run, one node after the other. Nodes of parallel branches that
+	 * failed come first, so a hit in the failing branch is found without
+	 * reading the logs of all other branches. The callback decides whether
+	 * the scan stops at a hit; the first hit tells where it was found. Lines
+	 * written outside of any node, like the result at the end of the run,
+	 * are not searched; the whole log is only searched if the flow graph
+	 * cannot be read.
+	 *
+	 * @param graph
+	 *            the flow graph of the run.
+	 * @param matcher
+	 *            the reg ex.
+	 * @param callback
+	 *            told about the matched lines, numbered over the node logs
+	 *            in the order they are read.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read; null to
+	 *            count nothing.
+	 * @return the result of the scan or null if the run has no flow graph or
+	 *         it cannot be read. The whole log has to be scanned in that
+	 *         case.
+	 * @throws RegExTimeoutException
+	 *             if matching a line exceeded the time budget.
+	 */
+	public static ScanResult scan(FlowGraph graph, LineMatcher matcher,
+			MatchCallback callback, CycleMetrics metrics) {
+		final List<Actionable> nodes = graph.getNodes();
+		final Class<? extends Action> logAction = loadAction(LOG_ACTION);
+		if (nodes == null || logAction == null) {
+			return null;
+		}
+		final long[] counts = new long[3];
+		LogHit location = null;
+		try {
+			for (Actionable node : nodes) {
+				final Action log = node.getAction(logAction);
+				if (log == null) {
+					continue;
+				}
+				final long hits = counts[2];
+				final boolean isStopped = scanLog(node, log, matcher,
+						callback, counts);
+				if (hits == 0 && counts[2] > 0) {
+					location = locate(node, graph.blocks);
+				}
+				if (isStopped) {
+					break;
+				}
+			}
+			return new ScanResult(counts[2] > 0, counts[0], counts[1],
+					location);
+		} catch (ReflectiveOperationException e) {
+			LOGGER.log(Level.FINE, "Cannot read the flow graph of "
+					+ graph.run.getFullDisplayName(), e);
+			return null;
+		} finally {
+			if (metrics != null) {
+				metrics.logScanned(counts[1]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the stage to restart a failed Pipeline run from. With a matcher
+	 * this is the stage of the first flow node whose log matches, without
+	 * one it is the stage of the first node that failed.
+	 *
+	 * @param run
+	 *            the Pipeline run.
+	 * @param matcher
+	 *            the reg ex of the trigger, null for other triggers.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read.
+	 * @return the name of the stage or null if none could be found.
+	 */
+	public static String findStage(Run<?, ?> run, LineMatcher matcher,
+			CycleMetrics metrics) {
+		try {
+			if (matcher != null) {
+				final ScanResult result = scan(new FlowGraph(run), matcher,
+						MatchCallback.FIRST_HIT, metrics);
+				return result != null && result.getLocation() != null
+						? result.getLocation().getStage()
+						: null;
+			}
+			final List<Actionable> nodes = getNodes(run);
+			final Actionable node = nodes != null ? findFailedNode(nodes)
+					: null;
+			if (node == null) {
+				return null;
+			}
+			return locate(node, new HashMap<String, List<Actionable>>())
+					.getStage();
+		} catch (ReflectiveOperationException e) {
+			LOGGER.log(Level.FINE, "Cannot read the flow graph of "
+					+ run.getFullDisplayName(), e);
+		} catch (RegExTimeoutException e) {
+			LOGGER.fine("RegEx exceeded its time budget on a flow node log of "
+					+ run.getFullDisplayName());
+		}
+		return null;
+	}
+
+	/**
+	 * Remembers where a trigger matched a run, so that the restart can
+	 * target the matching part of the Pipeline.
+	 *
+	 * @param run
+	 *            the run.
+	 * @param perTri
+	 *            the trigger.
+	 * @param hit
+	 *            where the trigger matched, null to forget it.
+	 */
+	public static void rememberHit(Run<?, ?> run, PeriodicTrigger perTri,
+			LogHit hit) {
+		synchronized (HITS) {
+			Map<String, LogHit> hits = HITS.get(run);
+			if (hit == null) {
+				if (hits != null) {
+					hits.remove(perTri.getKey());
+				}
+				return;
+			}
+			if (hits == null) {
+				hits = new HashMap<String, LogHit>();
+				HITS.put(run, hits);
+			}
+			hits.put(perTri.getKey(), hit);
+		}
+	}
+
+	/**
+	 * Returns where a trigger matched a run in the last scan.
+	 *
+	 * @param run
+	 *            the run.
+	 * @param perTri
+	 *            the trigger.
+	 * @return the hit or null if it is not known.
+	 */
+	public static LogHit getHit(Run<?, ?> run, PeriodicTrigger perTri) {
+		if (run == null || perTri == null) {
+			return null;
+		}
+		synchronized (HITS) {
+			final Map<String, LogHit> hits = HITS.get(run);
+			return hits != null ? hits.get(perTri.getKey()) : null;
+		}
+	}
+
+	/**
+	 * Restarts a Pipeline run from the given stage the way the restart action
+	 * of Declarative Pipeline does. The action schedules the run at once and
+	 * with a cause of its own, so the run is scheduled here instead, with the
+	 * cause of the plugin and the quiet period from the start.
+	 *
+	 * @param run
+	 *            the failed run.
+	 * @param stage
+	 *            the stage to restart from.
+	 * @param cause
+	 *            the cause for the restart.
+	 * @param triggerKey
+	 *            the key of the periodic trigger causing the restart, or null.
+	 * @param quietPeriod
+	 *            amount of time the run will wait in the queue(in seconds).
+	 * @return true if the restart was scheduled, false if the run cannot be
+	 *         restarted from this stage and has to be rebuilt from the start.
+	 */
+	public static boolean restartFromStage(Run<?, ?> run, String stage,
+			String cause, String triggerKey, int quietPeriod) {
+		final Class<?> restartAction = load(RESTART_ACTION);
+		final Class<?> restartCause = load(RESTART_CAUSE);
+		final Class<? extends Action> flowFactory = loadAction(
+				RESTART_FLOW_FACTORY_ACTION);
+		if (restartAction == null || restartCause == null
+				|| flowFactory == null || stage == null
+				|| !Cause.class.isAssignableFrom(restartCause)) {
+			return false;
+		}
+		try {
+			final Object action = restartAction.getConstructor(Run.class)
+					.newInstance(run);
+			if (!(Boolean) invoke(action, "isRestartEnabled")) {
+				return false;
+			}
+			final List<?> restartable = (List<?>) invoke(action,
+					"getRestartableStages");
+			if (restartable == null || !restartable.contains(stage)) {
+				return false;
+			}
+			final Action[] actions = getRestartActions(run,
+					restartCause.asSubclass(Cause.class)
+							.getConstructor(Run.class, String.class)
+							.newInstance(run, stage),
+					flowFactory.getConstructor(String.class)
+							.newInstance(run.getExternalizableId()),
+					new PeriodicReincarnationBuildCause(
+							cause + " (from stage " + stage + ")",
+							triggerKey));
+			return ParameterizedJobMixIn.scheduleBuild2(run.getParent(),
+					quietPeriod, actions) != null;
+		} catch (ReflectiveOperationException e) {
+			LOGGER.log(Level.FINE, "Cannot restart " + run.getFullDisplayName()
+					+ " from stage " + stage, e);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the actions a run restarted from a stage is scheduled with.
+	 * Both causes go into one cause action, so the restart is recognized as
+	 * one of the plugin as soon as it is in the queue.
+	 *
+	 * @param run
+	 *            the failed run.
+	 * @param stageCause
+	 *            the cause telling the run was restarted from a stage.
+	 * @param flowFactory
+	 *            the action resuming the flow of the failed run.
+	 * @param cause
+	 *            the cause of the plugin.
+	 * @return the actions.
+	 */
+	static Action[] getRestartActions(Run<?, ?> run, Cause stageCause,
+			Action flowFactory, PeriodicReincarnationBuildCause cause) {
+		final List<Action> actions = new ArrayList<Action>();
+		actions.add(new CauseAction(stageCause, cause));
+		actions.add(flowFactory);
+		final ParametersAction parameters = run
+				.getAction(ParametersAction.class);
+		if (parameters != null) {
+			actions.add(parameters);
+		}
+		return actions.toArray(new Action[actions.size()]);
+	}
+
+	/**
+	 * Returns all nodes of the flow graph of a run, ordered by id.
+	 *
+	 * @param run
+	 *            the run.
+	 * @return the nodes or null if the run has no flow graph.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	static List<Actionable> getNodes(Run<?, ?> run)
+			throws ReflectiveOperationException {
+		if (!isPipeline(run)) {
+			return null;
+		}
+		final Object execution = invoke(run, "getExecution");
+		if (execution == null) {
+			return null;
+		}
+		final List<Actionable> nodes = new ArrayList<Actionable>();
+		final Set<String> visited = new HashSet<String>();
+		final List<Actionable> pending = new ArrayList<Actionable>(
+				toNodes(invoke(execution, "getCurrentHeads")));
+		while (!pending.isEmpty()) {
+			final Actionable node = pending.remove(pending.size() - 1);
+			if (visited.add(getId(node))) {
+				nodes.add(node);
+				pending.addAll(getParents(node));
+			}
+		}
+		Collections.sort(nodes, new Comparator<Actionable>() {
+			public int compare(Actionable o1, Actionable o2) {
+				return compareIds(getId(o1), getId(o2));
+			}
+		});
+		return nodes;
+	}
+
+	/**
+	 * Returns the first node that failed.
+	 *
+	 * @param nodes
+	 *            the nodes in order.
+	 * @return the node or null.
+	 */
+	private static Actionable findFailedNode(List<Actionable> nodes) {
+		final Class<? extends Action> errorAction = loadAction(ERROR_ACTION);
+		if (errorAction == null) {
+			return null;
+		}
+		for (Actionable node : nodes) {
+			if (node.getAction(errorAction) != null) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Orders the nodes so that the nodes of parallel branches containing a
+	 * failed node come first. The order within both groups is kept.
+	 *
+	 * @param nodes
+	 *            the nodes in order.
+	 * @param blocks
+	 *            enclosing blocks already known, by node id.
+	 * @return the nodes in the new order.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	private static List<Actionable> failedBranchesFirst(List<Actionable> nodes,
+			Map<String, List<Actionable>> blocks)
+			throws ReflectiveOperationException {
+		final Class<? extends Action> errorAction = loadAction(ERROR_ACTION);
+		final Class<? extends Action> threadNameAction = loadAction(
+				THREAD_NAME_ACTION);
+		if (errorAction == null || threadNameAction == null) {
+			return nodes;
+		}
+		final Set<String> failedBranches = new HashSet<String>();
+		for (Actionable node : nodes) {
+			if (node.getAction(errorAction) != null) {
+				final Actionable branch = findBlock(node, threadNameAction,
+						blocks);
+				if (branch != null) {
+					failedBranches.add(getId(branch));
+				}
+			}
+		}
+		if (failedBranches.isEmpty()) {
+			return nodes;
+		}
+		final List<Actionable> ordered = new ArrayList<Actionable>();
+		final List<Actionable> others = new ArrayList<Actionable>();
+		for (Actionable node : nodes) {
+			final Actionable branch = findBlock(node, threadNameAction,
+					blocks);
+			if (branch != null && failedBranches.contains(getId(branch))) {
+				ordered.add(node);
+			} else {
+				others.add(node);
+			}
+		}
+		ordered.addAll(others);
+		return ordered;
+	}
+
+	/**
+	 * Searches the log of a single node.
+	 *
+	 * @param node
+	 *            the node.
+	 * @param log
+	 *            the log action of the node.
+	 * @param matcher
+	 *            the reg ex.
+	 * @param callback
+	 *            told about the matched lines.
+	 * @param counts
+	 *            lines read, characters read and lines matched, updated
+	 *            while reading.
+	 * @return true if the callback stopped the scan.
+	 * @throws ReflectiveOperationException
+	 *             if the log cannot be read.
+	 */
+	private static boolean scanLog(Actionable node, Action log,
+			LineMatcher matcher, MatchCallback callback, long[] counts)
+			throws ReflectiveOperationException {
+		final AnnotatedLargeText<?> text = (AnnotatedLargeText<?>) invoke(log,
+				"getLogText");
+		if (text == null) {
+			return false;
+		}
+		try (BufferedReader reader = new BufferedReader(text.readAll())) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				counts[0]++;
+				counts[1] += line.length() + 1;
+				if (matcher.find(line) && !line.contains(Utils.OWN_MESSAGE)) {
+					counts[2]++;
+					if (!callback.matched(counts[0])) {
+						return true;
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.fine("Log of flow node " + getId(node)
+					+ " cannot be read: " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Tells where a node is: the outermost stage, the innermost parallel
+	 * branch and the agent of the innermost node block around it.
+	 *
+	 * @param node
+	 *            the node.
+	 * @param blocks
+	 *            enclosing blocks already known, by node id.
+	 * @return the location.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	static LogHit locate(Actionable node, Map<String, List<Actionable>> blocks)
+			throws ReflectiveOperationException {
+		final Class<? extends Action> labelAction = loadAction(LABEL_ACTION);
+		final Class<? extends Action> threadNameAction = loadAction(
+				THREAD_NAME_ACTION);
+		final Class<? extends Action> workspaceAction = loadAction(
+				WORKSPACE_ACTION);
+		String stage = null;
+		String branch = null;
+		String agent = null;
+		for (Actionable start : getEnclosingBlocks(node, blocks)) {
+			final Action threadName = threadNameAction != null
+					? start.getAction(threadNameAction)
+					: null;
+			final Action label = labelAction != null
+					? start.getAction(labelAction)
+					: null;
+			final Action workspace = workspaceAction != null
+					? start.getAction(workspaceAction)
+					: null;
+			if (threadName != null) {
+				if (branch == null) {
+					branch = (String) invoke(threadName, "getThreadName");
+				}
+			} else if (label != null) {
+				// innermost first, the last one wins
+				stage = label.getDisplayName();
+			}
+			if (workspace != null && agent == null) {
+				agent = (String) invoke(workspace, "getNode");
+			}
+		}
+		return new LogHit(getId(node), stage, branch, agent);
+	}
+
+	/**
+	 * Returns the innermost block around a node that carries the given
+	 * action.
+	 *
+	 * @param node
+	 *            the node.
+	 * @param action
+	 *            the class of the action.
+	 * @param blocks
+	 *            enclosing blocks already known, by node id.
+	 * @return the start node of the block or null.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	private static Actionable findBlock(Actionable node,
+			Class<? extends Action> action,
+			Map<String, List<Actionable>> blocks)
+			throws ReflectiveOperationException {
+		for (Actionable start : getEnclosingBlocks(node, blocks)) {
+			if (start.getAction(action) != null) {
+				return start;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the start nodes of the blocks enclosing a node, innermost
+	 * first. Walks back through the graph, hops over blocks that were
+	 * already closed and stops at the first node whose blocks are known, so
+	 * that a whole graph is walked only once.
+	 *
+	 * @param node
+	 *            the node.
+	 * @param blocks
+	 *            enclosing blocks already known, by node id. Updated with
+	 *            every node on the way.
+	 * @return the start nodes.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	static List<Actionable> getEnclosingBlocks(Actionable node,
+			Map<String, List<Actionable>> blocks)
+			throws ReflectiveOperationException {
+		final Class<?> blockStart = load(BLOCK_START_NODE);
+		final Class<?> blockEnd = load(BLOCK_END_NODE);
+		if (blockStart == null || blockEnd == null) {
+			return Collections.emptyList();
+		}
+		// nodes whose blocks are still unknown, each with the node its blocks
+		// derive from
+		final List<Actionable> path = new ArrayList<Actionable>();
+		final List<Actionable> predecessors = new ArrayList<Actionable>();
+		List<Actionable> known = blocks.get(getId(node));
+		Actionable current = node;
+		while (known == null) {
+			final Actionable parent = firstParent(current);
+			path.add(current);
+			predecessors.add(parent);
+			if (parent == null) {
+				known = Collections.emptyList();
+				break;
+			}
+			// the blocks of a node after a closed block are the blocks
+			// around its start
+			current = blockEnd.isInstance(parent)
+					? (Actionable) invoke(parent, "getStartNode")
+					: parent;
+			known = blocks.get(getId(current));
+		}
+		for (int i = path.size() - 1; i >= 0; i--) {
+			final Actionable predecessor = predecessors.get(i);
+			if (predecessor != null && blockStart.isInstance(predecessor)) {
+				final List<Actionable> enclosing = new ArrayList<Actionable>(
+						known.size() + 1);
+				enclosing.add(predecessor);
+				enclosing.addAll(known);
+				known = enclosing;
+			}
+			blocks.put(getId(path.get(i)), known);
+		}
+		return known;
+	}
+
+	/**
+	 * Returns the id of a node.
+	 *
+	 * @param node
+	 *            the node.
+	 * @return the id.
+	 */
+	static String getId(Actionable node) {
+		try {
+			return (String) invoke(node, "getId");
+		} catch (ReflectiveOperationException e) {
+			return String.valueOf(System.identityHashCode(node));
+		}
+	}
+
+	/**
+	 * Compares two node ids, numerically if both are numbers.
+	 *
+	 * @param id1
+	 *            the first id.
+	 * @param id2
+	 *            the second id.
+	 * @return the comparison result.
+	 */
+	private static int compareIds(String id1, String id2) {
+		try {
+			return Long.compare(Long.parseLong(id1), Long.parseLong(id2));
+		} catch (NumberFormatException e) {
+			return id1.compareTo(id2);
+		}
+	}
+
+	/**
+	 * Returns the parents of a node.
+	 *
+	 * @param node
+	 *            the node.
+	 * @return the parents.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	private static List<Actionable> getParents(Actionable node)
+			throws ReflectiveOperationException {
+		return toNodes(invoke(node, "getParents"));
+	}
+
+	/**
+	 * Returns the first parent of a node.
+	 *
+	 * @param node
+	 *            the node.
+	 * @return the parent or null for the start of the graph.
+	 * @throws ReflectiveOperationException
+	 *             if the graph cannot be read.
+	 */
+	private static Actionable firstParent(Actionable node)
+			throws ReflectiveOperationException {
+		final List<Actionable> parents = getParents(node);
+		return parents.isEmpty() ? null : parents.get(0);
+	}
+
+	/**
+	 * Converts a list of flow nodes.
+	 *
+	 * @param list
+	 *            the list returned by Pipeline.
+	 * @return the nodes.
+	 */
+	private static List<Actionable> toNodes(Object list) {
+		final List<Actionable> nodes = new ArrayList<Actionable>();
+		if (list instanceof List) {
+			for (Object node : (List<?>) list) {
+				if (node instanceof Actionable) {
+					nodes.add((Actionable) node);
+				}
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Calls a public method without arguments.
+	 *
+	 * @param target
+	 *            the object.
+	 * @param name
+	 *            the name of the method.
+	 * @return the result.
+	 * @throws ReflectiveOperationException
+	 *             if there is no such method or it failed.
+	 */
+	private static Object invoke(Object target, String name)
+			throws ReflectiveOperationException {
+		final Method method = target.getClass().getMethod(name);
+		// the implementing class may not be public
+		method.setAccessible(true);
+		return method.invoke(target);
+	}
+
+	/**
+	 * Loads an action class of an optional plugin.
+	 *
+	 * @param name
+	 *            the name of the class.
+	 * @return the class or null if it is not available.
+	 */
+	private static Class<? extends Action> loadAction(String name) {
+		final Class<?> cls = load(name);
+		return cls != null && Action.class.isAssignableFrom(cls)
+				? cls.asSubclass(Action.class)
+				: null;
+	}
+
+	/**
+	 * Loads a class of an optional plugin.
+	 *
+	 * @param name
+	 *            the name of the class.
+	 * @return the class or null if it is not available.
+	 */
+	private static Class<?> load(String name) {
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return null;
+		}
+		try {
+			return jenkins.pluginManager.uberClassLoader.loadClass(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The flow graph of a run, walked on first use and then shared by all
+	 * triggers checked against the run. Used by one evaluation at a time.
+	 */
+	static class FlowGraph {
+
+		/**
+		 * The run.
+		 */
+		private final Run<?, ?> run;
+		/**
+		 * Enclosing blocks already known, by node id.
+		 */
+		private final Map<String, List<Actionable>> blocks = new HashMap<String, List<Actionable>>();
+		/**
+		 * True once the graph was walked.
+		 */
+		private boolean isRead;
+		/**
+		 * The nodes, those of failed parallel branches first.
+		 */
+		private List<Actionable> nodes;
+
+		/**
+		 * Constructor. Does not walk the graph yet.
+		 *
+		 * @param run
+		 *            the run, of any type.
+		 */
+		FlowGraph(Run<?, ?> run) {
+			this.run = run;
+		}
+
+		/**
+		 * Returns the nodes of the graph, those of failed parallel branches
+		 * first. The graph is walked on the first call only.
+		 *
+		 * @return the nodes or null if the run has no flow graph or it cannot
+		 *         be read.
+		 */
+		List<Actionable> getNodes() {
+			if (!this.isRead) {
+				this.isRead = true;
+				try {
+					this.nodes = read();
+				} catch (ReflectiveOperationException e) {
+					LOGGER.log(Level.FINE, "Cannot read the flow graph of "
+							+ this.run.getFullDisplayName(), e);
+				}
+			}
+			return this.nodes;
+		}
+
+		/**
+		 * Walks the graph.
+		 *
+		 * @return the nodes, those of failed parallel branches first, or null
+		 *         if the run has no flow graph.
+		 * @throws ReflectiveOperationException
+		 *             if the graph cannot be read.
+		 */
+		List<Actionable> read() throws ReflectiveOperationException {
+			final List<Actionable> all = PipelineSupport.getNodes(this.run);
+			return all != null ? failedBranchesFirst(all, this.blocks) : null;
+		}
+	}
+}
@@ -15,6 +15,17 @@ import hudson.AbortException;
  */
 public class RegEx extends PeriodicTrigger {
 
+	/**
+	 * The compiled pattern, cached for this reg ex. Volatile, as the cron
+	 * cycle, afterbuild restarts and dry runs compile it on their own threads.
+	 */
+	private transient volatile Pattern pattern;
+
+	/**
+	 * The line matcher, cached for this reg ex together with its time budget.
+	 */
+	private transient volatile LineMatcher lineMatcher;
+
 	/**
 	 * Constructor. Creates a reg ex.
 	 * 
@@ -43,12 +54,41 @@ public class RegEx extends PeriodicTrigger {
 	 *             if the pattern could not be compiled.
 	 */
 	public Pattern getPattern() throws AbortException {
-		Pattern pattern;
-		try {
-			pattern = Pattern.compile(this.value);
-		} catch (PatternSyntaxException e) {
-			throw new AbortException("RegEx cannot be compiled!");
+		Pattern compiled = this.pattern;
+		if (compiled == null) {
+			try {
+				compiled = Pattern.compile(this.value);
+			} catch (PatternSyntaxException e) {
+				throw new AbortException("RegEx cannot be compiled!");
+			}
+			this.pattern = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns a line matcher for this reg ex.
+	 * 
+	 * @param timeout
+	 *            time budget per line in ms, 0 means unlimited.
+	 * @return the line matcher.
+	 * @throws AbortException
+	 *             if the pattern could not be compiled.
+	 */
+	public LineMatcher getLineMatcher(long timeout) throws AbortException {
+		LineMatcher matcher = this.lineMatcher;
+		if (matcher == null || matcher.getBudgetMillis() != timeout) {
+			matcher = new LineMatcher(getPattern(), timeout);
+			this.lineMatcher = matcher;
 		}
-		return pattern;
+		return matcher;
+	}
+
+	/**
+	 * {@inheritDoc} Uses {@link RegExAnalyzer} on the value of this reg ex.
+	 */
+	@Override
+	public boolean isBacktrackingRisk() {
+		return RegExAnalyzer.isBacktrackingRisk(this.value);
 	}
 }
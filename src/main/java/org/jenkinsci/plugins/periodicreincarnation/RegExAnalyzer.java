@@ -0,0 +1,204 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Looks at the source of a regular expression and tells if it risks
+ * catastrophic backtracking in java.util.regex. This is a heuristic, it
+ * recognizes the two shapes that cause trouble in practice:
+ * <ul>
+ * <li>an unbounded quantifier applied to a group that itself contains an
+ * unbounded quantifier, like {@code (a+)+b} or {@code (\w*\s?)*x},</li>
+ * <li>two unbounded wildcards following each other, like {@code .*.*x} or
+ * {@code .+\s*\S*x}. Wildcards are the dot, negated character classes and
+ * {@code \S}, {@code \W} and {@code \D}.</li>
+ * </ul>
+ */
+public final class RegExAnalyzer {
+
+	/**
+	 * Utility class.
+	 */
+	private RegExAnalyzer() {
+	}
+
+	/**
+	 * Tells if the given regular expression risks catastrophic backtracking.
+	 *
+	 * @param regEx
+	 *            the source of the regular expression.
+	 * @return true if the expression contains a risky construct.
+	 */
+	public static boolean isBacktrackingRisk(String regEx) {
+		if (regEx == null) {
+			return false;
+		}
+		// one entry per open group, true if the group contains an unbounded
+		// quantifier
+		final Deque<boolean[]> groups = new ArrayDeque<boolean[]>();
+		boolean[] current = new boolean[1];
+		// true if the last atom was a wildcard with an unbounded quantifier
+		// and nothing but optional atoms followed it
+		boolean openWildcard = false;
+		final int length = regEx.length();
+		int i = 0;
+		while (i < length) {
+			final char c = regEx.charAt(i);
+			boolean isWildcard = false;
+			boolean isGroupEnd = false;
+			boolean[] closed = null;
+			if (c == '\\') {
+				if (i + 1 < length && regEx.charAt(i + 1) == 'Q') {
+					final int end = regEx.indexOf("\\E", i + 2);
+					i = end < 0 ? length : end + 2;
+				} else {
+					isWildcard = i + 1 < length && "SWD"
+							.indexOf(regEx.charAt(i + 1)) >= 0;
+					i += 2;
+				}
+			} else if (c == '[') {
+				isWildcard = regEx.startsWith("[^", i);
+				i = skipCharacterClass(regEx, i);
+			} else if (c == '(') {
+				groups.push(current);
+				current = new boolean[1];
+				i++;
+				continue;
+			} else if (c == ')') {
+				closed = current;
+				current = groups.isEmpty() ? new boolean[1] : groups.pop();
+				current[0] |= closed[0];
+				isGroupEnd = true;
+				i++;
+			} else if (c == '|') {
+				openWildcard = false;
+				i++;
+				continue;
+			} else {
+				isWildcard = c == '.';
+				i++;
+			}
+			// look at the quantifier following the atom
+			final int quantifierEnd = skipQuantifier(regEx, i);
+			final boolean isUnbounded = isUnbounded(regEx, i, quantifierEnd);
+			final boolean isOptional = quantifierEnd > i
+					&& (regEx.charAt(i) == '*' || regEx.charAt(i) == '?'
+							|| regEx.startsWith("{0", i));
+			i = quantifierEnd;
+			if (isUnbounded) {
+				if (isGroupEnd && closed[0]) {
+					return true;
+				}
+				if (isWildcard && openWildcard) {
+					return true;
+				}
+				current[0] = true;
+			}
+			if (isUnbounded && isWildcard) {
+				openWildcard = true;
+			} else if (!isOptional) {
+				openWildcard = false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index after the character class starting at the given
+	 * index.
+	 *
+	 * @param regEx
+	 *            the regular expression.
+	 * @param start
+	 *            index of the opening bracket.
+	 * @return index after the closing bracket.
+	 */
+	private static int skipCharacterClass(String regEx, int start) {
+		int depth = 0;
+		int i = start;
+		while (i < regEx.length()) {
+			final char c = regEx.charAt(i);
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+			if (c == '[') {
+				depth++;
+			} else if (c == ']' && i > start + 1) {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+			i++;
+		}
+		return regEx.length();
+	}
+
+	/**
+	 * Returns the index after the quantifier starting at the given index, or
+	 * the index itself if there is none. Lazy and possessive modifiers are
+	 * part of the quantifier.
+	 *
+	 * @param regEx
+	 *            the regular expression.
+	 * @param start
+	 *            index after an atom.
+	 * @return index after the quantifier.
+	 */
+	private static int skipQuantifier(String regEx, int start) {
+		if (start >= regEx.length()) {
+			return start;
+		}
+		int i = start;
+		final char c = regEx.charAt(i);
+		if (c == '*' || c == '+' || c == '?') {
+			i++;
+		} else if (c == '{') {
+			final int end = regEx.indexOf('}', i);
+			if (end < 0) {
+				return start;
+			}
+			i = end + 1;
+		} else {
+			return start;
+		}
+		if (i < regEx.length()
+				&& (regEx.charAt(i) == '?' || regEx.charAt(i) == '+')) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Tells if the quantifier between the given indices is unbounded. A
+	 * possessive quantifier never backtracks and does not count.
+	 *
+	 * @param regEx
+	 *            the regular expression.
+	 * @param start
+	 *            index of the quantifier.
+	 * @param end
+	 *            index after the quantifier.
+	 * @return true for *, + and {n,}.
+	 */
+	private static boolean isUnbounded(String regEx, int start, int end) {
+		if (end <= start) {
+			return false;
+		}
+		if (end - start > 1 && regEx.charAt(end - 1) == '+') {
+			return false;
+		}
+		final char c = regEx.charAt(start);
+		if (c == '*' || c == '+') {
+			return true;
+		}
+		if (c == '{') {
+			final String bounds = regEx.substring(start + 1,
+					regEx.indexOf('}', start));
+			return bounds.endsWith(",");
+		}
+		return false;
+	}
+}
@@ -0,0 +1,24 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+/**
+ * Thrown when matching a regular expression against a log line takes longer
+ * than the configured time budget. Unchecked because it has to travel through
+ * java.util.regex.Matcher.
+ */
+public class RegExTimeoutException extends RuntimeException {
+
+	/**
+	 * Serial version.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param message
+	 *            the detail message.
+	 */
+	public RegExTimeoutException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,515 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+/**
+ * Append-only journal of the restart decisions of the plugin and of the
+ * outcome of the restarted builds. Every record is one JSON object per line in
+ * {@code periodic-reincarnation/journal.jsonl} in the Jenkins home directory:
+ *
+ * <pre>
+ * {"time":1514764800000,"type":"decision","origin":"cron","job":"folder/job","build":12,"trigger":"RegEx:No space left","cause":"RegEx hit: No space left","latencyMillis":5230,"outcome":"scheduled"}
+ * {"time":1514765100000,"type":"outcome","job":"folder/job","build":13,"trigger":"RegEx:No space left","result":"SUCCESS"}
+ * </pre>
+ *
+ * Records are written by a background thread, so recording never blocks a
+ * cron cycle or a build. If the writer falls behind by more than
+ * {@value #QUEUE_CAPACITY} records, further records are dropped and counted.
+ * The file is rotated when it exceeds its maximal size. The most recent
+ * records are also kept in memory; queries read them first and continue in
+ * the journal file and the rotated files.
+ */
+public final class ReincarnationJournal {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(ReincarnationJournal.class.getName());
+
+	/**
+	 * Records waiting for the writer at most.
+	 */
+	static final int QUEUE_CAPACITY = 10000;
+	/**
+	 * Records kept in memory for queries.
+	 */
+	static final int RECENT_CAPACITY = 1000;
+	/**
+	 * Size in bytes at which the journal is rotated.
+	 */
+	static final long MAX_SIZE = 10L * 1024 * 1024;
+	/**
+	 * Number of rotated files kept.
+	 */
+	static final int MAX_FILES = 5;
+
+	/**
+	 * Outcome of a decision that scheduled a build.
+	 */
+	public static final String SCHEDULED = "scheduled";
+	/**
+	 * Outcome of a decision that restarted a Pipeline from a stage.
+	 */
+	public static final String STAGE_RESTARTED = "stage-restarted";
+	/**
+	 * Outcome of a decision that could not schedule a build.
+	 */
+	public static final String NOT_SCHEDULED = "not-scheduled";
+	/**
+	 * Outcome of a decision held by an open circuit breaker.
+	 */
+	public static final String HELD = "held";
+
+	/**
+	 * The journal of this Jenkins, created on first use.
+	 */
+	private static ReincarnationJournal instance;
+
+	/**
+	 * The journal file.
+	 */
+	private final File file;
+	/**
+	 * Size at which the file is rotated.
+	 */
+	private final long maxSize;
+	/**
+	 * Rotated files kept.
+	 */
+	private final int maxFiles;
+	/**
+	 * Records waiting for the writer.
+	 */
+	private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<Entry>(
+			QUEUE_CAPACITY);
+	/**
+	 * The most recent records, oldest first.
+	 */
+	private final Deque<Entry> recent = new ArrayDeque<Entry>();
+	/**
+	 * Sequence number of the next record, guarded by {@link #recent}.
+	 */
+	private long recorded;
+	/**
+	 * Sequence number of the first record not written yet, guarded by
+	 * {@link #fileLock}.
+	 */
+	private long writtenUpTo;
+	/**
+	 * Records dropped because the writer fell behind.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+	/**
+	 * Guards the journal file against concurrent writes and rotation.
+	 */
+	private final Object fileLock = new Object();
+	/**
+	 * The writer thread, null until the first record.
+	 */
+	private Thread writer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the journal file.
+	 * @param maxSize
+	 *            size in bytes at which the file is rotated.
+	 * @param maxFiles
+	 *            rotated files kept.
+	 */
+	ReincarnationJournal(File file, long maxSize, int maxFiles) {
+		this.file = file;
+		this.maxSize = maxSize;
+		this.maxFiles = maxFiles;
+	}
+
+	/**
+	 * Returns the journal of this Jenkins.
+	 *
+	 * @return the journal or null if Jenkins is not available.
+	 */
+	public static synchronized ReincarnationJournal get() {
+		if (instance == null) {
+			final Jenkins jenkins = Jenkins.getInstance();
+			if (jenkins == null) {
+				return null;
+			}
+			instance = new ReincarnationJournal(
+					new File(new File(jenkins.getRootDir(),
+							"periodic-reincarnation"), "journal.jsonl"),
+					MAX_SIZE, MAX_FILES);
+		}
+		return instance;
+	}
+
+	/**
+	 * Records a restart decision.
+	 *
+	 * @param origin
+	 *            the kind of work that took the decision.
+	 * @param project
+	 *            the project restarted.
+	 * @param failedBuild
+	 *            the build that caused the restart, or null.
+	 * @param perTri
+	 *            the periodic trigger that matched, or null.
+	 * @param cause
+	 *            the restart cause.
+	 * @param outcome
+	 *            {@link #SCHEDULED}, {@link #STAGE_RESTARTED},
+	 *            {@link #NOT_SCHEDULED} or {@link #HELD}.
+	 */
+	public static void recordDecision(CycleMetrics.Type origin,
+			Job<?, ?> project, Run<?, ?> failedBuild, PeriodicTrigger perTri,
+			String cause, String outcome) {
+		final ReincarnationJournal journal = get();
+		if (journal == null) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final JSONObject json = new JSONObject();
+		json.put("time", now);
+		json.put("type", "decision");
+		json.put("origin", origin.name().toLowerCase(Locale.ENGLISH));
+		json.put("job", project.getFullName());
+		if (failedBuild != null) {
+			json.put("build", failedBuild.getNumber());
+			json.put("latencyMillis", Math.max(0,
+					now - failedBuild.getStartTimeInMillis()
+							- failedBuild.getDuration()));
+		}
+		if (perTri != null) {
+			json.put("trigger", perTri.getKey());
+		}
+		json.put("cause", cause);
+		json.put("outcome", outcome);
+		journal.record(json);
+	}
+
+	/**
+	 * Records the outcome of a build restarted by the plugin.
+	 *
+	 * @param build
+	 *            the restarted build, completed.
+	 * @param cause
+	 *            the cause of the restart.
+	 */
+	public static void recordOutcome(Run<?, ?> build,
+			PeriodicReincarnationBuildCause cause) {
+		final ReincarnationJournal journal = get();
+		if (journal == null) {
+			return;
+		}
+		final Result result = build.getResult();
+		final JSONObject json = new JSONObject();
+		json.put("time", System.currentTimeMillis());
+		json.put("type", "outcome");
+		json.put("job", build.getParent().getFullName());
+		json.put("build", build.getNumber());
+		if (cause.getTriggerKey() != null) {
+			json.put("trigger", cause.getTriggerKey());
+		}
+		json.put("result", result != null ? result.toString() : "");
+		journal.record(json);
+	}
+
+	/**
+	 * Records a record without waiting for it to be written.
+	 *
+	 * @param json
+	 *            the record.
+	 */
+	void record(JSONObject json) {
+		synchronized (this.recent) {
+			final Entry entry = new Entry(this.recorded++, json);
+			if (this.recent.size() >= RECENT_CAPACITY) {
+				this.recent.removeFirst();
+			}
+			this.recent.addLast(entry);
+			// queued in the same order as numbered
+			entry.isQueued = this.queue.offer(entry);
+			if (!entry.isQueued) {
+				this.dropped.incrementAndGet();
+				return;
+			}
+		}
+		startWriter();
+	}
+
+	/**
+	 * Returns the most recent records, newest first. The records in memory
+	 * are read first, older records from the journal file and the rotated
+	 * files until the limit is reached.
+	 *
+	 * @param job
+	 *            full name of the job to return records of, or null for all.
+	 * @param trigger
+	 *            key of the trigger to return records of, or null for all.
+	 * @param limit
+	 *            maximal number of records returned.
+	 * @return the records.
+	 */
+	public List<JSONObject> query(String job, String trigger, int limit) {
+		final List<JSONObject> result = new ArrayList<JSONObject>();
+		synchronized (this.fileLock) {
+			// records in memory that are at the end of the journal file
+			int written = 0;
+			synchronized (this.recent) {
+				for (Iterator<Entry> i = this.recent.descendingIterator(); i
+						.hasNext();) {
+					final Entry entry = i.next();
+					if (entry.isQueued && entry.seq < this.writtenUpTo) {
+						written++;
+					}
+					if (result.size() < limit
+							&& matches(entry.json, job, trigger)) {
+						result.add(entry.json);
+					}
+				}
+			}
+			for (int index = 0; index <= this.maxFiles
+					&& result.size() < limit; index++) {
+				written = readFile(index == 0 ? this.file : getRotated(index),
+						job, trigger, limit, written, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the records of a journal file to a query result, newest first.
+	 *
+	 * @param journalFile
+	 *            the journal file or a rotated file.
+	 * @param job
+	 *            full name of the job to return records of, or null for all.
+	 * @param trigger
+	 *            key of the trigger to return records of, or null for all.
+	 * @param limit
+	 *            maximal number of records in the result.
+	 * @param skip
+	 *            newest records to skip, as they were read from memory.
+	 * @param result
+	 *            the query result.
+	 * @return the records still to skip in older files.
+	 */
+	private static int readFile(File journalFile, String job, String trigger,
+			int limit, int skip, List<JSONObject> result) {
+		if (!journalFile.isFile()) {
+			return skip;
+		}
+		final List<String> lines;
+		try {
+			lines = Files.readAllLines(journalFile.toPath(),
+					StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cannot read " + journalFile, e);
+			return skip;
+		}
+		int toSkip = skip;
+		for (int i = lines.size() - 1; i >= 0 && result.size() < limit; i--) {
+			final String line = lines.get(i);
+			if (line.isEmpty()) {
+				continue;
+			}
+			if (toSkip > 0) {
+				toSkip--;
+				continue;
+			}
+			final JSONObject json;
+			try {
+				json = JSONObject.fromObject(line);
+			} catch (JSONException e) {
+				LOGGER.fine("Skipping broken record in " + journalFile);
+				continue;
+			}
+			if (matches(json, job, trigger)) {
+				result.add(json);
+			}
+		}
+		return toSkip;
+	}
+
+	/**
+	 * Checks if a record belongs to a job and a trigger.
+	 *
+	 * @param json
+	 *            the record.
+	 * @param job
+	 *            full name of the job, or null for all.
+	 * @param trigger
+	 *            key of the trigger, or null for all.
+	 * @return true if the record matches.
+	 */
+	private static boolean matches(JSONObject json, String job,
+			String trigger) {
+		return (job == null || job.equals(json.optString("job")))
+				&& (trigger == null
+						|| trigger.equals(json.optString("trigger")));
+	}
+
+	/**
+	 * Returns the number of records dropped because the writer fell behind.
+	 *
+	 * @return the number as long.
+	 */
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Starts the writer thread if it is not running.
+	 */
+	private synchronized void startWriter() {
+		if (this.writer != null) {
+			return;
+		}
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "Periodic Reincarnation journal writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Writes records as they come, until the thread is interrupted.
+	 */
+	private void writeLoop() {
+		final List<Entry> batch = new ArrayList<Entry>();
+		final List<JSONObject> records = new ArrayList<JSONObject>();
+		try {
+			while (true) {
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch);
+				for (Entry entry : batch) {
+					records.add(entry.json);
+				}
+				synchronized (this.fileLock) {
+					write(records);
+					this.writtenUpTo = batch.get(batch.size() - 1).seq + 1;
+				}
+				batch.clear();
+				records.clear();
+			}
+		} catch (InterruptedException e) {
+			LOGGER.fine("Journal writer interrupted.");
+		}
+	}
+
+	/**
+	 * Appends records to the journal and rotates it if it got too large.
+	 *
+	 * @param records
+	 *            the records.
+	 */
+	void write(List<JSONObject> records) {
+		synchronized (this.fileLock) {
+			final File dir = this.file.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				LOGGER.warning("Cannot create " + dir);
+				return;
+			}
+			try (OutputStream out = new FileOutputStream(this.file, true)) {
+				for (JSONObject json : records) {
+					out.write((json.toString() + "\n")
+							.getBytes(StandardCharsets.UTF_8));
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Cannot write " + this.file, e);
+			}
+			if (this.file.length() > this.maxSize) {
+				rotate();
+			}
+		}
+	}
+
+	/**
+	 * Rotates the journal: journal.jsonl becomes journal.jsonl.1, .1 becomes
+	 * .2 and so on, the oldest is deleted.
+	 */
+	private void rotate() {
+		final File oldest = getRotated(this.maxFiles);
+		if (oldest.exists() && !oldest.delete()) {
+			LOGGER.warning("Cannot delete " + oldest);
+		}
+		for (int i = this.maxFiles - 1; i >= 1; i--) {
+			final File rotated = getRotated(i);
+			if (rotated.exists() && !rotated.renameTo(getRotated(i + 1))) {
+				LOGGER.warning("Cannot rotate " + rotated);
+			}
+		}
+		if (!this.file.renameTo(getRotated(1))) {
+			LOGGER.warning("Cannot rotate " + this.file);
+		}
+	}
+
+	/**
+	 * Returns a rotated journal file.
+	 *
+	 * @param index
+	 *            the number of the rotation, 1 is the newest.
+	 * @return the file.
+	 */
+	File getRotated(int index) {
+		return new File(this.file.getPath() + "." + index);
+	}
+
+	/**
+	 * A record kept in memory.
+	 */
+	private static final class Entry {
+		/**
+		 * Sequence number of the record since startup.
+		 */
+		private final long seq;
+		/**
+		 * The record.
+		 */
+		private final JSONObject json;
+		/**
+		 * False if the record was dropped, guarded by the recent records.
+		 */
+		private boolean isQueued;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param seq
+		 *            sequence number of the record.
+		 * @param json
+		 *            the record.
+		 */
+		Entry(long seq, JSONObject json) {
+			this.seq = seq;
+			this.json = json;
+		}
+	}
+}
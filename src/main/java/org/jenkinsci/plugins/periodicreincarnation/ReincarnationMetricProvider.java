@@ -0,0 +1,238 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+import jenkins.metrics.api.Metrics;
+
+/**
+ * Publishes the metrics of the last cron cycle and of the last afterbuild
+ * evaluation through the Metrics plugin, including the time spent on each
+ * trigger. Only loaded if the optional Metrics plugin is installed.
+ */
+@Extension(optional = true)
+public class ReincarnationMetricProvider extends MetricProvider {
+
+	/**
+	 * Prefix of all metric names.
+	 */
+	private static final String PREFIX = "jenkins.periodic-reincarnation";
+
+	/**
+	 * Names of the registered gauges of the time per trigger.
+	 */
+	private static final Set<String> TRIGGER_GAUGES = new HashSet<String>();
+
+	/**
+	 * The published metrics.
+	 */
+	private final MetricSet metricSet;
+
+	/**
+	 * Constructor. Creates the gauges.
+	 */
+	public ReincarnationMetricProvider() {
+		final Map<String, Metric> metrics = new HashMap<String, Metric>();
+		for (final CycleMetrics.Type type : CycleMetrics.Type.values()) {
+			final String prefix = getPrefix(type);
+			metrics.put(MetricRegistry.name(prefix, "wall-time"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getWallTimeMillis();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "items-visited"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getItemsVisited();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "candidates"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getCandidates();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "candidates-skipped"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getCandidatesSkipped();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "item-groups-visited"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getItemGroupsVisited();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "duplicates-skipped"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getDuplicatesSkipped();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "verdicts-reused"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getVerdictsReused();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "logs-opened"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getLogsOpened();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "bytes-scanned"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getBytesScanned();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "bfa-lookups"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getBfaLookups();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "restarts-scheduled"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getRestartsScheduled();
+						}
+					});
+			metrics.put(MetricRegistry.name(prefix, "scripts-executed"),
+					new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getScriptsExecuted();
+						}
+					});
+		}
+		this.metricSet = new MetricSet() {
+			@Override
+			public Map<String, Metric> getMetrics() {
+				return metrics;
+			}
+		};
+	}
+
+	@Override
+	public MetricSet getMetricSet() {
+		return this.metricSet;
+	}
+
+	/**
+	 * Returns the prefix of the metrics of a type of cycle.
+	 *
+	 * @param type
+	 *            the type of cycle.
+	 * @return the prefix.
+	 */
+	private static String getPrefix(CycleMetrics.Type type) {
+		return MetricRegistry.name(PREFIX,
+				type.name().toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Registers a gauge of the time spent on a trigger in the last cycle for
+	 * every trigger in the totals, and removes the gauges of triggers that
+	 * were pruned from them. The Metrics plugin reads the metric set of a
+	 * provider once, so these gauges are registered with the registry.
+	 */
+	static synchronized void publishTriggerTimes() {
+		final MetricRegistry registry = Metrics.metricRegistry();
+		if (registry == null) {
+			return;
+		}
+		final Set<String> names = new HashSet<String>();
+		for (final CycleMetrics.Type type : CycleMetrics.Type.values()) {
+			final CycleMetrics totals = type == CycleMetrics.Type.CRON
+					? ReincarnationMetrics.getCronTotals()
+					: ReincarnationMetrics.getAfterbuildTotals();
+			for (final String key : totals.getRegExTimeMillis().keySet()) {
+				final String name = MetricRegistry.name(getPrefix(type),
+						"trigger-time", key);
+				names.add(name);
+				if (TRIGGER_GAUGES.add(name)) {
+					registry.register(name, new CycleGauge(type) {
+						@Override
+						protected long getValue(CycleMetrics cycle) {
+							return cycle.getRegExTimeMillis(key);
+						}
+					});
+				}
+			}
+		}
+		for (Iterator<String> i = TRIGGER_GAUGES.iterator(); i.hasNext();) {
+			final String name = i.next();
+			if (!names.contains(name)) {
+				registry.remove(name);
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gauge reading one value of the last recorded cycle of a type.
+	 */
+	private abstract static class CycleGauge implements Gauge<Long> {
+
+		/**
+		 * The type of cycle this gauge reads.
+		 */
+		private final CycleMetrics.Type type;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param type
+		 *            the type of cycle this gauge reads.
+		 */
+		CycleGauge(CycleMetrics.Type type) {
+			this.type = type;
+		}
+
+		@Override
+		public Long getValue() {
+			final CycleMetrics cycle = this.type == CycleMetrics.Type.CRON
+					? ReincarnationMetrics.getLastCronCycle()
+					: ReincarnationMetrics.getLastAfterbuildEvaluation();
+			if (cycle == null) {
+				return 0L;
+			}
+			return getValue(cycle);
+		}
+
+		/**
+		 * Reads the value from the given cycle.
+		 *
+		 * @param cycle
+		 *            the last recorded cycle.
+		 * @return the value.
+		 */
+		protected abstract long getValue(CycleMetrics cycle);
+	}
+}
@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+/**
+ * Keeps the metrics of the last cron cycle, the last afterbuild evaluation
+ * and the totals since startup. Read by {@link PeriodicReincarnationManagement}
+ * and, if the Metrics plugin is installed, by
+ * {@link ReincarnationMetricProvider}.
+ */
+public final class ReincarnationMetrics {
+
+	/**
+	 * Metrics of the last finished cron cycle.
+	 */
+	private static volatile CycleMetrics lastCronCycle;
+	/**
+	 * Metrics of the last finished afterbuild evaluation.
+	 */
+	private static volatile CycleMetrics lastAfterbuildEvaluation;
+	/**
+	 * Totals of all cron cycles since startup.
+	 */
+	private static final CycleMetrics CRON_TOTALS = new CycleMetrics(
+			CycleMetrics.Type.CRON);
+	/**
+	 * Totals of all afterbuild evaluations since startup.
+	 */
+	private static final CycleMetrics AFTERBUILD_TOTALS = new CycleMetrics(
+			CycleMetrics.Type.AFTERBUILD);
+
+	/**
+	 * Utility class.
+	 */
+	private ReincarnationMetrics() {
+	}
+
+	/**
+	 * Stops the clock of the given metrics and records them.
+	 *
+	 * @param metrics
+	 *            metrics of a cron cycle or afterbuild evaluation.
+	 */
+	public static void record(CycleMetrics metrics) {
+		metrics.finish();
+		if (metrics.getType() == CycleMetrics.Type.CRON) {
+			lastCronCycle = metrics;
+			CRON_TOTALS.add(metrics);
+		} else {
+			lastAfterbuildEvaluation = metrics;
+			AFTERBUILD_TOTALS.add(metrics);
+		}
+		publishTriggerTimes();
+	}
+
+	/**
+	 * Forgets the time spent on triggers that were edited or removed, so the
+	 * totals do not keep their keys until Jenkins restarts.
+	 *
+	 * @param triggers
+	 *            the configured triggers.
+	 */
+	public static void retainAll(Collection<PeriodicTrigger> triggers) {
+		final Set<String> keys = new HashSet<String>();
+		for (PeriodicTrigger perTri : triggers) {
+			keys.add(perTri.getKey());
+		}
+		CRON_TOTALS.retainRegExTimes(keys);
+		AFTERBUILD_TOTALS.retainRegExTimes(keys);
+		publishTriggerTimes();
+	}
+
+	/**
+	 * Updates the gauges of the time per trigger if the Metrics plugin is
+	 * installed.
+	 */
+	private static void publishTriggerTimes() {
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins != null
+				&& jenkins.pluginManager.getPlugin("metrics") != null) {
+			ReincarnationMetricProvider.publishTriggerTimes();
+		}
+	}
+
+	/**
+	 * Returns the metrics of the last cron cycle.
+	 *
+	 * @return the metrics or null if there was no cycle yet.
+	 */
+	public static CycleMetrics getLastCronCycle() {
+		return lastCronCycle;
+	}
+
+	/**
+	 * Returns the metrics of the last afterbuild evaluation.
+	 *
+	 * @return the metrics or null if there was no evaluation yet.
+	 */
+	public static CycleMetrics getLastAfterbuildEvaluation() {
+		return lastAfterbuildEvaluation;
+	}
+
+	/**
+	 * Returns the totals of all cron cycles since startup.
+	 *
+	 * @return the totals.
+	 */
+	public static CycleMetrics getCronTotals() {
+		return CRON_TOTALS;
+	}
+
+	/**
+	 * Returns the totals of all afterbuild evaluations since startup.
+	 *
+	 * @return the totals.
+	 */
+	public static CycleMetrics getAfterbuildTotals() {
+		return AFTERBUILD_TOTALS;
+	}
+
+	/**
+	 * Returns all metrics as JSON object.
+	 *
+	 * @return the JSON representation.
+	 */
+	public static JSONObject toJSON() {
+		final JSONObject json = new JSONObject();
+		final CycleMetrics cron = lastCronCycle;
+		final CycleMetrics afterbuild = lastAfterbuildEvaluation;
+		if (cron != null) {
+			json.put("lastCronCycle", cron.toJSON());
+		}
+		if (afterbuild != null) {
+			json.put("lastAfterbuildEvaluation", afterbuild.toJSON());
+		}
+		json.put("cronTotals", CRON_TOTALS.toJSON());
+		json.put("afterbuildTotals", AFTERBUILD_TOTALS.toJSON());
+		final ReincarnationJournal journal = ReincarnationJournal.get();
+		if (journal != null) {
+			json.put("journalDropped", journal.getDropped());
+		}
+		return json;
+	}
+}
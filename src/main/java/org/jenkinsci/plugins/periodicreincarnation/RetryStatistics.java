@@ -0,0 +1,431 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import hudson.util.AtomicFileWriter;
+import jenkins.model.Jenkins;
+
+/**
+ * Counts per periodic trigger and job how many builds restarted by the
+ * trigger completed and how many of them succeeded. A trigger whose restarts
+ * of a job hardly ever succeed only burns executor time, so it can be
+ * suppressed for that job, see
+ * {@link PeriodicReincarnationGlobalConfiguration#getMinRetrySuccessRate()}.
+ * A suppressed job is still restarted once every {@link #PROBE_INTERVAL} as a
+ * probe, and the counts are halved when they grow large, so a trigger whose
+ * restarts succeed again is no longer suppressed.
+ *
+ * Recording only marks the counts dirty; the cron cycle writes them to
+ * {@code periodic-reincarnation/retry-statistics} in the Jenkins home
+ * directory, one line per trigger and job:
+ *
+ * <pre>
+ * RegEx:No space left on device	folder/job	25	3
+ * </pre>
+ */
+public final class RetryStatistics {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(RetryStatistics.class.getName());
+
+	/**
+	 * Retries needed before a trigger can be suppressed.
+	 */
+	static final int MIN_RETRIES = 20;
+	/**
+	 * Retries of a job at which its counts are halved.
+	 */
+	static final int MAX_RETRIES = 2 * MIN_RETRIES;
+	/**
+	 * Time after which a suppressed job is restarted once as a probe.
+	 */
+	static final long PROBE_INTERVAL = TimeUnit.HOURS.toMillis(6);
+
+	/**
+	 * The statistics of this Jenkins, loaded on first use.
+	 */
+	private static RetryStatistics instance;
+
+	/**
+	 * The file, null if the statistics are not persisted.
+	 */
+	private final File file;
+	/**
+	 * Counts by trigger key and full name of the job.
+	 */
+	private final Map<String, Map<String, Counts>> byTrigger = new HashMap<String, Map<String, Counts>>();
+	/**
+	 * Counts over all jobs by trigger key.
+	 */
+	private final Map<String, Counts> totals = new HashMap<String, Counts>();
+	/**
+	 * Time of the last probe by trigger key and full name of the job, kept in
+	 * memory only.
+	 */
+	private final Map<String, Long> lastProbes = new HashMap<String, Long>();
+	/**
+	 * True if the counts changed since they were last written.
+	 */
+	private boolean isDirty;
+	/**
+	 * Guards the file, so the counts are written outside the lock of the
+	 * statistics.
+	 */
+	private final Object fileLock = new Object();
+
+	/**
+	 * Retries and successes of restarts.
+	 */
+	public static final class Counts {
+		/**
+		 * Completed restarted builds.
+		 */
+		private long retries;
+		/**
+		 * Restarted builds that succeeded.
+		 */
+		private long successes;
+
+		/**
+		 * Returns the number of completed restarted builds.
+		 *
+		 * @return the number as long.
+		 */
+		public long getRetries() {
+			return this.retries;
+		}
+
+		/**
+		 * Returns the number of restarted builds that succeeded.
+		 *
+		 * @return the number as long.
+		 */
+		public long getSuccesses() {
+			return this.successes;
+		}
+
+		/**
+		 * Returns the share of restarted builds that succeeded.
+		 *
+		 * @return success rate in percent, 0 if there was no retry.
+		 */
+		public long getSuccessRatePercent() {
+			return this.retries == 0 ? 0 : this.successes * 100 / this.retries;
+		}
+
+		/**
+		 * Adds the counts of another job.
+		 *
+		 * @param other
+		 *            the counts to add.
+		 */
+		private void add(Counts other) {
+			this.retries += other.retries;
+			this.successes += other.successes;
+		}
+
+		/**
+		 * Returns a copy of these counts.
+		 *
+		 * @return the copy.
+		 */
+		private Counts copy() {
+			final Counts copy = new Counts();
+			copy.add(this);
+			return copy;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file, or null if the statistics are not persisted.
+	 */
+	RetryStatistics(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the statistics of this Jenkins.
+	 *
+	 * @return the statistics or null if Jenkins is not available.
+	 */
+	public static synchronized RetryStatistics get() {
+		if (instance == null) {
+			final Jenkins jenkins = Jenkins.getInstance();
+			if (jenkins == null) {
+				return null;
+			}
+			instance = new RetryStatistics(new File(
+					new File(jenkins.getRootDir(), "periodic-reincarnation"),
+					"retry-statistics"));
+			instance.load();
+		}
+		return instance;
+	}
+
+	/**
+	 * Records a completed build restarted by a trigger. The counts are written
+	 * by {@link #saveIfDirty()}.
+	 *
+	 * @param triggerKey
+	 *            the key of the trigger.
+	 * @param job
+	 *            the full name of the job.
+	 * @param isSuccess
+	 *            true if the build succeeded.
+	 */
+	public synchronized void record(String triggerKey, String job,
+			boolean isSuccess) {
+		Map<String, Counts> byJob = this.byTrigger.get(triggerKey);
+		if (byJob == null) {
+			byJob = new HashMap<String, Counts>();
+			this.byTrigger.put(triggerKey, byJob);
+		}
+		Counts counts = byJob.get(job);
+		if (counts == null) {
+			counts = new Counts();
+			byJob.put(job, counts);
+		}
+		final Counts total = getTotal(triggerKey);
+		if (counts.retries >= MAX_RETRIES) {
+			// older restarts weigh less, so the rate can recover
+			total.retries -= counts.retries - counts.retries / 2;
+			total.successes -= counts.successes - counts.successes / 2;
+			counts.retries /= 2;
+			counts.successes /= 2;
+		}
+		counts.retries++;
+		total.retries++;
+		if (isSuccess) {
+			counts.successes++;
+			total.successes++;
+		}
+		this.isDirty = true;
+	}
+
+	/**
+	 * Returns the counts of a trigger over all jobs, created if missing.
+	 *
+	 * @param triggerKey
+	 *            the key of the trigger.
+	 * @return the counts, not a copy.
+	 */
+	private Counts getTotal(String triggerKey) {
+		Counts total = this.totals.get(triggerKey);
+		if (total == null) {
+			total = new Counts();
+			this.totals.put(triggerKey, total);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the counts of a trigger over all jobs.
+	 *
+	 * @param triggerKey
+	 *            the key of the trigger.
+	 * @return the counts, a copy.
+	 */
+	public synchronized Counts getCounts(String triggerKey) {
+		final Counts total = this.totals.get(triggerKey);
+		return total != null ? total.copy() : new Counts();
+	}
+
+	/**
+	 * Tells if restarts of a job by a trigger are suppressed, because they
+	 * hardly ever succeeded. The counts of the job are used once there are
+	 * {@value #MIN_RETRIES} of them, the counts of the trigger over all jobs
+	 * before. A suppressed job is let through once every
+	 * {@link #PROBE_INTERVAL}.
+	 *
+	 * @param triggerKey
+	 *            the key of the trigger.
+	 * @param job
+	 *            the full name of the job.
+	 * @param minSuccessRate
+	 *            the minimal success rate in percent, 0 or less means never
+	 *            suppress.
+	 * @return true if the job is not to be restarted by the trigger.
+	 */
+	public boolean isSuppressed(String triggerKey, String job,
+			int minSuccessRate) {
+		return isSuppressed(triggerKey, job, minSuccessRate,
+				System.currentTimeMillis());
+	}
+
+	/**
+	 * Tells if restarts of a job by a trigger are suppressed at a given time.
+	 *
+	 * @param triggerKey
+	 *            the key of the trigger.
+	 * @param job
+	 *            the full name of the job.
+	 * @param minSuccessRate
+	 *            the minimal success rate in percent, 0 or less means never
+	 *            suppress.
+	 * @param now
+	 *            the current time in ms.
+	 * @return true if the job is not to be restarted by the trigger.
+	 */
+	synchronized boolean isSuppressed(String triggerKey, String job,
+			int minSuccessRate, long now) {
+		if (minSuccessRate <= 0) {
+			return false;
+		}
+		final Map<String, Counts> byJob = this.byTrigger.get(triggerKey);
+		if (byJob == null) {
+			return false;
+		}
+		Counts counts = byJob.get(job);
+		if (counts == null || counts.retries < MIN_RETRIES) {
+			counts = this.totals.get(triggerKey);
+		}
+		if (counts == null || counts.retries < MIN_RETRIES
+				|| counts.getSuccessRatePercent() >= minSuccessRate) {
+			return false;
+		}
+		final String probeKey = triggerKey + "\t" + job;
+		final Long lastProbe = this.lastProbes.get(probeKey);
+		if (lastProbe == null || now - lastProbe < PROBE_INTERVAL) {
+			if (lastProbe == null) {
+				this.lastProbes.put(probeKey, now);
+			}
+			return true;
+		}
+		this.lastProbes.put(probeKey, now);
+		return false;
+	}
+
+	/**
+	 * Forgets all counts and writes the file.
+	 */
+	public void reset() {
+		synchronized (this) {
+			this.byTrigger.clear();
+			this.totals.clear();
+			this.lastProbes.clear();
+			this.isDirty = true;
+		}
+		saveIfDirty();
+	}
+
+	/**
+	 * Reads the counts from the file.
+	 */
+	private void load() {
+		if (this.file == null || !this.file.isFile()) {
+			return;
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(this.file), "UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// the trigger key comes first as it may contain tabs itself
+				final String[] parts = line.split("\t");
+				if (parts.length < 4) {
+					continue;
+				}
+				final int n = parts.length;
+				try {
+					final Counts counts = new Counts();
+					counts.retries = Long.parseLong(parts[n - 2]);
+					counts.successes = Long.parseLong(parts[n - 1]);
+					final String triggerKey = line.substring(0,
+							line.length() - parts[n - 3].length()
+									- parts[n - 2].length()
+									- parts[n - 1].length() - 3);
+					Map<String, Counts> byJob = this.byTrigger.get(triggerKey);
+					if (byJob == null) {
+						byJob = new HashMap<String, Counts>();
+						this.byTrigger.put(triggerKey, byJob);
+					}
+					byJob.put(parts[n - 3], counts);
+					getTotal(triggerKey).add(counts);
+				} catch (NumberFormatException e) {
+					// skip corrupt line
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Cannot read " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the counts to the file if they changed since they were last
+	 * written. The counts are copied under the lock of the statistics and
+	 * written outside of it, so recording does not wait for the disk.
+	 */
+	public void saveIfDirty() {
+		if (this.file == null) {
+			return;
+		}
+		synchronized (this.fileLock) {
+			final StringBuilder content = new StringBuilder();
+			synchronized (this) {
+				if (!this.isDirty) {
+					return;
+				}
+				for (Entry<String, Map<String, Counts>> trigger : this.byTrigger
+						.entrySet()) {
+					for (Entry<String, Counts> job : trigger.getValue()
+							.entrySet()) {
+						content.append(trigger.getKey()).append('\t')
+								.append(job.getKey()).append('\t')
+								.append(job.getValue().retries).append('\t')
+								.append(job.getValue().successes).append('\n');
+					}
+				}
+				this.isDirty = false;
+			}
+			if (!write(content.toString())) {
+				synchronized (this) {
+					this.isDirty = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the file.
+	 *
+	 * @param content
+	 *            the lines of the file.
+	 * @return true if the file was written.
+	 */
+	private boolean write(String content) {
+		final File dir = this.file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			LOGGER.warning("Cannot create " + dir);
+			return false;
+		}
+		AtomicFileWriter writer = null;
+		try {
+			writer = new AtomicFileWriter(this.file);
+			writer.write(content);
+			writer.commit();
+			writer = null;
+			return true;
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write " + this.file + ": " + e.getMessage());
+			return false;
+		} finally {
+			if (writer != null) {
+				writer.abort();
+			}
+		}
+	}
+}
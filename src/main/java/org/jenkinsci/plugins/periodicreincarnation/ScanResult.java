@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of scanning one log, or the files of a workspace, for a regular
+ * expression.
+ */
+public class ScanResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * True if the regular expression was found.
+	 */
+	private final boolean isHit;
+	/**
+	 * Number of lines read.
+	 */
+	private final long lines;
+	/**
+	 * Number of bytes read.
+	 */
+	private final long bytes;
+	/**
+	 * Where the hit was found in a Pipeline, null if unknown.
+	 */
+	private final LogHit location;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param isHit
+	 *            true if the regular expression was found.
+	 * @param lines
+	 *            number of lines read.
+	 * @param bytes
+	 *            number of bytes read.
+	 */
+	public ScanResult(boolean isHit, long lines, long bytes) {
+		this(isHit, lines, bytes, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param isHit
+	 *            true if the regular expression was found.
+	 * @param lines
+	 *            number of lines read.
+	 * @param bytes
+	 *            number of bytes read.
+	 * @param location
+	 *            where the hit was found in a Pipeline, or null.
+	 */
+	public ScanResult(boolean isHit, long lines, long bytes,
+			LogHit location) {
+		this.isHit = isHit;
+		this.lines = lines;
+		this.bytes = bytes;
+		this.location = location;
+	}
+
+	/**
+	 * Tells if the regular expression was found.
+	 *
+	 * @return true on a hit.
+	 */
+	public boolean isHit() {
+		return this.isHit;
+	}
+
+	/**
+	 * Returns the number of lines read.
+	 *
+	 * @return the number as long.
+	 */
+	public long getLines() {
+		return this.lines;
+	}
+
+	/**
+	 * Returns the number of bytes read.
+	 *
+	 * @return the number as long.
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Returns where the hit was found in a Pipeline.
+	 *
+	 * @return the location or null.
+	 */
+	public LogHit getLocation() {
+		return this.location;
+	}
+}
@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads concurrent updates over several cells, so that
+ * threads adding to the same counter do not contend on a single value. The
+ * cell is chosen by the id of the updating thread and every cell sits on its
+ * own cache line. Reading sums up all cells and is therefore more expensive
+ * than updating, which is the right trade-off for statistics that are written
+ * on every evaluation and read only when a page is rendered.
+ */
+public class StripedCounter {
+
+	/**
+	 * Distance between two cells in longs. 8 longs are 64 bytes, the size of a
+	 * cache line on common hardware.
+	 */
+	private static final int PADDING = 8;
+
+	/**
+	 * Number of cells, a power of two.
+	 */
+	private static final int STRIPES = stripes();
+
+	/**
+	 * The cells.
+	 */
+	private final AtomicLongArray cells = new AtomicLongArray(
+			STRIPES * PADDING);
+
+	/**
+	 * Computes the number of cells, the next power of two of the number of
+	 * processors.
+	 *
+	 * @return the number of cells.
+	 */
+	private static int stripes() {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < processors) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	/**
+	 * Returns the index of the cell of the current thread.
+	 *
+	 * @return the index.
+	 */
+	private static int index() {
+		final long id = Thread.currentThread().getId();
+		return ((int) (id ^ (id >>> 32)) & (STRIPES - 1)) * PADDING;
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value
+	 *            the value to add.
+	 */
+	public void add(long value) {
+		this.cells.addAndGet(index(), value);
+	}
+
+	/**
+	 * Adds one.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Returns the sum of all cells.
+	 *
+	 * @return the current value.
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += this.cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/**
+	 * Sets all cells to zero.
+	 */
+	public void reset() {
+		for (int i = 0; i < STRIPES; i++) {
+			this.cells.set(i * PADDING, 0);
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import hudson.util.AtomicFileWriter;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps the state of a {@link CronSweep} on disk, so a sweep interrupted by a
+ * restart of Jenkins is continued where it stopped instead of evaluating all
+ * jobs again. The file holds the state of the sweep and one line per job of
+ * the current shard already evaluated:
+ *
+ * <pre>
+ * started 1514764800000
+ * shards 4
+ * next 2
+ * left 3
+ * unchanged true
+ * trigger RegEx:No space left on device
+ * done t0	folder/job
+ * </pre>
+ *
+ * The state is rewritten when a sweep starts or moves on to the next shard,
+ * evaluated jobs are appended. A job listed for restart is only appended
+ * once its restart was scheduled, so a restart lost with a restart of
+ * Jenkins is found again. Jobs of a sweep with a single shard are not
+ * appended at all.
+ */
+final class SweepCheckpoint {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(SweepCheckpoint.class.getName());
+
+	/**
+	 * A checkpoint older than this is not continued.
+	 */
+	static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+	/**
+	 * Evaluated jobs written between two flushes.
+	 */
+	private static final int FLUSH_INTERVAL = 32;
+
+	/**
+	 * The file.
+	 */
+	private final File file;
+	/**
+	 * Writer appending evaluated jobs, null if not open.
+	 */
+	private Writer appender;
+	/**
+	 * Evaluated jobs appended since the last flush.
+	 */
+	private int unflushed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file holding the checkpoint.
+	 */
+	SweepCheckpoint(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the checkpoint of the cron sweep in the Jenkins home directory.
+	 *
+	 * @return the checkpoint or null if Jenkins is not available.
+	 */
+	static SweepCheckpoint get() {
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return null;
+		}
+		return new SweepCheckpoint(new File(
+				new File(jenkins.getRootDir(), "periodic-reincarnation"),
+				"sweep-checkpoint"));
+	}
+
+	/**
+	 * Writes the state of a sweep, replacing the file.
+	 *
+	 * @param sweep
+	 *            the sweep.
+	 */
+	void save(CronSweep sweep) {
+		close();
+		final File dir = this.file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			LOGGER.warning("Cannot create " + dir);
+			return;
+		}
+		AtomicFileWriter writer = null;
+		try {
+			writer = new AtomicFileWriter(this.file);
+			writer.write("started " + sweep.getStartTime() + "\n");
+			writer.write("shards " + sweep.getShards() + "\n");
+			writer.write("next " + sweep.getNextShard() + "\n");
+			writer.write("left " + sweep.getShardsLeft() + "\n");
+			writer.write("unchanged " + sweep.isUnchangedDue() + "\n");
+			for (PeriodicTrigger perTri : sweep.getDueTriggers()) {
+				writer.write("trigger " + perTri.getKey() + "\n");
+			}
+			for (Entry<String, String> entry : sweep
+					.getEvaluated().entrySet()) {
+				writer.write(toLine(entry.getKey(), entry.getValue()));
+			}
+			writer.commit();
+			writer = null;
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write " + this.file + ": " + e.getMessage());
+		} finally {
+			if (writer != null) {
+				writer.abort();
+			}
+		}
+	}
+
+	/**
+	 * Appends the verdict of an evaluated job.
+	 *
+	 * @param fullName
+	 *            the full name of the job.
+	 * @param verdict
+	 *            the verdict.
+	 */
+	void append(String fullName, String verdict) {
+		try {
+			if (this.appender == null) {
+				this.appender = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(this.file, true), "UTF-8"));
+			}
+			this.appender.write(toLine(fullName, verdict));
+			if (++this.unflushed >= FLUSH_INTERVAL) {
+				flush();
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write " + this.file + ": " + e.getMessage());
+			close();
+		}
+	}
+
+	/**
+	 * Writes the appended verdicts to disk.
+	 */
+	void flush() {
+		if (this.appender == null) {
+			return;
+		}
+		try {
+			this.appender.flush();
+			this.unflushed = 0;
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write " + this.file + ": " + e.getMessage());
+			close();
+		}
+	}
+
+	/**
+	 * Closes the file after writing pending verdicts.
+	 */
+	void close() {
+		if (this.appender == null) {
+			return;
+		}
+		try {
+			this.appender.close();
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write " + this.file + ": " + e.getMessage());
+		}
+		this.appender = null;
+		this.unflushed = 0;
+	}
+
+	/**
+	 * Deletes the checkpoint, after the sweep is done.
+	 */
+	void delete() {
+		close();
+		if (this.file.exists() && !this.file.delete()) {
+			LOGGER.warning("Cannot delete " + this.file);
+		}
+	}
+
+	/**
+	 * Reads the sweep to continue. Triggers no longer configured are left
+	 * out.
+	 *
+	 * @param triggers
+	 *            the configured periodic triggers.
+	 * @param now
+	 *            current time in ms since epoch.
+	 * @return the sweep or null if there is none to continue.
+	 */
+	CronSweep load(List<PeriodicTrigger> triggers, long now) {
+		if (!this.file.isFile()) {
+			return null;
+		}
+		long started = 0;
+		int shards = 1;
+		int next = 0;
+		int left = -1;
+		boolean isUnchangedDue = false;
+		final List<PeriodicTrigger> dueTriggers = new ArrayList<PeriodicTrigger>();
+		final List<String[]> done = new ArrayList<String[]>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(this.file), "UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int space = line.indexOf(' ');
+				if (space < 0) {
+					continue;
+				}
+				final String key = line.substring(0, space);
+				final String value = line.substring(space + 1);
+				if ("started".equals(key)) {
+					started = Long.parseLong(value);
+				} else if ("shards".equals(key)) {
+					shards = Integer.parseInt(value);
+				} else if ("next".equals(key)) {
+					next = Integer.parseInt(value);
+				} else if ("left".equals(key)) {
+					left = Integer.parseInt(value);
+				} else if ("unchanged".equals(key)) {
+					isUnchangedDue = Boolean.parseBoolean(value);
+				} else if ("trigger".equals(key)) {
+					for (PeriodicTrigger perTri : triggers) {
+						if (perTri.getKey().equals(value)) {
+							dueTriggers.add(perTri);
+							break;
+						}
+					}
+				} else if ("done".equals(key)) {
+					final String[] parts = value.split("\t", 2);
+					if (parts.length == 2) {
+						done.add(parts);
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Cannot read " + this.file + ": " + e.getMessage());
+			return null;
+		} catch (NumberFormatException e) {
+			LOGGER.warning("Ignoring corrupt " + this.file);
+			return null;
+		}
+		if (left < 0) {
+			// written before sweeps could wrap around
+			left = shards - next;
+		}
+		if (now - started > MAX_AGE || next >= shards || left <= 0
+				|| (dueTriggers.isEmpty() && !isUnchangedDue)) {
+			return null;
+		}
+		final CronSweep sweep = new CronSweep(dueTriggers, isUnchangedDue,
+				shards, started, next, left);
+		for (String[] parts : done) {
+			sweep.evaluated(parts[1], parts[0]);
+		}
+		return sweep;
+	}
+
+	/**
+	 * Formats the line of an evaluated job.
+	 *
+	 * @param fullName
+	 *            the full name of the job.
+	 * @param verdict
+	 *            the verdict.
+	 * @return the line.
+	 */
+	private static String toLine(String fullName, String verdict) {
+		return "done " + verdict + "\t" + fullName + "\n";
+	}
+}
@@ -0,0 +1,239 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import hudson.AbortException;
+
+/**
+ * Periodic trigger matching the failed tests of a build, as stored in its
+ * test report, instead of its console log. The value holds one test per
+ * line: the full name of a test, e.g. {@code com.example.FooTest.testBar},
+ * which is looked up in a hash set, or a regular expression searched in the
+ * names, and in the error messages if enabled. Every line is looked up as a
+ * name first, so names like {@code com.example.Outer$InnerTest.testA} or
+ * {@code com.example.FooTest.testBar[0]} match exactly, although they are
+ * regular expressions too.
+ *
+ * By default the trigger matches if any failed test matches. With "only
+ * listed tests failed" it matches only if every failed test matches, e.g. to
+ * restart builds in which nothing but known flaky tests failed.
+ */
+public class TestResultTrigger extends PeriodicTrigger {
+
+	/**
+	 * Characters with a special meaning in java.util.regex.
+	 */
+	private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+	/**
+	 * True if the trigger matches only if all failed tests match.
+	 */
+	private boolean onlyListedFailed;
+	/**
+	 * True if the regular expressions are searched in error messages too.
+	 */
+	private boolean matchErrors;
+
+	/**
+	 * All lines listed, looked up as full names of tests, cached.
+	 */
+	private transient Set<String> names;
+	/**
+	 * Matchers of the regular expressions listed, cached.
+	 */
+	private transient List<LineMatcher> matchers;
+	/**
+	 * Time budget of the cached matchers in ms.
+	 */
+	private transient long matchersTimeout;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param value
+	 *            the tests, one per line.
+	 * @param description
+	 *            trigger description
+	 * @param cronTime
+	 *            cron time format.
+	 * @param nodeAction
+	 *            node script.
+	 * @param masterAction
+	 *            master script
+	 */
+	@DataBoundConstructor
+	public TestResultTrigger(String value, String description,
+			String cronTime, String nodeAction, String masterAction) {
+		super(value, description, cronTime, nodeAction, masterAction);
+	}
+
+	/**
+	 * Tells if the trigger matches only if all failed tests match.
+	 *
+	 * @return true if only listed tests may have failed.
+	 */
+	public boolean isOnlyListedFailed() {
+		return this.onlyListedFailed;
+	}
+
+	/**
+	 * Sets if the trigger matches only if all failed tests match.
+	 *
+	 * @param onlyListedFailed
+	 *            true if only listed tests may have failed.
+	 */
+	@DataBoundSetter
+	public void setOnlyListedFailed(boolean onlyListedFailed) {
+		this.onlyListedFailed = onlyListedFailed;
+	}
+
+	/**
+	 * Tells if the regular expressions are searched in error messages too.
+	 *
+	 * @return true if error messages are searched.
+	 */
+	public boolean isMatchErrors() {
+		return this.matchErrors;
+	}
+
+	/**
+	 * Sets if the regular expressions are searched in error messages too.
+	 *
+	 * @param matchErrors
+	 *            true if error messages are searched.
+	 */
+	@DataBoundSetter
+	public void setMatchErrors(boolean matchErrors) {
+		this.matchErrors = matchErrors;
+	}
+
+	/**
+	 * {@inheritDoc} The lines are joined, as keys are stored line by line,
+	 * and the options are included, as they change the verdict.
+	 */
+	@Override
+	public String getKey() {
+		return super.getKey().trim().replaceAll("\\s*\\r?\\n\\s*", " ")
+				+ (this.onlyListedFailed ? " [only]" : "")
+				+ (this.matchErrors ? " [errors]" : "");
+	}
+
+	/**
+	 * Checks the failed tests of a build.
+	 *
+	 * @param index
+	 *            the failed tests.
+	 * @param timeout
+	 *            time budget per regular expression and name in ms, 0 means
+	 *            unlimited.
+	 * @return true if the trigger matches.
+	 * @throws AbortException
+	 *             if a regular expression could not be compiled.
+	 * @throws RegExTimeoutException
+	 *             if a regular expression exceeded the time budget.
+	 */
+	public boolean matches(FailedTestIndex index, long timeout)
+			throws AbortException {
+		if (index.isEmpty()) {
+			return false;
+		}
+		compile(timeout);
+		for (Entry<String, String> test : index.getErrors().entrySet()) {
+			final boolean isMatch = matches(test.getKey(), test.getValue());
+			if (isMatch && !this.onlyListedFailed) {
+				return true;
+			}
+			if (!isMatch && this.onlyListedFailed) {
+				return false;
+			}
+		}
+		return this.onlyListedFailed;
+	}
+
+	/**
+	 * Checks one failed test.
+	 *
+	 * @param name
+	 *            full name of the test.
+	 * @param errorDetails
+	 *            the error message.
+	 * @return true if the test is listed.
+	 */
+	private boolean matches(String name, String errorDetails) {
+		if (this.names.contains(name)) {
+			return true;
+		}
+		for (LineMatcher matcher : this.matchers) {
+			if (matcher.find(name)
+					|| this.matchErrors && matcher.find(errorDetails)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the names and compiles the regular expressions of the value, once
+	 * per time budget.
+	 *
+	 * @param timeout
+	 *            time budget per regular expression and name in ms.
+	 * @throws AbortException
+	 *             if a regular expression could not be compiled.
+	 */
+	private synchronized void compile(long timeout) throws AbortException {
+		if (this.names != null && this.matchersTimeout == timeout) {
+			return;
+		}
+		final Set<String> literals = new HashSet<String>();
+		final List<LineMatcher> patterns = new ArrayList<LineMatcher>();
+		for (String line : (this.value != null ? this.value : "")
+				.split("\\r?\\n")) {
+			final String test = line.trim();
+			if (test.isEmpty()) {
+				continue;
+			}
+			literals.add(test);
+			if (!isPattern(test)) {
+				continue;
+			}
+			try {
+				patterns.add(new LineMatcher(Pattern.compile(test), timeout));
+			} catch (PatternSyntaxException e) {
+				throw new AbortException("RegEx " + test
+						+ " cannot be compiled!");
+			}
+		}
+		this.matchers = Collections.unmodifiableList(patterns);
+		this.matchersTimeout = timeout;
+		this.names = Collections.unmodifiableSet(literals);
+	}
+
+	/**
+	 * Tells if a line is searched as a regular expression too. The dots
+	 * separating packages, classes and methods do not count.
+	 *
+	 * @param line
+	 *            the line.
+	 * @return true if the line contains other meta characters.
+	 */
+	static boolean isPattern(String line) {
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c != '.' && META_CHARACTERS.indexOf(c) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
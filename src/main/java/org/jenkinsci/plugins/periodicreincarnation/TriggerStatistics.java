@@ -0,0 +1,305 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import hudson.Util;
+
+/**
+ * Cost and hit statistics of one periodic trigger, collected every time the
+ * trigger is evaluated against a build. The statistics of all triggers are
+ * kept in memory since startup and shown on the management page, so that
+ * expensive or never matching triggers can be found.
+ */
+public class TriggerStatistics {
+
+	/**
+	 * Statistics of all triggers, keyed by {@link PeriodicTrigger#getKey()}.
+	 */
+	private static final ConcurrentMap<String, TriggerStatistics> ALL = new ConcurrentHashMap<String, TriggerStatistics>();
+
+	/**
+	 * The key of the trigger.
+	 */
+	private final String key;
+	/**
+	 * True if the trigger reads lines, false for triggers only looking up
+	 * what the Build Failure Analyzer found.
+	 */
+	private final boolean isReading;
+	/**
+	 * Number of evaluations.
+	 */
+	private final StripedCounter evaluations = new StripedCounter();
+	/**
+	 * Time spent on evaluations in ns.
+	 */
+	private final StripedCounter matchNanos = new StripedCounter();
+	/**
+	 * Log lines examined.
+	 */
+	private final StripedCounter linesExamined = new StripedCounter();
+	/**
+	 * Log bytes examined.
+	 */
+	private final StripedCounter bytesExamined = new StripedCounter();
+	/**
+	 * Number of evaluations that matched.
+	 */
+	private final StripedCounter hits = new StripedCounter();
+	/**
+	 * Number of evaluations that exceeded the time budget.
+	 */
+	private final StripedCounter timeouts = new StripedCounter();
+	/**
+	 * Number of restarts suppressed because of a low retry success rate.
+	 */
+	private final StripedCounter suppressions = new StripedCounter();
+	/**
+	 * Time of the last match in ms since epoch, 0 if there was none.
+	 */
+	private volatile long lastHitTime;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param key
+	 *            the key of the trigger.
+	 * @param isReading
+	 *            true if the trigger reads lines.
+	 */
+	TriggerStatistics(String key, boolean isReading) {
+		this.key = key;
+		this.isReading = isReading;
+	}
+
+	/**
+	 * Returns the statistics of the given trigger, creating them if needed.
+	 *
+	 * @param perTri
+	 *            the trigger.
+	 * @return the statistics.
+	 */
+	public static TriggerStatistics of(PeriodicTrigger perTri) {
+		final String key = perTri.getKey();
+		TriggerStatistics stats = ALL.get(key);
+		if (stats == null) {
+			final TriggerStatistics newStats = new TriggerStatistics(key,
+					!(perTri instanceof BuildFailureObject));
+			stats = ALL.putIfAbsent(key, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Forgets the statistics of all triggers.
+	 */
+	public static void resetAll() {
+		ALL.clear();
+	}
+
+	/**
+	 * Forgets the statistics of the triggers that are no longer configured.
+	 * Called when the configuration is saved, as every edited trigger gets a
+	 * new key.
+	 *
+	 * @param triggers
+	 *            the configured triggers.
+	 */
+	public static void retainAll(Collection<PeriodicTrigger> triggers) {
+		final Set<String> keys = new HashSet<String>();
+		for (PeriodicTrigger perTri : triggers) {
+			keys.add(perTri.getKey());
+		}
+		ALL.keySet().retainAll(keys);
+	}
+
+	/**
+	 * Returns the number of triggers with statistics.
+	 *
+	 * @return the number.
+	 */
+	static int size() {
+		return ALL.size();
+	}
+
+	/**
+	 * Records one evaluation of the trigger.
+	 *
+	 * @param nanos
+	 *            time spent in ns.
+	 * @param lines
+	 *            log lines examined.
+	 * @param bytes
+	 *            log bytes examined.
+	 * @param isHit
+	 *            true if the trigger matched.
+	 */
+	public void recordEvaluation(long nanos, long lines, long bytes,
+			boolean isHit) {
+		this.evaluations.increment();
+		this.matchNanos.add(nanos);
+		if (lines > 0) {
+			this.linesExamined.add(lines);
+		}
+		if (bytes > 0) {
+			this.bytesExamined.add(bytes);
+		}
+		if (isHit) {
+			this.hits.increment();
+			this.lastHitTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Records an evaluation that exceeded the time budget.
+	 */
+	public void recordTimeout() {
+		this.timeouts.increment();
+	}
+
+	/**
+	 * Records a restart suppressed because of a low retry success rate.
+	 */
+	public void recordSuppression() {
+		this.suppressions.increment();
+	}
+
+	/**
+	 * Returns the number of restarts suppressed because of a low retry
+	 * success rate.
+	 *
+	 * @return the number as long.
+	 */
+	public long getSuppressions() {
+		return this.suppressions.sum();
+	}
+
+	/**
+	 * Returns the number of evaluations that exceeded the time budget.
+	 *
+	 * @return the number as long.
+	 */
+	public long getTimeouts() {
+		return this.timeouts.sum();
+	}
+
+	/**
+	 * Returns the key of the trigger.
+	 *
+	 * @return the key.
+	 */
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * Returns the number of evaluations.
+	 *
+	 * @return the number as long.
+	 */
+	public long getEvaluations() {
+		return this.evaluations.sum();
+	}
+
+	/**
+	 * Returns the time spent on all evaluations.
+	 *
+	 * @return time in ms.
+	 */
+	public long getMatchTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.matchNanos.sum());
+	}
+
+	/**
+	 * Returns the average time of one evaluation.
+	 *
+	 * @return time in µs, 0 if there was no evaluation.
+	 */
+	public long getAverageMatchTimeMicros() {
+		final long count = getEvaluations();
+		if (count == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMicros(this.matchNanos.sum() / count);
+	}
+
+	/**
+	 * Tells if the trigger reads lines, so that lines and bytes examined
+	 * apply to it.
+	 *
+	 * @return false for triggers looking up failure causes.
+	 */
+	public boolean isReading() {
+		return this.isReading;
+	}
+
+	/**
+	 * Returns the number of log lines examined.
+	 *
+	 * @return the number as long.
+	 */
+	public long getLinesExamined() {
+		return this.linesExamined.sum();
+	}
+
+	/**
+	 * Returns the number of log bytes examined.
+	 *
+	 * @return the number as long.
+	 */
+	public long getBytesExamined() {
+		return this.bytesExamined.sum();
+	}
+
+	/**
+	 * Returns the number of evaluations that matched.
+	 *
+	 * @return the number as long.
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Returns the share of evaluations that matched.
+	 *
+	 * @return hit rate in percent, 0 if there was no evaluation.
+	 */
+	public long getHitRatePercent() {
+		final long count = getEvaluations();
+		if (count == 0) {
+			return 0;
+		}
+		return getHits() * 100 / count;
+	}
+
+	/**
+	 * Returns the time of the last match.
+	 *
+	 * @return ms since epoch, 0 if there was none.
+	 */
+	public long getLastHitTime() {
+		return this.lastHitTime;
+	}
+
+	/**
+	 * Returns the time elapsed since the last match, for display.
+	 *
+	 * @return the time span as String, empty if there was no match.
+	 */
+	public String getTimeSinceLastHit() {
+		if (this.lastHitTime == 0) {
+			return "";
+		}
+		return Util.getTimeSpanString(
+				System.currentTimeMillis() - this.lastHitTime);
+	}
+}
@@ -0,0 +1,154 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * Remembers which regular expressions matched the log of a completed build,
+ * so the log is scanned once: by the afterbuild evaluation when the build
+ * completes, or by the first cron cycle that checks it. Later cron cycles
+ * reuse the verdict until the build is rebuilt.
+ *
+ * Verdicts are kept by the key of the trigger, which is built from its
+ * value. A regular expression that is edited gets a new key and is evaluated
+ * again, the verdicts of the others stay valid. Failure causes of the Build
+ * Failure Analyzer are not kept, looking them up reads no log and a rescan by
+ * the analyzer may change them.
+ *
+ * The build record is rewritten only when a verdict changed. A first miss is
+ * what a build without verdicts is assumed to be, so it is kept in memory and
+ * written with the next save of the build; a hit or a changed verdict is
+ * written by {@link #save(Run)}.
+ */
+public class TriggerVerdictAction extends InvisibleAction {
+
+	/**
+	 * Logger for PeriodicReincarnation.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(TriggerVerdictAction.class.getName());
+
+	/**
+	 * True if the trigger matched, by key of the trigger.
+	 */
+	private final Map<String, Boolean> verdicts = new HashMap<String, Boolean>();
+	/**
+	 * Where the trigger matched a Pipeline, by key of the trigger.
+	 */
+	private final Map<String, LogHit> hits = new HashMap<String, LogHit>();
+	/**
+	 * True if verdicts changed since the build was last saved.
+	 */
+	private transient boolean isDirty;
+
+	/**
+	 * Returns the verdict of a trigger on a build.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param perTri
+	 *            the trigger.
+	 * @return true if it matched, false if not, null if it was not evaluated.
+	 */
+	public static Boolean getVerdict(Run<?, ?> build, PeriodicTrigger perTri) {
+		final TriggerVerdictAction action = build
+				.getAction(TriggerVerdictAction.class);
+		if (action == null) {
+			return null;
+		}
+		synchronized (action) {
+			return action.verdicts.get(perTri.getKey());
+		}
+	}
+
+	/**
+	 * Returns where a trigger matched a Pipeline.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param perTri
+	 *            the trigger.
+	 * @return the hit or null if it is not known.
+	 */
+	public static LogHit getHit(Run<?, ?> build, PeriodicTrigger perTri) {
+		final TriggerVerdictAction action = build
+				.getAction(TriggerVerdictAction.class);
+		if (action == null) {
+			return null;
+		}
+		synchronized (action) {
+			return action.hits.get(perTri.getKey());
+		}
+	}
+
+	/**
+	 * Records the verdict of a trigger on a completed build. The build is
+	 * not saved, see {@link #save(Run)}; a first miss does not even mark it
+	 * for saving.
+	 *
+	 * @param build
+	 *            the build.
+	 * @param perTri
+	 *            the trigger.
+	 * @param isHit
+	 *            true if the trigger matched.
+	 * @param hit
+	 *            where the trigger matched a Pipeline, or null.
+	 */
+	public static void record(Run<?, ?> build, PeriodicTrigger perTri,
+			boolean isHit, LogHit hit) {
+		if (build.isBuilding()) {
+			return;
+		}
+		TriggerVerdictAction action;
+		synchronized (TriggerVerdictAction.class) {
+			action = build.getAction(TriggerVerdictAction.class);
+			if (action == null) {
+				action = new TriggerVerdictAction();
+				build.addAction(action);
+			}
+		}
+		synchronized (action) {
+			final Boolean previous = action.verdicts.put(perTri.getKey(),
+					isHit);
+			if (hit != null) {
+				action.hits.put(perTri.getKey(), hit);
+			}
+			if (previous == null ? isHit : previous != isHit) {
+				action.isDirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Saves a build if verdicts changed since it was last saved. Called once
+	 * after all triggers were checked, instead of once per trigger.
+	 *
+	 * @param build
+	 *            the build.
+	 */
+	public static void save(Run<?, ?> build) {
+		final TriggerVerdictAction action = build
+				.getAction(TriggerVerdictAction.class);
+		if (action == null) {
+			return;
+		}
+		synchronized (action) {
+			if (!action.isDirty) {
+				return;
+			}
+			action.isDirty = false;
+		}
+		try {
+			build.save();
+		} catch (IOException e) {
+			LOGGER.warning("Cannot save the verdicts of "
+					+ build.getFullDisplayName() + ": " + e.getMessage());
+		}
+	}
+}
@@ -4,26 +4,34 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.input.CountingInputStream;
+
 import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.model.FailureCauseBuildAction;
 import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
 
 import hudson.AbortException;
+import hudson.FilePath;
 import hudson.PluginWrapper;
 import hudson.model.AbstractBuild;
-import hudson.model.AbstractProject;
 import hudson.model.BuildBadgeAction;
+import hudson.model.CauseAction;
 import hudson.model.Computer;
+import hudson.model.Job;
 import hudson.model.Node;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -31,6 +39,7 @@ import hudson.plugins.jobConfigHistory.JobConfigBadgeAction;
 import hudson.remoting.VirtualChannel;
 import hudson.util.RemotingDiagnostics;
 import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
 
 /**
  * Utility class. Functions for determining if there should be a restart and
@@ -48,40 +57,55 @@ public class Utils {
 			.getLogger(Utils.class.getName());
 
 	/**
-	 * If there were no changes between the last 2 builds of a project and the
-	 * last build failed but the previous didn't, then this project is being
-	 * restarted if this unchanged restart option is enabled.
+	 * Text of our own messages in the logs. Lines containing it are ignored so
+	 * we don't create a respawn loop.
+	 */
+	static final String OWN_MESSAGE = "Periodic Reincarnation";
+
+	/**
+	 * Time in s a search of a workspace may take before it is given up, so a
+	 * slow agent does not hold up a cron cycle or a build listener.
+	 */
+	static final int WORKSPACE_SCAN_TIMEOUT = 30;
+
+	/**
+	 * If a project has been failing without SCM or configuration changes
+	 * since its last build that did not fail, within the lookback, then this
+	 * project is being restarted if this unchanged restart option is enabled.
+	 * With a lookback of 2 this means the last build failed, the second last
+	 * didn't and there were no changes in between.
+	 * 
+	 * The builds are looked up in the {@link BuildHistory} kept on
+	 * completion; only if it does not tell are they read from disk, once.
 	 * 
 	 * @param project
 	 *            the project.
+	 * @param lookback
+	 *            number of builds to look at, the last one included.
 	 * @return true if it qualifies, false otherwise.
 	 */
-	protected static boolean qualifyForUnchangedRestart(
-			AbstractProject<?, ?> project) {
-		// proves if a build WAS stable and if there are changes between the
-		// last two builds.
-		// WAS stable means: last build was worse or equal to FAILURE, second
-		// last was better than FAILURE
+	protected static boolean qualifyForUnchangedRestart(Job<?, ?> project,
+			int lookback) {
+		// a project that never was stable needs no look at its builds
+		if (!CandidateFilter.mayHaveSucceeded(project)) {
+			return false;
+		}
 		final Run<?, ?> lastBuild = project.getLastBuild();
-		if (lastBuild == null) {
+		if (lastBuild == null || lastBuild.getResult() == null
+				|| lastBuild.getResult().isBetterThan(Result.FAILURE)) {
 			return false;
 		}
-		final Run<?, ?> secondLastBuild = lastBuild.getPreviousBuild();
-		if (lastBuild.getResult() != null
-				&& lastBuild.getResult().isWorseOrEqualTo(Result.FAILURE)
-				&& secondLastBuild != null
-				&& secondLastBuild.getResult() != null
-				&& secondLastBuild.getResult().isBetterThan(Result.FAILURE)
-				&& !areThereSCMChanges(lastBuild)
-				&& !isThereConfigChange(lastBuild)) {
-			// last build failed, but second one didn't and there were no
-			// changes between the two builds
-			// in this case we restart the build
-			return true;
+		final BuildHistory history = BuildHistory.get();
+		if (history != null) {
+			final Boolean verdict = history.isUnchangedSincePassed(
+					project.getFullName(), lastBuild.getNumber(), lookback);
+			if (verdict != null) {
+				return verdict;
+			}
+			return history.seed(lastBuild, lookback);
 		}
-		// last build was not a failure or 2nd last was.
-		// no restart
-		return false;
+		return Boolean.TRUE.equals(BuildHistory.read(lastBuild, lookback)
+				.isUnchangedSincePassed(lastBuild.getNumber(), lookback));
 	}
 
 	/**
@@ -94,7 +118,7 @@ public class Utils {
 	 * @return false means no icon or no jobConfigHistory, returns true
 	 *         otherwise.
 	 */
-	private static boolean isThereConfigChange(Run<?, ?> lastBuild) {
+	static boolean isThereConfigChange(Run<?, ?> lastBuild) {
 		// use the String method here, because we check if optional dependency
 		// JobConfigHistory is listed.
 		try {
@@ -115,7 +139,8 @@ public class Utils {
 	}
 
 	/**
-	 * Helper method for restarting a project.
+	 * Helper method for restarting a project. Works for every job that can be
+	 * scheduled with parameters, freestyle projects as well as Pipelines.
 	 * 
 	 * @param project
 	 *            the project.
@@ -125,16 +150,135 @@ public class Utils {
 	 *            periodic trigger.
 	 * @param quietPeriod
 	 *            amount of time a job will wait in the queue(in seconds).
-	 * @throws IOException
-	 * @throws InterruptedException
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return true if the restart was scheduled, false if a circuit breaker
+	 *         held it or it could not be scheduled.
+	 */
+	protected static boolean restart(Job<?, ?> project, String cause,
+			PeriodicTrigger perTri, int quietPeriod, CycleMetrics metrics) {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config != null && !CircuitBreaker.get().admit(
+				CircuitBreaker.getKeys(project, perTri),
+				new CircuitBreaker.HeldRestart(project.getFullName(), cause,
+						perTri != null ? perTri.getKey() : null, quietPeriod),
+				config.getBreakerThreshold(), config.getBreakerWindow(),
+				System.currentTimeMillis())) {
+			LOGGER.fine("Restart of " + project.getFullName()
+					+ " held by an open circuit breaker.");
+			ReincarnationJournal.recordDecision(metrics.getType(), project,
+					project.getLastBuild(), perTri, cause,
+					ReincarnationJournal.HELD);
+			return false;
+		}
+		return schedule(project, cause, perTri, quietPeriod, metrics);
+	}
+
+	/**
+	 * Schedules restarts released by the circuit breakers. Jobs and triggers
+	 * that no longer exist are skipped, and so are jobs whose last build no
+	 * longer failed or that are building or queued again. A released probe
+	 * that is not scheduled is given up, so the breaker picks the next one.
 	 * 
+	 * @param restarts
+	 *            the restarts.
+	 * @param metrics
+	 *            metrics of the current cycle.
 	 */
-	protected static void restart(AbstractProject<?, ?> project, String cause,
-			PeriodicTrigger perTri, int quietPeriod) {
+	static void restartReleased(List<CircuitBreaker.HeldRestart> restarts,
+			CycleMetrics metrics) {
+		final Jenkins jenkins = Jenkins.getInstance();
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (jenkins == null || config == null) {
+			return;
+		}
+		for (CircuitBreaker.HeldRestart restart : restarts) {
+			final Job<?, ?> project = jenkins
+					.getItemByFullName(restart.getFullName(), Job.class);
+			if (project == null) {
+				CircuitBreaker.get().cancelProbe(restart.getFullName());
+				continue;
+			}
+			if (!CandidateFilter.mayHaveFailed(project)) {
+				// the job passed since it was held, so whatever it waited
+				// for works again, like after a successful probe
+				LOGGER.fine("Held restart of " + restart.getFullName()
+						+ " dropped, the job no longer fails.");
+				CircuitBreaker.get().recordOutcome(restart.getFullName(),
+						true);
+				continue;
+			}
+			if (isPending(project)) {
+				LOGGER.fine("Held restart of " + restart.getFullName()
+						+ " dropped, the job is building or queued.");
+				CircuitBreaker.get().cancelProbe(restart.getFullName());
+				continue;
+			}
+			PeriodicTrigger perTri = null;
+			if (restart.getTriggerKey() != null) {
+				for (PeriodicTrigger candidate : config.getPeriodicTriggers()) {
+					if (candidate.getKey().equals(restart.getTriggerKey())) {
+						perTri = candidate;
+						break;
+					}
+				}
+				if (perTri == null) {
+					CircuitBreaker.get().cancelProbe(restart.getFullName());
+					continue;
+				}
+			}
+			if (!schedule(project, restart.getCause(), perTri,
+					restart.getQuietPeriod(), metrics)) {
+				CircuitBreaker.get().cancelProbe(restart.getFullName());
+			}
+		}
+	}
+
+	/**
+	 * Tells if a job is queued or its last build has not completed yet,
+	 * including the listeners that report its outcome.
+	 * 
+	 * @param project
+	 *            the project.
+	 * @return true if a build of the job is pending.
+	 */
+	static boolean isPending(Job<?, ?> project) {
+		if (project.isInQueue()) {
+			return true;
+		}
+		final Run<?, ?> lastBuild = project.getLastBuild();
+		return lastBuild != null && lastBuild.isLogUpdated();
+	}
+
+	/**
+	 * Schedules the restart of a project, after the circuit breakers let it
+	 * pass.
+	 * 
+	 * @param project
+	 *            the project.
+	 * @param cause
+	 *            the cause for the restart.
+	 * @param perTri
+	 *            periodic trigger.
+	 * @param quietPeriod
+	 *            amount of time a job will wait in the queue(in seconds).
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return true if the restart was scheduled.
+	 */
+	private static boolean schedule(Job<?, ?> project, String cause,
+			PeriodicTrigger perTri, int quietPeriod, CycleMetrics metrics) {
+		String restartCause = cause;
 		if (perTri != null) {
+			final LogHit hit = PipelineSupport.getHit(project.getLastBuild(),
+					perTri);
+			if (hit != null && hit.getBranch() != null) {
+				restartCause += " (parallel branch " + hit.getBranch() + ")";
+			}
 			try {
-				Utils.execAction(project, perTri.getNodeAction(),
-						perTri.getMasterAction());
+				Utils.execAction(project, perTri, metrics);
 			} catch (IOException e) {
 				LOGGER.warning("I/O Problem executing groovy script.");
 				e.printStackTrace();
@@ -143,8 +287,84 @@ public class Utils {
 				e.printStackTrace();
 			}
 		}
-		project.scheduleBuild(quietPeriod,
-				new PeriodicReincarnationBuildCause(cause));
+		final Run<?, ?> failedBuild = project.getLastBuild();
+		if (perTri != null && perTri.isRestartFromStage()
+				&& restartFromStage(project, restartCause, perTri, quietPeriod,
+						metrics)) {
+			metrics.restartScheduled();
+			ReincarnationJournal.recordDecision(metrics.getType(), project,
+					failedBuild, perTri, restartCause,
+					ReincarnationJournal.STAGE_RESTARTED);
+			return true;
+		}
+		if (ParameterizedJobMixIn.scheduleBuild2(project, quietPeriod,
+				new CauseAction(new PeriodicReincarnationBuildCause(
+						restartCause,
+						perTri != null ? perTri.getKey() : null))) == null) {
+			LOGGER.warning("Could not schedule " + project.getFullName()
+					+ " for restart.");
+			ReincarnationJournal.recordDecision(metrics.getType(), project,
+					failedBuild, perTri, restartCause,
+					ReincarnationJournal.NOT_SCHEDULED);
+			return false;
+		}
+		metrics.restartScheduled();
+		ReincarnationJournal.recordDecision(metrics.getType(), project,
+				failedBuild, perTri, restartCause,
+				ReincarnationJournal.SCHEDULED);
+		return true;
+	}
+
+	/**
+	 * Restarts the last build of a Pipeline from the stage that failed. For
+	 * a RegEx the stage is the one whose log matched, for other triggers the
+	 * one whose step failed.
+	 * 
+	 * @param project
+	 *            the project.
+	 * @param cause
+	 *            the cause for the restart.
+	 * @param perTri
+	 *            periodic trigger.
+	 * @param quietPeriod
+	 *            amount of time a job will wait in the queue(in seconds).
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return true if the restart was scheduled, false if the project has to
+	 *         be rebuilt from the start.
+	 */
+	private static boolean restartFromStage(Job<?, ?> project, String cause,
+			PeriodicTrigger perTri, int quietPeriod, CycleMetrics metrics) {
+		final Run<?, ?> lastBuild = project.getLastBuild();
+		if (!PipelineSupport.isPipeline(lastBuild)) {
+			return false;
+		}
+		final LogHit hit = PipelineSupport.getHit(lastBuild, perTri);
+		if (hit != null && hit.getStage() != null) {
+			return PipelineSupport.restartFromStage(lastBuild, hit.getStage(),
+					cause, perTri.getKey(), quietPeriod);
+		}
+		LineMatcher matcher = null;
+		if (perTri.getClass() == RegEx.class) {
+			final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+					.get();
+			try {
+				matcher = ((RegEx) perTri).getLineMatcher(config != null
+						? config.getRegExTimeout()
+						: PeriodicReincarnationGlobalConfiguration.DEFAULT_REGEX_TIMEOUT);
+			} catch (AbortException e) {
+				return false;
+			}
+		}
+		final String stage = PipelineSupport.findStage(lastBuild, matcher,
+				metrics);
+		if (stage == null) {
+			LOGGER.fine("No stage to restart " + lastBuild.getFullDisplayName()
+					+ " from, rebuilding it.");
+			return false;
+		}
+		return PipelineSupport.restartFromStage(lastBuild, stage, cause,
+				perTri.getKey(), quietPeriod);
 	}
 
 	/**
@@ -152,38 +372,235 @@ public class Utils {
 	 * 
 	 * @param build
 	 *            the build.
+	 * @param metrics
+	 *            metrics of the current cycle.
 	 * @return RegEx object if at least one match, null otherwise.
 	 */
-	protected static RegEx checkBuild(Run<?, ?> build) {
-		final PeriodicReincarnationGlobalConfiguration config = new PeriodicReincarnationGlobalConfiguration();
+	protected static RegEx checkBuild(Run<?, ?> build, CycleMetrics metrics) {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null) {
+			return null;
+		}
 		final List<RegEx> regExprs = config.getRegExprs();
 		if (regExprs == null || regExprs.size() == 0) {
 			return null;
 		}
+		// the flow graph of a Pipeline is walked once for all reg exes
+		final PipelineSupport.FlowGraph graph = new PipelineSupport.FlowGraph(
+				build);
 		for (final Iterator<RegEx> i = regExprs.iterator(); i.hasNext();) {
 			final RegEx currentRegEx = i.next();
-			try {
-				if (checkFile(build.getLogFile(), currentRegEx.getPattern(),
-						true)) {
-					return currentRegEx;
-				}
-			} catch (AbortException e) {
-				e.printStackTrace();
+			if (!currentRegEx.isDisabled()
+					&& !isSuppressed(build.getParent(), currentRegEx)
+					&& checkBuild(build, currentRegEx, graph, metrics)) {
+				return currentRegEx;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the workspace of a certain build matches any of the
+	 * configured workspace regular expressions.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return WorkspaceRegEx object if at least one match, null otherwise.
+	 */
+	protected static WorkspaceRegEx checkWorkspace(Run<?, ?> build,
+			CycleMetrics metrics) {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null || config.getWorkspaceRegExprs() == null) {
+			return null;
+		}
+		for (WorkspaceRegEx currentRegEx : config.getWorkspaceRegExprs()) {
+			if (!currentRegEx.isDisabled()
+					&& !isSuppressed(build.getParent(), currentRegEx)
+					&& checkWorkspace(build, currentRegEx, metrics)) {
+				return currentRegEx;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if files in the workspace of a certain build match the given
+	 * regular expression. The files are read on the agent holding the
+	 * workspace, which has to be online. Only freestyle like builds have a
+	 * workspace of their own. The search is given up after
+	 * {@value #WORKSPACE_SCAN_TIMEOUT} seconds without a verdict.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param regEx
+	 *            the workspace regular expression.
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return true means a match, false otherwise.
+	 */
+	protected static boolean checkWorkspace(Run<?, ?> build,
+			WorkspaceRegEx regEx, CycleMetrics metrics) {
+		if (regEx.isDisabled() || !(build instanceof AbstractBuild)) {
+			return false;
+		}
+		final Boolean verdict = TriggerVerdictAction.getVerdict(build, regEx);
+		if (verdict != null) {
+			metrics.verdictReused();
+			return verdict;
+		}
+		final FilePath workspace = ((AbstractBuild<?, ?>) build)
+				.getWorkspace();
+		if (workspace == null || workspace.getChannel() == null) {
+			return false;
+		}
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		final int timeout = config != null ? config.getRegExTimeout()
+				: PeriodicReincarnationGlobalConfiguration.DEFAULT_REGEX_TIMEOUT;
+		final long start = System.nanoTime();
+		ScanResult result = null;
+		Future<ScanResult> scan = null;
+		try {
+			scan = workspace.actAsync(regEx.getScan(timeout));
+			result = scan.get(WORKSPACE_SCAN_TIMEOUT, TimeUnit.SECONDS);
+			TriggerVerdictAction.record(build, regEx, result.isHit(), null);
+			return result.isHit();
+		} catch (TimeoutException e) {
+			scan.cancel(true);
+			LOGGER.warning("Search of " + regEx.getFiles() + " in the "
+					+ "workspace of " + build.getFullDisplayName()
+					+ " took longer than " + WORKSPACE_SCAN_TIMEOUT
+					+ " s and was given up.");
+		} catch (ExecutionException e) {
+			if (!(e.getCause() instanceof RegExTimeoutException)) {
+				LOGGER.fine("Cannot search the workspace of "
+						+ build.getFullDisplayName() + ": " + e.getCause());
+				return false;
+			}
+			LOGGER.warning("RegEx " + regEx.getValue()
+					+ " exceeded its time budget of " + timeout
+					+ " ms on a line of " + regEx.getFiles() + " in "
+					+ build.getFullDisplayName() + ". It is disabled now, "
+					+ "please fix it and enable it again in the global "
+					+ "configuration.");
+			TriggerStatistics.of(regEx).recordTimeout();
+			disable(regEx, config);
+		} catch (AbortException e) {
+			// the global configuration already flags the pattern, so it
+			// was saved anyway or loaded from an older file
+			LOGGER.warning("Workspace RegEx " + regEx.getKey()
+					+ " cannot be compiled. It is disabled now, please fix it"
+					+ " and enable it again in the global configuration.");
+			disable(regEx, config);
+		} catch (IOException e) {
+			LOGGER.fine("Cannot search the workspace of "
+					+ build.getFullDisplayName() + ": " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			final long nanos = System.nanoTime() - start;
+			metrics.addRegExTime(regEx.getKey(), nanos);
+			if (result != null) {
+				TriggerStatistics.of(regEx).recordEvaluation(nanos,
+						result.getLines(), result.getBytes(), result.isHit());
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the failed tests of a certain build match any of the
+	 * configured test result triggers.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return TestResultTrigger object if at least one match, null otherwise.
+	 */
+	protected static TestResultTrigger checkTestResult(Run<?, ?> build,
+			CycleMetrics metrics) {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null || config.getTestResultTriggers() == null) {
+			return null;
+		}
+		for (TestResultTrigger trigger : config.getTestResultTriggers()) {
+			if (!trigger.isDisabled()
+					&& !isSuppressed(build.getParent(), trigger)
+					&& checkTestResult(build, trigger, metrics)) {
+				return trigger;
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Checks if the failed tests of a certain build match the given trigger.
+	 * The failed tests are read from the test report once per build, see
+	 * {@link FailedTestIndex}.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param trigger
+	 *            the test result trigger.
+	 * @param metrics
+	 *            metrics of the current cycle.
+	 * @return true means a match, false otherwise.
+	 */
+	protected static boolean checkTestResult(Run<?, ?> build,
+			TestResultTrigger trigger, CycleMetrics metrics) {
+		if (trigger.isDisabled()) {
+			return false;
+		}
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		final int timeout = config != null ? config.getRegExTimeout()
+				: PeriodicReincarnationGlobalConfiguration.DEFAULT_REGEX_TIMEOUT;
+		final long start = System.nanoTime();
+		boolean isHit = false;
+		try {
+			isHit = trigger.matches(FailedTestIndex.of(build), timeout);
+			return isHit;
+		} catch (AbortException e) {
+			LOGGER.warning("Test result trigger " + trigger.getKey()
+					+ " cannot be checked: " + e.getMessage());
+		} catch (RegExTimeoutException e) {
+			LOGGER.warning("Test result trigger " + trigger.getKey()
+					+ " exceeded its time budget of " + timeout
+					+ " ms on a test of " + build.getFullDisplayName()
+					+ ". It is disabled now, please fix it and enable it "
+					+ "again in the global configuration.");
+			TriggerStatistics.of(trigger).recordTimeout();
+			disable(trigger, config);
+		} finally {
+			final long nanos = System.nanoTime() - start;
+			metrics.addRegExTime(trigger.getKey(), nanos);
+			TriggerStatistics.of(trigger).recordEvaluation(nanos, 0, 0, isHit);
+		}
+		return false;
+	}
+
 	/**
 	 * Checks if a certain build matches any of the given Failure Cause.
 	 * 
 	 * @param build
 	 *            the build.
+	 * @param metrics
+	 *            metrics of the current cycle.
 	 * @return BuildFailureObject if at least one match, null otherwise.
 	 */
 	protected static BuildFailureObject checkBuildForBuildFailure(
-			Run<?, ?> build) {
-		final PeriodicReincarnationGlobalConfiguration config = new PeriodicReincarnationGlobalConfiguration();
+			Run<?, ?> build, CycleMetrics metrics) {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		if (config == null) {
+			return null;
+		}
 		final List<BuildFailureObject> bfas = config.getBfas();
 		if (bfas == null || bfas.size() == 0) {
 			return null;
@@ -191,13 +608,39 @@ public class Utils {
 		for (final Iterator<BuildFailureObject> i = bfas.iterator(); i
 				.hasNext();) {
 			final BuildFailureObject currentBFA = i.next();
-			if (checkBuild(build, currentBFA)) {
+			if (!currentBFA.isDisabled()
+					&& !isSuppressed(build.getParent(), currentBFA)
+					&& checkBuild(build, currentBFA, metrics)) {
 				return currentBFA;
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Tells if a trigger is suppressed for a job, because its restarts of
+	 * the job hardly ever succeeded. A suppressed trigger is not evaluated.
+	 * 
+	 * @param project
+	 *            the project.
+	 * @param perTri
+	 *            the periodic trigger.
+	 * @return true if the trigger is not to restart the project.
+	 */
+	static boolean isSuppressed(Job<?, ?> project, PeriodicTrigger perTri) {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		final RetryStatistics retries = RetryStatistics.get();
+		if (config == null || retries == null
+				|| !retries.isSuppressed(perTri.getKey(),
+						project.getFullName(),
+						config.getMinRetrySuccessRate())) {
+			return false;
+		}
+		TriggerStatistics.of(perTri).recordSuppression();
+		return true;
+	}
+
 	/**
 	 * Checks if a certain build matches the given regular expression.
 	 * 
@@ -205,15 +648,66 @@ public class Utils {
 	 *            the build.
 	 * @param regEx
 	 *            the regular expression.
+	 * @param graph
+	 *            the flow graph of the build, shared by all triggers checked
+	 *            against it.
+	 * @param metrics
+	 *            metrics of the current cycle.
 	 * @return true means a match, false otherwise.
 	 */
-	protected static boolean checkBuild(Run<?, ?> build, RegEx regEx) {
+	protected static boolean checkBuild(Run<?, ?> build, RegEx regEx,
+			PipelineSupport.FlowGraph graph, CycleMetrics metrics) {
+		if (regEx.isDisabled()) {
+			return false;
+		}
+		// a log scanned before is not scanned again
+		final Boolean verdict = TriggerVerdictAction.getVerdict(build, regEx);
+		if (verdict != null) {
+			metrics.verdictReused();
+			PipelineSupport.rememberHit(build, regEx,
+					TriggerVerdictAction.getHit(build, regEx));
+			return verdict;
+		}
+		final long start = System.nanoTime();
+		ScanResult result = null;
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		final int timeout = config != null ? config.getRegExTimeout()
+				: PeriodicReincarnationGlobalConfiguration.DEFAULT_REGEX_TIMEOUT;
 		try {
 			LOGGER.finest("Start check log file for project: "
 					+ build.getParent().getDisplayName());
-			return checkFile(build.getLogFile(), regEx.getPattern(), true);
+			result = checkLog(build, graph, regEx.getLineMatcher(timeout),
+					true, metrics);
+			if (result.getLocation() != null || !result.isHit()) {
+				PipelineSupport.rememberHit(build, regEx,
+						result.getLocation());
+			}
+			if (result.getLocation() != null) {
+				LOGGER.fine("RegEx " + regEx.getValue() + " matched "
+						+ build.getFullDisplayName() + " in "
+						+ result.getLocation());
+			}
+			TriggerVerdictAction.record(build, regEx, result.isHit(),
+					result.getLocation());
+			return result.isHit();
 		} catch (AbortException e) {
 			e.printStackTrace();
+		} catch (RegExTimeoutException e) {
+			LOGGER.warning("RegEx " + regEx.getValue()
+					+ " exceeded its time budget of " + timeout
+					+ " ms on a line of " + build.getFullDisplayName()
+					+ ". It is disabled now, please fix it and enable it "
+					+ "again in the global configuration.");
+			TriggerStatistics.of(regEx).recordTimeout();
+			disable(regEx, config);
+		} finally {
+			final long nanos = System.nanoTime() - start;
+			metrics.addRegExTime(regEx.getKey(), nanos);
+			if (result != null) {
+				TriggerStatistics.of(regEx).recordEvaluation(nanos,
+						result.getLines(), result.getBytes(), result.isHit());
+			}
 		}
 		return false;
 	}
@@ -225,12 +719,34 @@ public class Utils {
 	 *            the build.
 	 * @param regEx
 	 *            the regular expression.
+	 * @param metrics
+	 *            metrics of the current cycle.
 	 * @return true means a match, false otherwise.
 	 */
 	protected static boolean checkBuild(Run<?, ?> build,
-			BuildFailureObject bfa) {
+			BuildFailureObject bfa, CycleMetrics metrics) {
 		if (!Utils.isBfaAvailable())
 			return false;
+		metrics.bfaLookup();
+		final long start = System.nanoTime();
+		final boolean isHit = matchesFailureCause(build, bfa);
+		TriggerStatistics.of(bfa).recordEvaluation(System.nanoTime() - start,
+				0, 0, isHit);
+		return isHit;
+	}
+
+	/**
+	 * Checks if the Build Failure Analyzer found the failure cause of the
+	 * given trigger in a certain build.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param bfa
+	 *            the trigger.
+	 * @return true means a match, false otherwise.
+	 */
+	static boolean matchesFailureCause(Run<?, ?> build,
+			BuildFailureObject bfa) {
 		List<FoundFailureCause> failureCauses = new ArrayList<FoundFailureCause>();
 		FailureCauseBuildAction subAction = build
 				.getAction(FailureCauseBuildAction.class);
@@ -239,23 +755,40 @@ public class Utils {
 					? subAction.getFailureCauseDisplayData()
 							.getFoundFailureCauses()
 					: null;
-			if (failureCauses == null)
+			if (failureCauses == null || failureCauses.isEmpty())
 				return false;
-			for (FoundFailureCause ffc : failureCauses) {
-				try {
-					if (((BuildFailureObject) bfa).getFailureCause()
-							.equals(ffc.getId()))
-						return true;
-				} catch (AbortException e) {
-					LOGGER.warning(
-							"Failure cause doesn't seem to exist (may have been deleted): "
-									+ e.getMessage());
-				}
+			try {
+				// resolve the id once instead of once per found cause
+				return containsFailureCause(failureCauses,
+						bfa.getFailureCause());
+			} catch (AbortException e) {
+				LOGGER.warning(
+						"Failure cause doesn't seem to exist (may have been deleted): "
+								+ e.getMessage());
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Checks if a list of found failure causes contains the given failure
+	 * cause.
+	 * 
+	 * @param failureCauses
+	 *            the failure causes found in a build.
+	 * @param id
+	 *            the id of the failure cause.
+	 * @return true means a match, false otherwise.
+	 */
+	static boolean containsFailureCause(
+			List<FoundFailureCause> failureCauses, String id) {
+		for (FoundFailureCause ffc : failureCauses) {
+			if (id.equals(ffc.getId()))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Determine if the plugin build-failure-analyzer is available
 	 * 
@@ -279,36 +812,196 @@ public class Utils {
 	 * @param abortAfterFirstHit
 	 *            normally true, can be set to false in order to continue
 	 *            searching.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read.
 	 * 
-	 * @return True if reg ex was found in the file, false otherwise.
+	 * @return the result of the scan, a hit if the reg ex was found in the
+	 *         file.
 	 */
-	private static boolean checkFile(File file, Pattern pattern,
-			boolean abortAfterFirstHit) {
+	static ScanResult checkFile(File file, Pattern pattern,
+			boolean abortAfterFirstHit, CycleMetrics metrics) {
 		if (pattern == null) {
-			return false;
+			return new ScanResult(false, 0, 0);
 		}
+		return checkFile(file, new LineMatcher(pattern, 0),
+				abortAfterFirstHit, metrics);
+	}
+
+	/**
+	 * Searches for a given pattern in the log of a build, see
+	 * {@link #scanLog}. A log that cannot be read counts as a miss.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param graph
+	 *            the flow graph of the build, null to read the whole log.
+	 * @param matcher
+	 *            the compiled reg ex we are checking with.
+	 * @param abortAfterFirstHit
+	 *            normally true, can be set to false in order to continue
+	 *            searching.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read.
+	 * 
+	 * @return the result of the scan, a hit if the reg ex was found in the
+	 *         log.
+	 * @throws RegExTimeoutException
+	 *             if matching a line exceeded the time budget.
+	 */
+	static ScanResult checkLog(Run<?, ?> build,
+			PipelineSupport.FlowGraph graph, LineMatcher matcher,
+			boolean abortAfterFirstHit, CycleMetrics metrics) {
+		try {
+			return scanLog(build, graph, matcher, abortAfterFirstHit
+					? MatchCallback.FIRST_HIT : MatchCallback.ALL_HITS,
+					metrics);
+		} catch (IOException e) {
+			LOGGER.warning("Log of " + build.getFullDisplayName()
+					+ " cannot be read: " + e.getMessage());
+		}
+		return new ScanResult(false, 0, 0);
+	}
+
+	/**
+	 * Searches for a given pattern in the log of a build. The log is read as a
+	 * stream through the build, so this works for every kind of run,
+	 * including Pipelines and compressed logs. Pipelines are searched flow
+	 * node by flow node instead, which tells where the hit was found; the
+	 * whole log is only read if their flow graph cannot be. The restarts and
+	 * the dry run share this scan.
+	 * 
+	 * @param build
+	 *            the build.
+	 * @param graph
+	 *            the flow graph of the build, null to read the whole log.
+	 * @param matcher
+	 *            the compiled reg ex we are checking with.
+	 * @param callback
+	 *            told about the matched lines, decides whether the scan goes
+	 *            on.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read; null to
+	 *            count nothing.
+	 * 
+	 * @return the result of the scan, a hit if the reg ex was found in the
+	 *         log.
+	 * @throws IOException
+	 *             if the log cannot be read.
+	 * @throws RegExTimeoutException
+	 *             if matching a line exceeded the time budget.
+	 */
+	static ScanResult scanLog(Run<?, ?> build, PipelineSupport.FlowGraph graph,
+			LineMatcher matcher, MatchCallback callback, CycleMetrics metrics)
+			throws IOException {
+		if (graph != null) {
+			// scan node by node, so the hit can be attributed
+			final ScanResult result = PipelineSupport.scan(graph, matcher,
+					callback, metrics);
+			if (result != null) {
+				return result;
+			}
+		}
+		return checkStream(build.getLogInputStream(), matcher, callback,
+				metrics);
+	}
+
+	/**
+	 * Searches for a given pattern in a given file.
+	 * 
+	 * @param file
+	 *            the current file being checked.
+	 * @param matcher
+	 *            the compiled reg ex we are checking with.
+	 * @param abortAfterFirstHit
+	 *            normally true, can be set to false in order to continue
+	 *            searching.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read.
+	 * 
+	 * @return the result of the scan, a hit if the reg ex was found in the
+	 *         file.
+	 * @throws RegExTimeoutException
+	 *             if matching a line exceeded the time budget.
+	 */
+	static ScanResult checkFile(File file, LineMatcher matcher,
+			boolean abortAfterFirstHit, CycleMetrics metrics) {
+		try {
+			return checkStream(new FileInputStream(file), matcher,
+					abortAfterFirstHit ? MatchCallback.FIRST_HIT
+							: MatchCallback.ALL_HITS,
+					metrics);
+		} catch (IOException e) {
+			LOGGER.warning("No such file: " + file.getPath());
+		}
+		return new ScanResult(false, 0, 0);
+	}
+
+	/**
+	 * Searches for a given pattern in a log stream and closes it.
+	 * 
+	 * @param in
+	 *            the log.
+	 * @param matcher
+	 *            the compiled reg ex we are checking with.
+	 * @param callback
+	 *            told about the matched lines, decides whether the scan goes
+	 *            on.
+	 * @param metrics
+	 *            metrics of the current cycle, counts the bytes read; null to
+	 *            count nothing.
+	 * 
+	 * @return the result of the scan, a hit if the reg ex was found in the
+	 *         log.
+	 * @throws IOException
+	 *             if the log cannot be read.
+	 * @throws RegExTimeoutException
+	 *             if matching a line exceeded the time budget.
+	 */
+	private static ScanResult checkStream(InputStream in, LineMatcher matcher,
+			MatchCallback callback, CycleMetrics metrics) throws IOException {
 		boolean rslt = false;
-		// pattern to filter out our own messages in the logs so we don't create
-		// a respawn loop
-		Pattern prPattern = Pattern.compile(".*Periodic Reincarnation.*");
-		try (BufferedReader reader = new BufferedReader(
-				new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				final Matcher matcher = pattern.matcher(line);
-				final Matcher prMatcher = prPattern.matcher(line);
-				if (matcher.find() && !prMatcher.find()) {
-					// we have a hit
-					rslt = true;
-					if (abortAfterFirstHit) {
-						return true;
+		long lines = 0;
+		long bytes = 0;
+		try (CountingInputStream counter = new CountingInputStream(in);
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(counter, "UTF-8"))) {
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines++;
+					if (matcher.find(line) && !line.contains(OWN_MESSAGE)) {
+						// we have a hit
+						rslt = true;
+						if (!callback.matched(lines)) {
+							break;
+						}
 					}
 				}
+			} finally {
+				bytes = counter.getByteCount();
+				if (metrics != null) {
+					metrics.logScanned(bytes);
+				}
 			}
-		} catch (IOException e) {
-			LOGGER.warning("No such file: " + file.getPath());
 		}
-		return rslt;
+		return new ScanResult(rslt, lines, bytes);
+	}
+
+	/**
+	 * Disables a periodic trigger and saves the configuration, so that it
+	 * stays disabled until somebody enables it again.
+	 * 
+	 * @param perTri
+	 *            the periodic trigger.
+	 * @param config
+	 *            the configuration containing the trigger.
+	 */
+	private static void disable(PeriodicTrigger perTri,
+			PeriodicReincarnationGlobalConfiguration config) {
+		perTri.setDisabled(true);
+		if (config != null) {
+			config.save();
+		}
 	}
 
 	/**
@@ -319,7 +1012,7 @@ public class Utils {
 	 *            the last build that failed.
 	 * @return true if there is at least one change, false otherwise.
 	 */
-	private static boolean areThereSCMChanges(Run<?, ?> build1) {
+	static boolean areThereSCMChanges(Run<?, ?> build1) {
 		if (build1 instanceof AbstractBuild) {
 			return !((AbstractBuild<?, ?>) build1).getChangeSet().isEmptySet();
 		}
@@ -327,41 +1020,75 @@ public class Utils {
 	}
 
 	/**
-	 * Executes script actions for a given project.
+	 * Executes script actions for a given project. The node action runs on the
+	 * node the last build was built on. For a Pipeline this is the agent of
+	 * the parallel branch or node block whose log matched the trigger, if the
+	 * match could be attributed; otherwise only the master action runs.
 	 * 
 	 * @param project
 	 *            the project
-	 * @param nodeAction
-	 *            the nodeAction
-	 * @param masterAction
-	 *            the masterAction
+	 * @param perTri
+	 *            the periodic trigger holding the actions.
+	 * @param metrics
+	 *            metrics of the current cycle.
 	 * @throws IOException
 	 *             input/output problem
 	 * @throws InterruptedException
 	 *             interrupt exception
 	 */
-	protected static void execAction(AbstractProject<?, ?> project,
-			String nodeAction, String masterAction)
+	protected static void execAction(Job<?, ?> project,
+			PeriodicTrigger perTri, CycleMetrics metrics)
 			throws IOException, InterruptedException {
-		final Node node;
-		final Computer slave;
-		try {
-			node = project.getLastBuild().getBuiltOn();
-			slave = node.toComputer();
-		} catch (NullPointerException e) {
+		final String nodeAction = perTri.getNodeAction();
+		final String masterAction = perTri.getMasterAction();
+		final Run<?, ?> lastBuild = project.getLastBuild();
+		if (lastBuild == null) {
 			return;
 		}
-		if (nodeAction != null && nodeAction.length() > 1) {
-			LOGGER.fine("Executing node script");
+		Computer slave = null;
+		if (lastBuild instanceof AbstractBuild) {
+			final Node node = ((AbstractBuild<?, ?>) lastBuild).getBuiltOn();
+			if (node == null) {
+				return;
+			}
+			slave = node.toComputer();
+			if (slave == null) {
+				return;
+			}
+		} else {
+			slave = getAgent(PipelineSupport.getHit(lastBuild, perTri));
+		}
+		if (slave != null && slave.getChannel() != null && nodeAction != null
+				&& nodeAction.length() > 1) {
+			LOGGER.fine("Executing node script on " + slave.getDisplayName());
 			executeGroovyScript(nodeAction, slave.getChannel());
+			metrics.scriptExecuted();
 		}
 		if (masterAction != null && masterAction.length() > 1) {
 			LOGGER.fine("Executing master script");
-			executeGroovyScript(nodeAction,
+			executeGroovyScript(masterAction,
 					Jenkins.MasterComputer.localChannel);
+			metrics.scriptExecuted();
 		}
 	}
 
+	/**
+	 * Returns the computer of the agent a Pipeline log hit was found on.
+	 * 
+	 * @param hit
+	 *            the hit.
+	 * @return the computer or null if it is not known or gone.
+	 */
+	private static Computer getAgent(LogHit hit) {
+		final Jenkins jenkins = Jenkins.getInstance();
+		if (hit == null || hit.getAgent() == null || jenkins == null) {
+			return null;
+		}
+		final Node node = hit.getAgent().isEmpty() ? jenkins
+				: jenkins.getNode(hit.getAgent());
+		return node != null ? node.toComputer() : null;
+	}
+
 	/**
 	 * Executes groovy script.
 	 * 
@@ -479,7 +1206,10 @@ public class Utils {
 	}
 	
 	protected static boolean isMavenPluginAvailable() {
-		PluginWrapper wrapper = Jenkins.getInstance().getPluginManager().getPlugin("maven-plugin");
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null)
+			return false;
+		PluginWrapper wrapper = jenkins.getPluginManager().getPlugin("maven-plugin");
 		return (wrapper != null && wrapper.isEnabled());
 	}
 
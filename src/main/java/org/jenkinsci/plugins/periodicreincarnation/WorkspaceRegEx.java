@@ -0,0 +1,196 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import hudson.AbortException;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Regular expression searched in files of the workspace instead of the
+ * console log, e.g. in test reports or logs of tools. The files are read on
+ * the agent that holds the workspace, only the verdict and the amount read
+ * are sent back over the channel. A search reads at most
+ * {@value #MAX_FILES} files and {@value #MAX_BYTES} bytes.
+ */
+public class WorkspaceRegEx extends RegEx {
+
+	/**
+	 * Files searched at most per workspace.
+	 */
+	static final int MAX_FILES = 1000;
+	/**
+	 * Bytes read at most per workspace, 64 MB.
+	 */
+	static final long MAX_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * Ant pattern of the files to search, relative to the workspace.
+	 */
+	private final String files;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param value
+	 *            the reg ex.
+	 * @param files
+	 *            Ant pattern of the files to search, e.g.
+	 *            {@code **}{@code /target/surefire-reports/*.txt}.
+	 * @param description
+	 *            regex description
+	 * @param cronTime
+	 *            cron time format.
+	 * @param nodeAction
+	 *            node script.
+	 * @param masterAction
+	 *            master script
+	 */
+	@DataBoundConstructor
+	public WorkspaceRegEx(String value, String files, String description,
+			String cronTime, String nodeAction, String masterAction) {
+		super(value, description, cronTime, nodeAction, masterAction);
+		this.files = files;
+	}
+
+	/**
+	 * Returns the pattern of the files to search.
+	 *
+	 * @return the Ant pattern.
+	 */
+	public String getFiles() {
+		return this.files;
+	}
+
+	/**
+	 * {@inheritDoc} Includes the files, as the same reg ex may be searched in
+	 * different files.
+	 */
+	@Override
+	public String getKey() {
+		return super.getKey() + " in " + this.files;
+	}
+
+	/**
+	 * Returns the search to run on the agent.
+	 *
+	 * @param timeout
+	 *            time budget per line in ms, 0 means unlimited.
+	 * @return the callable.
+	 * @throws AbortException
+	 *             if the pattern could not be compiled.
+	 */
+	Scan getScan(long timeout) throws AbortException {
+		return new Scan(getPattern(), this.files, timeout, MAX_FILES,
+				MAX_BYTES);
+	}
+
+	/**
+	 * Searches the reg ex in the files of a workspace, line by line with a
+	 * {@link LineMatcher}. Stops at the first match, or as a miss when the
+	 * maximal number of files or bytes is read.
+	 */
+	static final class Scan extends MasterToSlaveFileCallable<ScanResult> {
+
+		private static final long serialVersionUID = 2L;
+
+		/**
+		 * The reg ex, compiled on the master.
+		 */
+		private final Pattern pattern;
+		/**
+		 * Ant pattern of the files to search.
+		 */
+		private final String includes;
+		/**
+		 * Time budget per line in ms.
+		 */
+		private final long timeout;
+		/**
+		 * Files searched at most.
+		 */
+		private final int maxFiles;
+		/**
+		 * Bytes read at most.
+		 */
+		private final long maxBytes;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pattern
+		 *            the reg ex.
+		 * @param includes
+		 *            Ant pattern of the files to search.
+		 * @param timeout
+		 *            time budget per line in ms, 0 means unlimited.
+		 * @param maxFiles
+		 *            files searched at most.
+		 * @param maxBytes
+		 *            bytes read at most.
+		 */
+		Scan(Pattern pattern, String includes, long timeout, int maxFiles,
+				long maxBytes) {
+			this.pattern = pattern;
+			this.includes = includes;
+			this.timeout = timeout;
+			this.maxFiles = maxFiles;
+			this.maxBytes = maxBytes;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @throws RegExTimeoutException
+		 *             if a line exceeded the time budget.
+		 */
+		@Override
+		public ScanResult invoke(File workspace, VirtualChannel channel)
+				throws IOException, InterruptedException {
+			if (!workspace.isDirectory()) {
+				return new ScanResult(false, 0, 0);
+			}
+			final LineMatcher matcher = new LineMatcher(this.pattern,
+					this.timeout);
+			final String[] names = Util
+					.createFileSet(workspace, this.includes)
+					.getDirectoryScanner().getIncludedFiles();
+			long lines = 0;
+			long bytes = 0;
+			for (int i = 0; i < names.length && i < this.maxFiles
+					&& bytes < this.maxBytes; i++) {
+				final CountingInputStream in = new CountingInputStream(
+						new FileInputStream(new File(workspace, names[i])));
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(in, "UTF-8"))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						lines++;
+						if (matcher.find(line)) {
+							return new ScanResult(true, lines,
+									bytes + in.getByteCount());
+						}
+						if (bytes + in.getByteCount() >= this.maxBytes) {
+							break;
+						}
+					}
+				} finally {
+					bytes += in.getByteCount();
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+			return new ScanResult(false, lines, bytes);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BackoffPolicyTest {
+
+	@Test
+	public void testDefaultIsFixed() {
+		for (int i = 0; i < 5; i++) {
+			assertEquals(Constants.AFTERBUILDQUIETPERIOD,
+					BackoffPolicy.DEFAULT.getQuietPeriod(i));
+		}
+	}
+
+	@Test
+	public void testGrowsUpToCap() {
+		final BackoffPolicy policy = new BackoffPolicy(30, 2, 200, 0);
+		assertEquals(30, policy.getQuietPeriod(0, 0.5));
+		assertEquals(60, policy.getQuietPeriod(1, 0.5));
+		assertEquals(120, policy.getQuietPeriod(2, 0.5));
+		assertEquals(200, policy.getQuietPeriod(3, 0.5));
+		assertEquals(200, policy.getQuietPeriod(1000, 0.5));
+	}
+
+	@Test
+	public void testJitterBounds() {
+		final BackoffPolicy policy = new BackoffPolicy(100, 1, 100, 20);
+		assertEquals(80, policy.getQuietPeriod(0, 0));
+		assertEquals(100, policy.getQuietPeriod(0, 0.5));
+		assertEquals(120, policy.getQuietPeriod(0, 1));
+	}
+
+	@Test
+	public void testOverrideKeepsBlankValues() {
+		final BackoffPolicy global = new BackoffPolicy(30, 2, 600, 10);
+		final BackoffPolicy local = global.override("60", " ", "x", null);
+		assertEquals(60, local.getBase());
+		assertEquals(2, local.getMultiplier(), 0);
+		assertEquals(600, local.getCap());
+		assertEquals(10, local.getJitter());
+		assertEquals(global.getBase(),
+				global.override(null, null, null, null).getBase());
+	}
+
+	@Test
+	public void testMultiplierAloneGrowsTheDefault() {
+		final BackoffPolicy policy = BackoffPolicy.DEFAULT.override(null, "2",
+				null, null);
+		assertEquals(Constants.AFTERBUILDQUIETPERIOD,
+				policy.getQuietPeriod(0, 0.5));
+		assertEquals(2 * Constants.AFTERBUILDQUIETPERIOD,
+				policy.getQuietPeriod(1, 0.5));
+		assertEquals(BackoffPolicy.DEFAULT_CAP, policy.getQuietPeriod(10, 0.5));
+	}
+}
@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.model.ParameterizedJobMixIn;
+import net.sf.json.JSONObject;
+
+public class BacktestTest {
+
+	@Test
+	public void testToHtml() {
+		final JSONObject trigger = new JSONObject();
+		trigger.put("evaluations", 120);
+		trigger.put("hits", 7);
+		trigger.put("jobs", 3);
+		trigger.put("bytes", 3 * 1048576L);
+		trigger.put("millis", 2500.0);
+		final JSONObject triggers = new JSONObject();
+		triggers.put("RegEx:<Connection reset>", trigger);
+		final JSONObject summary = new JSONObject();
+		summary.put("triggers", triggers);
+		summary.put("wallMillis", 1200.0);
+		summary.put("budgetExhausted", true);
+		summary.put("errors", 0);
+		final String html = Backtest.toHtml(summary);
+		assertTrue(html, html.contains(
+				"<td>RegEx:&lt;Connection reset&gt;</td><td>120</td><td>7</td><td>3</td>"));
+		assertTrue(html, html.contains("Took 1.2 s"));
+		assertTrue(html, html.contains("budget"));
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Test
+	public void testAbortedBuildsAreFailedBuildsToo() {
+		final Run passed = mock(Run.class);
+		when(passed.getResult()).thenReturn(Result.SUCCESS);
+		final Run failed = mock(Run.class);
+		when(failed.getResult()).thenReturn(Result.FAILURE);
+		when(failed.getPreviousBuild()).thenReturn(passed);
+		final Run unstable = mock(Run.class);
+		when(unstable.getResult()).thenReturn(Result.UNSTABLE);
+		when(unstable.getPreviousBuild()).thenReturn(failed);
+		final Run aborted = mock(Run.class);
+		when(aborted.getResult()).thenReturn(Result.ABORTED);
+		when(aborted.getPreviousBuild()).thenReturn(unstable);
+		final Job job = mock(Job.class, withSettings()
+				.extraInterfaces(ParameterizedJobMixIn.ParameterizedJob.class));
+		when(job.getLastUnsuccessfulBuild()).thenReturn(aborted);
+		when(job.getLastFailedBuild()).thenReturn(failed);
+
+		final Backtest.FailedBuilds builds = new Backtest.FailedBuilds(
+				Collections.singletonList(job).iterator(), 5);
+		assertSame(aborted, builds.next());
+		assertSame(failed, builds.next());
+		assertFalse(builds.hasNext());
+		assertFalse(Backtest.isFailed(unstable));
+	}
+}
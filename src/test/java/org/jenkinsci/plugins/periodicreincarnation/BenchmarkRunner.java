@@ -0,0 +1,30 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all JMH benchmarks of this package. Not a regular test, only executed
+ * by the benchmark profile: {@code mvn test -P benchmark}. JMH options, for
+ * example to restrict the parameters, can be given with
+ * {@code -Dbenchmark.args="-p logSize=1048576 -p patternCount=10"}.
+ */
+public class BenchmarkRunner {
+
+	@Test
+	public void runBenchmarks() throws Exception {
+		final String args = System.getProperty("benchmark.args", "").trim();
+		final CommandLineOptions commandLine = new CommandLineOptions(
+				args.isEmpty() ? new String[0] : args.split("\\s+"));
+		final Options options = new OptionsBuilder().parent(commandLine)
+				.include(getClass().getPackage().getName()
+						+ "\\.\\w+Benchmark\\.")
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-report.json").build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.FoundFailureCause;
+
+/**
+ * Matches the id of a BuildFailureObject against the failure causes the
+ * Build Failure Analyzer found in a build. The found causes are the objects
+ * the Build Failure Analyzer creates, copied from a failure cause of the
+ * knowledge base.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BfaMatchBenchmark {
+
+	@Param({"1", "5", "20"})
+	public int foundCauses;
+
+	@Param({"FIRST", "LAST", "NONE"})
+	public String hitPosition;
+
+	private List<FoundFailureCause> found;
+
+	private String id;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		found = new ArrayList<FoundFailureCause>();
+		for (int i = 0; i < foundCauses; i++) {
+			found.add(new FoundFailureCause(new FailureCause("cause-" + i,
+					"Cause " + i, "description", "", null, "", null, null)));
+		}
+		if ("FIRST".equals(hitPosition)) {
+			id = "cause-0";
+		} else if ("LAST".equals(hitPosition)) {
+			id = "cause-" + (foundCauses - 1);
+		} else {
+			id = "cause-unknown";
+		}
+	}
+
+	@Benchmark
+	public boolean match() {
+		return Utils.containsFailureCause(found, id);
+	}
+}
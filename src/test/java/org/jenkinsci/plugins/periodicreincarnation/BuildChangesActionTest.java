@@ -0,0 +1,39 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import hudson.model.Action;
+import hudson.model.Run;
+
+public class BuildChangesActionTest {
+
+	@Test
+	public void testRecordedChangesAreReused() {
+		final Run<?, ?> build = mock(Run.class);
+		final BuildChangesAction recorded = new BuildChangesAction(false,
+				false);
+		when(build.getAction(BuildChangesAction.class)).thenReturn(recorded);
+		final BuildChangesAction changes = BuildChangesAction.of(build);
+		assertSame(recorded, changes);
+		assertFalse(changes.isScmChange());
+		assertFalse(changes.isConfigChange());
+		verify(build, never()).addAction(any(Action.class));
+	}
+
+	@Test
+	public void testChangesOfAnOldBuildAreNotAdded() {
+		final Run<?, ?> build = mock(Run.class);
+		// without a change set the build counts as changed
+		assertTrue(BuildChangesAction.of(build).isScmChange());
+		verify(build, never()).addAction(any(Action.class));
+	}
+}
@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildHistoryTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static BuildHistory.Ring ring(int... flags) {
+		final BuildHistory.Ring ring = new BuildHistory.Ring();
+		for (int i = 0; i < flags.length; i++) {
+			ring.add(i + 1, flags[i]);
+		}
+		return ring;
+	}
+
+	@Test
+	public void testLastTwoBuilds() {
+		final BuildHistory.Ring ring = ring(BuildHistory.PASSED, 0);
+		assertTrue(ring.isUnchangedSincePassed(2, 2));
+		assertNull(ring.isUnchangedSincePassed(3, 2));
+		assertFalse(ring(BuildHistory.PASSED, BuildHistory.SCM_CHANGE)
+				.isUnchangedSincePassed(2, 2));
+		assertFalse(ring(0, BuildHistory.PASSED).isUnchangedSincePassed(2, 2));
+	}
+
+	@Test
+	public void testLookback() {
+		final BuildHistory.Ring ring = ring(BuildHistory.PASSED, 0, 0, 0);
+		assertFalse(ring.isUnchangedSincePassed(4, 2));
+		assertTrue(ring.isUnchangedSincePassed(4, 4));
+		assertFalse(ring(BuildHistory.PASSED, BuildHistory.CONFIG_CHANGE, 0, 0)
+				.isUnchangedSincePassed(4, 4));
+		// too few builds kept to tell
+		assertNull(ring(0, 0).isUnchangedSincePassed(2, 4));
+	}
+
+	@Test
+	public void testOutOfOrderAndOverflow() {
+		final BuildHistory.Ring ring = new BuildHistory.Ring();
+		ring.add(1, BuildHistory.PASSED);
+		ring.add(3, 0);
+		ring.add(2, 0);
+		assertEquals(3, ring.getNumber(0));
+		assertEquals(2, ring.getNumber(1));
+		assertTrue(ring.isUnchangedSincePassed(3, 3));
+		for (int i = 4; i <= BuildHistory.MAX_LOOKBACK + 10; i++) {
+			ring.add(i, 0);
+		}
+		assertEquals(BuildHistory.MAX_LOOKBACK, ring.getSize());
+		assertEquals(BuildHistory.MAX_LOOKBACK + 10, ring.getNumber(0));
+		assertFalse(ring.isUnchangedSincePassed(BuildHistory.MAX_LOOKBACK + 10,
+				BuildHistory.MAX_LOOKBACK));
+	}
+
+	private static int lines(File file) throws IOException {
+		return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)
+				.size();
+	}
+
+	@Test
+	public void testChangedJobsAreAppendedAndDeletedJobsForgotten()
+			throws Exception {
+		final File file = new File(tmp.getRoot(), "build-history");
+		final BuildHistory history = new BuildHistory(file);
+		for (String job : new String[] { "a", "b", "d", "e", "f" }) {
+			history.record(job, 1, BuildHistory.PASSED);
+		}
+		history.saveIfDirty();
+		assertEquals(5, lines(file));
+		// nothing changed, nothing written
+		history.saveIfDirty();
+		assertEquals(5, lines(file));
+
+		history.record("a", 2, 0);
+		history.record("folder/c", 1, BuildHistory.PASSED);
+		history.record("folder/c", 2, 0);
+		history.saveIfDirty();
+		assertEquals(7, lines(file));
+
+		history.remove("folder");
+		history.rename("b", "moved/b");
+		history.saveIfDirty();
+		assertEquals(10, lines(file));
+		final BuildHistory loaded = new BuildHistory(file);
+		loaded.load();
+		assertTrue(loaded.isUnchangedSincePassed("a", 2, 2));
+		assertNull(loaded.isUnchangedSincePassed("folder/c", 2, 2));
+		assertNull(loaded.isUnchangedSincePassed("b", 1, 2));
+		assertFalse(loaded.isUnchangedSincePassed("moved/b", 1, 2));
+
+		// grown beyond twice the jobs, so rewritten with one line per job
+		history.record("a", 3, 0);
+		history.saveIfDirty();
+		assertEquals(5, lines(file));
+	}
+}
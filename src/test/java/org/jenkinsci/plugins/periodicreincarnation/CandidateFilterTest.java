@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+public class CandidateFilterTest {
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Job<?, ?> job(Integer lastCompleted,
+			Integer lastSuccessful) {
+		final Job job = mock(Job.class);
+		when(job.getLastCompletedBuild()).thenReturn(run(lastCompleted));
+		when(job.getLastSuccessfulBuild()).thenReturn(run(lastSuccessful));
+		return job;
+	}
+
+	private static Run<?, ?> run(Integer number) {
+		if (number == null) {
+			return null;
+		}
+		final Run<?, ?> run = mock(Run.class);
+		when(run.getNumber()).thenReturn(number);
+		return run;
+	}
+
+	@Test
+	public void testJobsThatDidNotFailAreRuledOut() {
+		assertFalse(CandidateFilter.mayHaveFailed(job(null, null)));
+		assertFalse(CandidateFilter.mayHaveFailed(job(7, 7)));
+		assertTrue(CandidateFilter.mayHaveFailed(job(7, 6)));
+		assertTrue(CandidateFilter.mayHaveFailed(job(7, null)));
+	}
+
+	@Test
+	public void testJobsThatNeverSucceededCannotBeUnchanged() {
+		assertFalse(CandidateFilter.mayHaveSucceeded(job(7, null)));
+		assertTrue(CandidateFilter.mayHaveSucceeded(job(7, 3)));
+	}
+
+	@Test
+	public void testBuildDirectoryIsNotRead() {
+		final Job<?, ?> job = job(7, 6);
+		CandidateFilter.mayHaveFailed(job);
+		CandidateFilter.mayHaveSucceeded(job);
+		verify(job, never()).getBuildDir();
+	}
+}
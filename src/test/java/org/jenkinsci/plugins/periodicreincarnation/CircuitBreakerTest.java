@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private static final List<String> KEYS = Collections
+			.singletonList("trigger:RegEx:Connection refused");
+
+	private static boolean admit(CircuitBreaker breakers, String job,
+			long now) {
+		return breakers.admit(KEYS, new CircuitBreaker.HeldRestart(job,
+				"RegEx hit", "RegEx:Connection refused", 0), 5, 10, now);
+	}
+
+	@Test
+	public void testOpensAboveThreshold() {
+		final CircuitBreaker breakers = new CircuitBreaker();
+		for (int i = 0; i < 5; i++) {
+			assertTrue(admit(breakers, "job" + i, i));
+		}
+		assertTrue(breakers.getOpenBreakers().isEmpty());
+
+		// the breaker opens, the first restarts after that are probes
+		for (int i = 5; i < 5 + CircuitBreaker.PROBES; i++) {
+			assertTrue(admit(breakers, "job" + i, i));
+		}
+		assertFalse(admit(breakers, "held", 10));
+		final CircuitBreaker.Breaker breaker = breakers.getOpenBreakers()
+				.get(0);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(1, breaker.getHeld());
+		assertEquals(CircuitBreaker.PROBES, breaker.getProbes());
+	}
+
+	@Test
+	public void testHitsLeaveWindow() {
+		final CircuitBreaker breakers = new CircuitBreaker();
+		for (int i = 0; i < 10; i++) {
+			// one restart every 3 minutes never fills a 10 minute window
+			assertTrue(admit(breakers, "job" + i, i * 180000L));
+		}
+		assertTrue(breakers.getOpenBreakers().isEmpty());
+	}
+
+	@Test
+	public void testProbeSuccessReleasesGradually() {
+		final CircuitBreaker breakers = new CircuitBreaker();
+		for (int i = 0; i < 20; i++) {
+			admit(breakers, "job" + i, i);
+		}
+		// a failed probe is replaced by a held restart
+		breakers.recordOutcome("job5", false);
+		assertEquals(1, breakers.release(5, 10, 60000).size());
+		assertEquals(12, breakers.getOpenBreakers().get(0).getHeld());
+
+		breakers.recordOutcome("job6", true);
+		assertEquals(CircuitBreaker.State.RELEASING,
+				breakers.getOpenBreakers().get(0).getState());
+		// 5 restarts per 10 minutes are released at 1 per minute
+		assertEquals(1, breakers.release(5, 10, 120000).size());
+		assertEquals(11, breakers.getOpenBreakers().get(0).getHeld());
+
+		// disabling the breakers releases everything
+		assertEquals(11, breakers.release(0, 10, 180000).size());
+		assertTrue(breakers.getOpenBreakers().isEmpty());
+	}
+
+	@Test
+	public void testLostProbeIsReplaced() {
+		final CircuitBreaker breakers = new CircuitBreaker();
+		for (int i = 0; i < 10; i++) {
+			admit(breakers, "job" + i, i);
+		}
+		// job5 and job6 are the probes
+		assertTrue(breakers.getProbes(5).isEmpty());
+		assertEquals(CircuitBreaker.PROBES, breakers.getProbes(100).size());
+		breakers.cancelProbe("job5");
+		assertEquals(1, breakers.getOpenBreakers().get(0).getProbes());
+
+		final List<CircuitBreaker.HeldRestart> released = breakers.release(5,
+				10, 100);
+		assertEquals(1, released.size());
+		assertEquals("job7", released.get(0).getFullName());
+		assertEquals(CircuitBreaker.PROBES,
+				breakers.getOpenBreakers().get(0).getProbes());
+	}
+}
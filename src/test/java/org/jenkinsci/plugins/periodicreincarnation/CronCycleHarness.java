@@ -0,0 +1,209 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+
+import hudson.Launcher;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.model.ModifiableTopLevelItemGroup;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Models a large controller and measures full cron cycles of
+ * {@link PeriodicReincarnation}. Not a regular test, only executed by the
+ * large-instance profile: {@code mvn test -P large-instance}. The model is
+ * configured with system properties:
+ * <ul>
+ * <li>harness.jobs - number of freestyle jobs (15000)</li>
+ * <li>harness.folderDepth - levels of nested folders (3)</li>
+ * <li>harness.foldersPerLevel - folders per folder (8)</li>
+ * <li>harness.failedPercent - share of failed jobs in percent (10)</li>
+ * <li>harness.hitPercent - share of failed jobs whose log matches a trigger
+ * in percent (50)</li>
+ * <li>harness.logLines - lines of every build log (2000)</li>
+ * <li>harness.triggers - number of RegEx triggers (80)</li>
+ * <li>harness.executors - executors used to create the builds (20)</li>
+ * <li>harness.iterations - measured cron cycles (3)</li>
+ * </ul>
+ * The report is written to target/cron-cycle-harness.txt.
+ */
+public class CronCycleHarness {
+
+	private static final int JOBS = Integer.getInteger("harness.jobs", 15000);
+	private static final int FOLDER_DEPTH = Integer
+			.getInteger("harness.folderDepth", 3);
+	private static final int FOLDERS_PER_LEVEL = Integer
+			.getInteger("harness.foldersPerLevel", 8);
+	private static final int FAILED_PERCENT = Integer
+			.getInteger("harness.failedPercent", 10);
+	private static final int HIT_PERCENT = Integer
+			.getInteger("harness.hitPercent", 50);
+	private static final int LOG_LINES = Integer.getInteger("harness.logLines",
+			2000);
+	private static final int TRIGGERS = Integer.getInteger("harness.triggers",
+			80);
+	private static final int EXECUTORS = Integer
+			.getInteger("harness.executors", 20);
+	private static final int ITERATIONS = Integer
+			.getInteger("harness.iterations", 3);
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void measureCronCycle() throws Exception {
+		final List<ModifiableTopLevelItemGroup> parents = createFolders();
+		createJobs(parents);
+		// the cron fires every minute, so it is only configured once all
+		// builds exist
+		configureTriggers();
+
+		// keep restarted builds in the queue while measuring
+		j.jenkins.setNumExecutors(0);
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final StringBuilder report = new StringBuilder();
+		report.append(String.format(
+				"jobs=%d folders=%d failed=%d%% hit=%d%% logLines=%d triggers=%d%n",
+				JOBS, parents.size() - 1, FAILED_PERCENT, HIT_PERCENT,
+				LOG_LINES, TRIGGERS));
+		for (int i = 0; i < ITERATIONS; i++) {
+			final PeriodicReincarnation cycle = new PeriodicReincarnation();
+			final long allocatedBefore = threads
+					.getThreadAllocatedBytes(threadId);
+			final long start = System.nanoTime();
+			cycle.execute(TaskListener.NULL);
+			final long wallMillis = TimeUnit.NANOSECONDS
+					.toMillis(System.nanoTime() - start);
+			final long allocated = threads.getThreadAllocatedBytes(threadId)
+					- allocatedBefore;
+			final CycleMetrics metrics = ReincarnationMetrics
+					.getLastCronCycle();
+			report.append(String.format(
+					"cycle %d: wall=%d ms allocated=%d bytes logBytesRead=%d logsOpened=%d "
+							+ "itemsVisited=%d candidates=%d restarts=%d%n",
+					i, wallMillis, allocated, metrics.getBytesScanned(),
+					metrics.getLogsOpened(), metrics.getItemsVisited(),
+					metrics.getCandidates(), metrics.getRestartsScheduled()));
+			j.jenkins.getQueue().clear();
+		}
+		final File file = new File("target/cron-cycle-harness.txt");
+		try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"))) {
+			writer.print(report);
+		}
+	}
+
+	private void configureTriggers() throws IOException {
+		final List<RegEx> regExprs = new ArrayList<RegEx>();
+		for (int i = 0; i < TRIGGERS; i++) {
+			regExprs.add(new RegEx("error_failing_the_build_" + i + ";",
+					"trigger " + i, null, null, null));
+		}
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		new XmlFile(Jenkins.XSTREAM,
+				new File(j.jenkins.getRootDir(), config.getId() + ".xml"))
+						.write(new PeriodicReincarnationGlobalConfiguration(
+								"false", "0", "true", "* * * * *", regExprs,
+								null, "false"));
+		config.load();
+	}
+
+	private List<ModifiableTopLevelItemGroup> createFolders()
+			throws IOException {
+		final List<ModifiableTopLevelItemGroup> parents = new ArrayList<ModifiableTopLevelItemGroup>();
+		parents.add(j.jenkins);
+		List<ModifiableTopLevelItemGroup> level = new ArrayList<ModifiableTopLevelItemGroup>();
+		level.add(j.jenkins);
+		for (int depth = 0; depth < FOLDER_DEPTH; depth++) {
+			final List<ModifiableTopLevelItemGroup> next = new ArrayList<ModifiableTopLevelItemGroup>();
+			for (ModifiableTopLevelItemGroup parent : level) {
+				for (int i = 0; i < FOLDERS_PER_LEVEL; i++) {
+					next.add((Folder) parent.createProject(
+							j.jenkins.getDescriptorByType(
+									Folder.DescriptorImpl.class),
+							"folder-" + depth + "-" + i, true));
+				}
+			}
+			parents.addAll(next);
+			level = next;
+		}
+		return parents;
+	}
+
+	private void createJobs(List<ModifiableTopLevelItemGroup> parents)
+			throws Exception {
+		final Random random = new Random(42);
+		final FreeStyleProject.DescriptorImpl descriptor = j.jenkins
+				.getDescriptorByType(FreeStyleProject.DescriptorImpl.class);
+		j.jenkins.setNumExecutors(EXECUTORS);
+		for (int i = 0; i < JOBS; i++) {
+			final ModifiableTopLevelItemGroup parent = parents
+					.get(i % parents.size());
+			final FreeStyleProject project = (FreeStyleProject) parent
+					.createProject(descriptor, "job-" + i, true);
+			final boolean isFailed = random.nextInt(100) < FAILED_PERCENT;
+			final String hitLine = isFailed && random.nextInt(100) < HIT_PERCENT
+					? "error_failing_the_build_" + random.nextInt(TRIGGERS)
+							+ ";"
+					: null;
+			project.getBuildersList()
+					.add(new SyntheticLogBuilder(LOG_LINES, hitLine, !isFailed));
+			project.scheduleBuild2(0);
+		}
+		j.waitUntilNoActivity();
+	}
+
+	/**
+	 * Writes a synthetic build log and succeeds or fails.
+	 */
+	public static class SyntheticLogBuilder extends TestBuilder {
+
+		private final int lines;
+		private final String hitLine;
+		private final boolean isSuccess;
+
+		public SyntheticLogBuilder(int lines, String hitLine,
+				boolean isSuccess) {
+			this.lines = lines;
+			this.hitLine = hitLine;
+			this.isSuccess = isSuccess;
+		}
+
+		@Override
+		public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
+				BuildListener listener) {
+			final PrintStream logger = listener.getLogger();
+			for (int i = 0; i < lines; i++) {
+				if (hitLine != null && i == lines / 2) {
+					logger.println(hitLine);
+				}
+				logger.println("[INFO] Compiling " + i
+						+ " source files to /workspace/target/classes");
+			}
+			return isSuccess;
+		}
+	}
+}
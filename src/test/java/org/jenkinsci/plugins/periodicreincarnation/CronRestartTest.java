@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestBuilder;
+
+import hudson.Launcher;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+public class CronRestartTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private FreeStyleProject createFailedJob(MockFolder folder)
+			throws Exception {
+		final FreeStyleProject project = folder.createProject(
+				FreeStyleProject.class, "build");
+		project.getBuildersList().add(new TestBuilder() {
+			@Override
+			public boolean perform(AbstractBuild<?, ?> build,
+					Launcher launcher, BuildListener listener) {
+				listener.getLogger()
+						.println("java.net.SocketException: Connection reset");
+				return false;
+			}
+		});
+		j.assertBuildStatus(Result.FAILURE,
+				project.scheduleBuild2(0).get());
+		return project;
+	}
+
+	private void configure(String regEx, String breakerThreshold)
+			throws Exception {
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		final XmlFile file = new XmlFile(Jenkins.XSTREAM,
+				new File(j.jenkins.getRootDir(), config.getId() + ".xml"));
+		file.write(new PeriodicReincarnationGlobalConfiguration("false", "0",
+				"true", "* * * * *",
+				Arrays.asList(new RegEx(regEx, null, null, null, null)), null,
+				"false"));
+		if (breakerThreshold != null) {
+			final String xml = file.asString();
+			final int end = xml.lastIndexOf("</");
+			FileUtils.writeStringToFile(file.getFile(),
+					xml.substring(0, end) + "  <breakerThreshold>"
+							+ breakerThreshold + "</breakerThreshold>\n"
+							+ xml.substring(end),
+					"UTF-8");
+		}
+		config.load();
+	}
+
+	@Test
+	public void testJobsWithTheSameNameInDifferentFoldersAreRestarted()
+			throws Exception {
+		final FreeStyleProject first = createFailedJob(
+				j.createFolder("team-a"));
+		final FreeStyleProject second = createFailedJob(
+				j.createFolder("team-b"));
+		// keep the restarts in the queue
+		j.jenkins.setNumExecutors(0);
+		configure("Connection reset", null);
+
+		new PeriodicReincarnation().execute(TaskListener.NULL);
+
+		assertNotNull(j.jenkins.getQueue().getItem(first));
+		assertNotNull(j.jenkins.getQueue().getItem(second));
+	}
+
+	@Test
+	public void testRestartsHeldByTheBreakerAreNotReported()
+			throws Exception {
+		for (int i = 0; i < 4; i++) {
+			createFailedJob(j.createFolder("team-" + i));
+		}
+		j.jenkins.setNumExecutors(0);
+		// a trigger of its own, no other test counts for its breaker
+		configure("SocketException: Connection reset", "1");
+
+		new PeriodicReincarnation().execute(TaskListener.NULL);
+
+		// the first restart passes, the breaker opens on the second and lets
+		// it and one more through as probes, the fourth is held
+		assertEquals(3, j.jenkins.getQueue().getItems().length);
+		final CycleReport report = CycleReport.getRecent().get(0);
+		assertEquals(3, report.getRestarts());
+		assertEquals(3, report.getJobs().size());
+	}
+}
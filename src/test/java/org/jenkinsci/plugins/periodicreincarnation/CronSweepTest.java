@@ -0,0 +1,135 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CronSweepTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testShardIsStableAndInRange() {
+		for (String name : new String[]{"job", "folder/job", "org/repo/master",
+				"my job (2)"}) {
+			final int shard = CronSweep.getShard(name, 7);
+			assertTrue(shard >= 0 && shard < 7);
+			assertEquals(shard, CronSweep.getShard(name, 7));
+			assertEquals(0, CronSweep.getShard(name, 1));
+		}
+	}
+
+	@Test
+	public void testEveryJobIsSweptOnce() {
+		final CronSweep sweep = new CronSweep(
+				Collections.<PeriodicTrigger> emptyList(), true, 3);
+		int swept = 0;
+		while (!sweep.isDone()) {
+			if (sweep.isInCurrentShard("folder/job")) {
+				swept++;
+			}
+			sweep.advance();
+		}
+		assertEquals(1, swept);
+	}
+
+	@Test
+	public void testSingleShardIsDoneAfterOneMinute() {
+		final CronSweep sweep = new CronSweep(
+				Collections.<PeriodicTrigger> emptyList(), false, 0);
+		assertFalse(sweep.isDone());
+		assertTrue(sweep.isInCurrentShard("job"));
+		sweep.advance();
+		assertTrue(sweep.isDone());
+	}
+
+	@Test
+	public void testEveryMinuteTriggerSweepsEveryShard() {
+		final List<PeriodicTrigger> everyMinute = Arrays
+				.<PeriodicTrigger> asList(
+						new RegEx("Connection reset", "", "* * * * *", "", ""));
+		final Set<Integer> swept = new HashSet<Integer>();
+		CronSweep sweep = null;
+		// one cycle per minute, the trigger is due in every one
+		for (int minute = 0; minute < 4; minute++) {
+			if (sweep == null) {
+				sweep = new CronSweep(everyMinute, false, 4);
+			} else {
+				assertFalse(sweep.merge(everyMinute, false));
+			}
+			swept.add(sweep.getNextShard());
+			sweep.advance();
+			if (sweep.isDone()) {
+				sweep = null;
+			}
+		}
+		assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2, 3)), swept);
+		assertEquals(null, sweep);
+	}
+
+	@Test
+	public void testNewTriggerIsSweptOnEveryShard() {
+		final RegEx first = new RegEx("Connection reset", "", "", "", "");
+		final RegEx second = new RegEx("No space left", "", "", "", "");
+		final CronSweep sweep = new CronSweep(
+				Arrays.<PeriodicTrigger> asList(first), false, 3);
+		sweep.advance();
+		sweep.evaluated("folder/job", CronSweep.NO_RESTART);
+
+		assertTrue(sweep.merge(Arrays.<PeriodicTrigger> asList(second),
+				true));
+		// the position is kept, the shard starts over with both triggers
+		assertEquals(1, sweep.getNextShard());
+		assertFalse(sweep.isEvaluated("folder/job"));
+		assertEquals(Arrays.<PeriodicTrigger> asList(first, second),
+				sweep.getDueTriggers());
+		assertTrue(sweep.isUnchangedDue());
+		final Set<Integer> swept = new HashSet<Integer>();
+		while (!sweep.isDone()) {
+			swept.add(sweep.getNextShard());
+			sweep.advance();
+		}
+		assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2)), swept);
+	}
+
+	@Test
+	public void testCheckpointContinuesShard() throws Exception {
+		final RegEx regEx = new RegEx("No space left", "", "", "", "");
+		final List<PeriodicTrigger> triggers = Arrays
+				.<PeriodicTrigger> asList(regEx);
+		final SweepCheckpoint checkpoint = new SweepCheckpoint(
+				new File(tmp.getRoot(), "sweep-checkpoint"));
+		final CronSweep sweep = new CronSweep(triggers, false, 4);
+		sweep.advance();
+		checkpoint.save(sweep);
+		checkpoint.append("folder/job", CronSweep.getVerdict(0));
+		checkpoint.close();
+
+		final CronSweep loaded = checkpoint.load(triggers,
+				System.currentTimeMillis());
+		assertEquals(1, loaded.getNextShard());
+		assertEquals(4, loaded.getShards());
+		assertFalse(loaded.isUnchangedDue());
+		assertEquals(triggers, loaded.getDueTriggers());
+		assertTrue(loaded.isEvaluated("folder/job"));
+		assertFalse(loaded.isEvaluated("folder/other"));
+
+		assertEquals(null, checkpoint.load(triggers,
+				System.currentTimeMillis() + SweepCheckpoint.MAX_AGE + 1));
+		checkpoint.delete();
+		assertEquals(null,
+				checkpoint.load(triggers, System.currentTimeMillis()));
+	}
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.sf.json.JSONObject;
+
+public class CycleMetricsTest {
+
+	@Test
+	public void testAddKeepsTotals() {
+		final CycleMetrics cycle = new CycleMetrics(CycleMetrics.Type.CRON);
+		cycle.itemGroupVisited();
+		cycle.itemVisited();
+		cycle.itemVisited();
+		cycle.duplicateSkipped();
+		cycle.logScanned(100);
+		cycle.logScanned(50);
+		cycle.addRegExTime("a.*b", TimeUnit.MILLISECONDS.toNanos(3));
+		cycle.finish();
+
+		final CycleMetrics totals = new CycleMetrics(CycleMetrics.Type.CRON);
+		totals.add(cycle);
+		totals.add(cycle);
+
+		assertEquals(4, totals.getItemsVisited());
+		assertEquals(2, totals.getItemGroupsVisited());
+		assertEquals(2, totals.getDuplicatesSkipped());
+		assertEquals(4, totals.getLogsOpened());
+		assertEquals(300, totals.getBytesScanned());
+		assertEquals(Long.valueOf(6), totals.getRegExTimeMillis().get("a.*b"));
+	}
+
+	@Test
+	public void testToJSON() {
+		final CycleMetrics cycle = new CycleMetrics(
+				CycleMetrics.Type.AFTERBUILD);
+		cycle.restartScheduled();
+		cycle.addRegExTime(null, 0);
+		final JSONObject json = cycle.toJSON();
+		assertEquals("AFTERBUILD", json.getString("type"));
+		assertEquals(1, json.getLong("restartsScheduled"));
+		assertEquals(0, json.getJSONObject("regExTimeMillis").getLong(""));
+	}
+
+	@Test
+	public void testTotalsForgetRemovedTriggers() {
+		final RegEx kept = new RegEx("kept", null, null, null, null);
+		final RegEx removed = new RegEx("removed", null, null, null, null);
+		final CycleMetrics cycle = new CycleMetrics(CycleMetrics.Type.CRON);
+		cycle.addRegExTime(kept.getKey(), TimeUnit.MILLISECONDS.toNanos(2));
+		cycle.addRegExTime(removed.getKey(), TimeUnit.MILLISECONDS.toNanos(5));
+		ReincarnationMetrics.record(cycle);
+
+		ReincarnationMetrics.retainAll(Arrays.<PeriodicTrigger> asList(kept));
+
+		final CycleMetrics totals = ReincarnationMetrics.getCronTotals();
+		assertEquals(2, totals.getRegExTimeMillis(kept.getKey()));
+		assertFalse(totals.getRegExTimeMillis().containsKey(removed.getKey()));
+		assertEquals(0, totals.getRegExTimeMillis(removed.getKey()));
+	}
+}
@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CycleReportTest {
+
+	@Test
+	public void testCountsAndCappedJobs() {
+		final CycleReport report = new CycleReport(0);
+		for (int i = 0; i < CycleReport.MAX_JOBS + 5; i++) {
+			report.add("Connection reset", "folder/job" + i);
+		}
+		report.add("Unchanged restart", "other");
+		assertEquals(CycleReport.MAX_JOBS + 6, report.getRestarts());
+		assertEquals(CycleReport.MAX_JOBS, report.getJobs().size());
+		assertEquals(6, report.getOmittedJobs());
+		assertEquals(Integer.valueOf(CycleReport.MAX_JOBS + 5),
+				report.getCounts().get("Connection reset"));
+		assertEquals(
+				"Periodic Reincarnation cron restart summary: 106 projects "
+						+ "scheduled for restart (Connection reset: 105, "
+						+ "Unchanged restart: 1)",
+				report.toString());
+	}
+
+	@Test
+	public void testLogLineIsBounded() {
+		final CycleReport report = new CycleReport(0);
+		for (int i = 0; i < CycleReport.MAX_LOGGED_CAUSES + 3; i++) {
+			report.add("cause" + i, "job");
+		}
+		assertTrue(report.toString().endsWith(", 3 more causes)"));
+	}
+
+	@Test
+	public void testRecentReportsAreBounded() {
+		CycleReport last = null;
+		for (int i = 0; i < CycleReport.MAX_REPORTS + 2; i++) {
+			last = new CycleReport(i);
+			CycleReport.record(last);
+		}
+		assertEquals(CycleReport.MAX_REPORTS, CycleReport.getRecent().size());
+		assertSame(last, CycleReport.getRecent().get(0));
+	}
+}
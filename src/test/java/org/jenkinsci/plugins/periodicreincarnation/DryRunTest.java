@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import net.sf.json.JSONObject;
+
+public class DryRunTest {
+
+	private static final String LOG = "Started by user admin\n"
+			+ "java.net.SocketException: Connection reset\n"
+			+ "Periodic Reincarnation: Connection reset\n"
+			+ "Retrying\n" + "java.net.SocketException: Connection reset\n"
+			+ "Finished: FAILURE\n";
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Run<?, ?> build() throws Exception {
+		final Job job = mock(Job.class);
+		when(job.getFullName()).thenReturn("folder/job");
+		final Run build = mock(Run.class);
+		when(build.getParent()).thenReturn(job);
+		when(build.getNumber()).thenReturn(42);
+		when(build.getLogInputStream()).thenReturn(
+				new ByteArrayInputStream(LOG.getBytes("UTF-8")));
+		return build;
+	}
+
+	private static DryRun dryRun(RegEx regEx, int matches) {
+		return new DryRun(Collections.<PeriodicTrigger> singletonList(regEx),
+				1, matches, 0);
+	}
+
+	private static DryRun.Verdict evaluate(DryRun dryRun, Run<?, ?> build,
+			RegEx regEx) {
+		return dryRun.evaluate(build, regEx,
+				new PipelineSupport.FlowGraph(build));
+	}
+
+	@Test
+	public void testStopsAtFirstMatchLikeARestart() throws Exception {
+		final RegEx regEx = new RegEx("Connection reset", "", "", "", "");
+		final DryRun.Verdict verdict = evaluate(dryRun(regEx, 1), build(),
+				regEx);
+		assertTrue(verdict.isHit());
+		assertNull(verdict.getError());
+		final JSONObject json = verdict.toJSON();
+		assertEquals("folder/job", json.getString("job"));
+		assertEquals(42, json.getInt("build"));
+		assertEquals("[2]", json.getJSONArray("matchedLines").toString());
+		assertEquals(2, json.getLong("lines"));
+	}
+
+	@Test
+	public void testReportsMatchedLinesAndIgnoresOwnMessages()
+			throws Exception {
+		final RegEx regEx = new RegEx("Connection reset", "", "", "", "");
+		final JSONObject json = evaluate(dryRun(regEx, 10), build(), regEx)
+				.toJSON();
+		assertEquals("[2,5]", json.getJSONArray("matchedLines").toString());
+		assertEquals(6, json.getLong("lines"));
+	}
+
+	@Test
+	public void testInvalidRegExIsReported() throws Exception {
+		final RegEx regEx = new RegEx("Connection (reset", "", "", "", "");
+		final DryRun.Verdict verdict = evaluate(dryRun(regEx, 1), build(),
+				regEx);
+		assertFalse(verdict.isHit());
+		assertEquals("RegEx cannot be compiled!", verdict.getError());
+	}
+
+	@Test
+	public void testFailureIsReportedForItsBuildOnly() throws Exception {
+		final RegEx regEx = new RegEx("Connection reset", "", "", "", "");
+		final Run<?, ?> broken = build();
+		when(broken.getLogInputStream())
+				.thenThrow(new IllegalStateException("broken"));
+		final DryRun dryRun = dryRun(regEx, 1);
+		assertTrue(evaluate(dryRun, broken, regEx).getError()
+				.contains("broken"));
+		assertTrue(evaluate(dryRun, build(), regEx).isHit());
+	}
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+/**
+ * Runs of a job that is no AbstractProject, like a Pipeline, are scanned and
+ * counted the same way as freestyle builds.
+ */
+public class GenericRunTest {
+
+	private static final String LOG = "Started by timer\n"
+			+ "[Pipeline] sh\n" + "java.net.SocketException: Connection reset\n"
+			+ "Finished: FAILURE\n";
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Run<?, ?> run(Run<?, ?> previous, String cause)
+			throws Exception {
+		final Job job = mock(Job.class);
+		when(job.getFullName()).thenReturn("folder/pipeline");
+		final Run run = mock(Run.class);
+		when(run.getParent()).thenReturn(job);
+		when(run.getPreviousBuild()).thenReturn(previous);
+		when(run.getLogInputStream()).thenReturn(
+				new ByteArrayInputStream(LOG.getBytes("UTF-8")));
+		if (cause != null) {
+			when(run.getCause(PeriodicReincarnationBuildCause.class))
+					.thenReturn(new PeriodicReincarnationBuildCause(cause));
+		}
+		return run;
+	}
+
+	@Test
+	public void testLogIsReadThroughTheRun() throws Exception {
+		final CycleMetrics metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+		final Run<?, ?> failed = run(null, null);
+		final ScanResult hit = Utils.checkLog(failed,
+				new PipelineSupport.FlowGraph(failed),
+				new RegEx("Connection reset", null, null, null, null)
+						.getLineMatcher(0),
+				true, metrics);
+		assertTrue(hit.isHit());
+		assertEquals(3, hit.getLines());
+
+		final Run<?, ?> other = run(null, null);
+		final ScanResult miss = Utils.checkLog(other,
+				new PipelineSupport.FlowGraph(other),
+				new RegEx("OutOfMemoryError", null, null, null, null)
+						.getLineMatcher(0),
+				true, metrics);
+		assertFalse(miss.isHit());
+		assertEquals(4, miss.getLines());
+		assertEquals(2, metrics.getLogsOpened());
+	}
+
+	@Test
+	public void testRestartsAreCountedOnAnyRun() throws Exception {
+		final Run<?, ?> first = run(null, null);
+		final Run<?, ?> second = run(first,
+				"(" + Constants.AFTERBUILDRESTART + ") RegEx hit");
+		final Run<?, ?> third = run(second,
+				"(" + Constants.AFTERBUILDRESTART + ") RegEx hit");
+		assertEquals(2, AfterbuildReincarnation.countRestarts(third, 0));
+		assertEquals(1, AfterbuildReincarnation.countRestarts(third, 1));
+		assertTrue(AfterbuildReincarnation.isBelowRestartDepth(third, 3));
+		assertFalse(AfterbuildReincarnation.isBelowRestartDepth(third, 2));
+	}
+
+	@Test
+	public void testRunWithoutChangeSetCountsAsChanged() throws Exception {
+		// without a change set there is no proof the run is unchanged
+		assertTrue(Utils.areThereSCMChanges(run(null, null)));
+	}
+}
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class LineMatcherTest {
+
+	@Test
+	public void testLiteralPattern() {
+		final LineMatcher matcher = new LineMatcher(
+				Pattern.compile("error_failing_the_build"), 1000);
+		assertTrue(matcher.isLiteral());
+		assertTrue(matcher.find("[INFO] error_failing_the_build here"));
+		assertFalse(matcher.find("[INFO] all good"));
+	}
+
+	@Test
+	public void testRegularPattern() {
+		final LineMatcher matcher = new LineMatcher(
+				Pattern.compile("No space left on (device|disk)"), 1000);
+		assertFalse(matcher.isLiteral());
+		assertTrue(matcher.find("java.io.IOException: No space left on device"));
+		assertFalse(matcher.find("No space left"));
+	}
+
+	@Test(expected = RegExTimeoutException.class)
+	public void testBacktrackingExceedsBudget() {
+		final StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			line.append('a');
+		}
+		new LineMatcher(Pattern.compile("(.*a){12}b"), 50).find(line.toString());
+	}
+
+	@Test
+	public void testRegExCachesMatcherPerBudget() throws Exception {
+		final RegEx regEx = new RegEx("Connection reset", null, null, null,
+				null);
+		final LineMatcher matcher = regEx.getLineMatcher(1000);
+		assertEquals(1000, matcher.getBudgetMillis());
+		assertSame(matcher, regEx.getLineMatcher(1000));
+		final LineMatcher unlimited = regEx.getLineMatcher(0);
+		assertNotSame(matcher, unlimited);
+		assertEquals(0, unlimited.getBudgetMillis());
+		assertSame(matcher.getPattern(), unlimited.getPattern());
+	}
+}
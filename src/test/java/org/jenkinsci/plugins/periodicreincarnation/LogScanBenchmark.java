@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scans a synthetic build log with a list of regular expressions the way
+ * {@link Utils#checkBuild(hudson.model.Run, CycleMetrics)} does: one pass per
+ * pattern until the first pattern hits. The hit line matches the last pattern
+ * only, so every pattern is evaluated. The default parameters run in minutes;
+ * larger logs, more patterns and a late hit are set with JMH options, e.g.
+ * {@code -p logSize=1073741824 -p patternCount=200 -p hitPosition=LATE}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogScanBenchmark {
+
+	@Param({"1048576", "33554432"})
+	public long logSize;
+
+	@Param({"1", "20"})
+	public int patternCount;
+
+	@Param({"LITERAL", "COMPLEX"})
+	public String patternKind;
+
+	@Param({"EARLY", "NONE"})
+	public String hitPosition;
+
+	private File log;
+
+	private Pattern[] patterns;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final boolean isLiteral = "LITERAL".equals(patternKind);
+		patterns = new Pattern[patternCount];
+		for (int i = 0; i < patternCount; i++) {
+			patterns[i] = Pattern.compile(isLiteral
+					? "error_failing_the_build_" + i + ";"
+					: "java\\.net\\.\\w+Exception: (Connection (refused|reset)"
+							+ "|Read timed out) .*node-" + i + "$");
+		}
+		final String hitLine = isLiteral
+				? "error_failing_the_build_" + (patternCount - 1) + ";"
+				: "java.net.SocketException: Connection reset by peer node-"
+						+ (patternCount - 1);
+		final long hitOffset;
+		if ("EARLY".equals(hitPosition)) {
+			hitOffset = logSize / 100;
+		} else if ("LATE".equals(hitPosition)) {
+			hitOffset = logSize - logSize / 100 - hitLine.length() - 1;
+		} else {
+			hitOffset = Long.MAX_VALUE;
+		}
+		log = File.createTempFile("periodic-reincarnation", ".log");
+		writeLog(log, logSize, hitOffset, hitLine);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (!log.delete()) {
+			log.deleteOnExit();
+		}
+	}
+
+	@Benchmark
+	public int scan() {
+		final CycleMetrics metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+		for (int i = 0; i < patterns.length; i++) {
+			if (Utils.checkFile(log, patterns[i], true, metrics).isHit()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes a log of roughly the given size, made of typical build output,
+	 * with the hit line at the given offset.
+	 */
+	static void writeLog(File file, long size, long hitOffset, String hitLine)
+			throws IOException {
+		final Random random = new Random(42);
+		final String[] templates = {
+				"[INFO] Building module-%d 1.0-SNAPSHOT",
+				"[INFO] Compiling %d source files to /workspace/target/classes",
+				"Downloaded: https://repo.example.org/releases/org/example/lib/%d/lib.jar",
+				"Tests run: %d, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 0.5 sec",
+				"[WARNING] Using platform encoding to copy filtered resources, build is platform dependent! %d",
+				"    at org.example.Service.call(Service.java:%d)" };
+		boolean isHitWritten = false;
+		long written = 0;
+		try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"), 1 << 16)) {
+			while (written < size) {
+				final String line;
+				if (!isHitWritten && written >= hitOffset) {
+					line = hitLine;
+					isHitWritten = true;
+				} else {
+					line = String.format(
+							templates[random.nextInt(templates.length)],
+							random.nextInt(10000));
+				}
+				writer.write(line);
+				writer.write('\n');
+				written += line.length() + 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.TopLevelItem;
+
+public class PeriodicReincarnationTest {
+
+	private static Item job(String fullName) {
+		final FreeStyleProject job = mock(FreeStyleProject.class);
+		when(job.getFullName()).thenReturn(fullName);
+		return job;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Item folder(String fullName, Item... items) {
+		final Item folder = mock(TopLevelItem.class,
+				withSettings().extraInterfaces(ItemGroup.class));
+		when(folder.getFullName()).thenReturn(fullName);
+		when(((ItemGroup) folder).getItems())
+				.thenReturn(Arrays.asList(items));
+		return folder;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static ItemGroup<?> root(Item... items) {
+		final ItemGroup root = mock(ItemGroup.class);
+		when(root.getItems()).thenReturn(Arrays.asList(items));
+		return root;
+	}
+
+	@Test
+	public void testNestedFoldersAreWalked() {
+		final CycleMetrics metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+		final Collection<String> jobs = PeriodicReincarnation
+				.getRestartableJobs(root(job("a"),
+						folder("f", job("f/b"),
+								folder("f/g", job("f/g/c")))),
+						metrics)
+				.keySet();
+		assertEquals(Arrays.asList("a", "f/b", "f/g/c"),
+				new ArrayList<String>(jobs));
+		assertEquals(3, metrics.getItemGroupsVisited());
+		assertEquals(5, metrics.getItemsVisited());
+		assertEquals(0, metrics.getDuplicatesSkipped());
+	}
+
+	@Test
+	public void testItemReachedTwiceIsVisitedOnce() {
+		final CycleMetrics metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+		final Item shared = job("f/shared");
+		final Collection<String> jobs = PeriodicReincarnation
+				.getRestartableJobs(
+						root(folder("f", shared), folder("f", shared)),
+						metrics)
+				.keySet();
+		assertEquals(Arrays.asList("f/shared"), new ArrayList<String>(jobs));
+		// the second folder is skipped as a whole
+		assertEquals(1, metrics.getDuplicatesSkipped());
+		assertEquals(2, metrics.getItemGroupsVisited());
+	}
+
+	@Test
+	public void testSweepWalksTheTreeOnce() {
+		final CronSweep sweep = new CronSweep(
+				new ArrayList<PeriodicTrigger>(), true, 2);
+		assertEquals(null, sweep.getJobs());
+		sweep.setJobs(PeriodicReincarnation.getRestartableJobs(
+				root(job("a"), job("b")),
+				new CycleMetrics(CycleMetrics.Type.CRON)).keySet());
+		sweep.advance();
+		// the next shard works on the jobs collected before
+		assertEquals(Arrays.asList("a", "b"), sweep.getJobs());
+	}
+}
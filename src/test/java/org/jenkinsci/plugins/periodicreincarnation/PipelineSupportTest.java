@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import hudson.model.Action;
+import hudson.model.Actionable;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.ParametersAction;
+import hudson.model.Run;
+import hudson.model.StringParameterValue;
+
+public class PipelineSupportTest {
+
+	@Test
+	public void testStageRestartCarriesTheCauseFromTheStart() {
+		final Run<?, ?> run = mock(Run.class);
+		final ParametersAction parameters = new ParametersAction(
+				new StringParameterValue("BRANCH", "master"));
+		when(run.getAction(ParametersAction.class)).thenReturn(parameters);
+		final Cause stageCause = new Cause.RemoteCause("host", "stage");
+		final Action flowFactory = mock(Action.class);
+		final PeriodicReincarnationBuildCause cause = new PeriodicReincarnationBuildCause(
+				"(Afterbuild restart) RegEx hit (from stage Test)", "regex");
+
+		final Action[] actions = PipelineSupport.getRestartActions(run,
+				stageCause, flowFactory, cause);
+
+		assertEquals(3, actions.length);
+		final CauseAction causes = (CauseAction) actions[0];
+		assertSame(stageCause, causes.findCause(Cause.RemoteCause.class));
+		assertEquals("regex", causes
+				.findCause(PeriodicReincarnationBuildCause.class)
+				.getTriggerKey());
+		assertSame(flowFactory, actions[1]);
+		assertSame(parameters, actions[2]);
+	}
+
+	@Test
+	public void testRunWithoutParametersIsRestartedWithoutThem() {
+		final Action[] actions = PipelineSupport.getRestartActions(
+				mock(Run.class), new Cause.RemoteCause("host", "stage"),
+				mock(Action.class), new PeriodicReincarnationBuildCause("x"));
+		assertEquals(2, actions.length);
+	}
+
+	@Test
+	public void testFlowGraphIsWalkedOncePerBuild() throws Exception {
+		final byte[] log = "java.net.SocketException: Connection reset\n"
+				.getBytes("UTF-8");
+		final Run<?, ?> run = mock(Run.class);
+		when(run.getLogInputStream()).thenReturn(
+				new ByteArrayInputStream(log), new ByteArrayInputStream(log));
+		final int[] walks = new int[1];
+		final PipelineSupport.FlowGraph graph = new PipelineSupport.FlowGraph(
+				run) {
+			@Override
+			List<Actionable> read() {
+				walks[0]++;
+				// no flow graph, the whole log is read instead
+				return null;
+			}
+		};
+		final CycleMetrics metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+
+		assertFalse(Utils.checkLog(run, graph,
+				new RegEx("OutOfMemoryError", null, null, null, null)
+						.getLineMatcher(0),
+				true, metrics).isHit());
+		assertTrue(Utils.checkLog(run, graph,
+				new RegEx("Connection reset", null, null, null, null)
+						.getLineMatcher(0),
+				true, metrics).isHit());
+
+		assertEquals(1, walks[0]);
+		// each log was read once
+		assertEquals(2, metrics.getLogsOpened());
+		assertEquals(2 * log.length, metrics.getBytesScanned());
+	}
+
+	@Test
+	public void testWithoutPipelineTheProjectIsRebuilt() {
+		// false makes the caller schedule a normal restart instead
+		assertFalse(PipelineSupport.restartFromStage(mock(Run.class), "Test",
+				"cause", "regex", 60));
+	}
+}
@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RegExAnalyzerTest {
+
+	@Test
+	public void testNestedQuantifiersAreRisky() {
+		assertTrue(RegExAnalyzer.isBacktrackingRisk("(a+)+b"));
+		assertTrue(RegExAnalyzer.isBacktrackingRisk("(\\w*\\s?)*x"));
+		assertTrue(RegExAnalyzer.isBacktrackingRisk("(x{2,})+"));
+	}
+
+	@Test
+	public void testAdjacentWildcardsAreRisky() {
+		assertTrue(RegExAnalyzer.isBacktrackingRisk(".*.*x"));
+		assertTrue(RegExAnalyzer.isBacktrackingRisk(".+\\s*\\S*x"));
+	}
+
+	@Test
+	public void testCommonPatternsAreSafe() {
+		assertFalse(RegExAnalyzer.isBacktrackingRisk("error_failing_the_build"));
+		assertFalse(RegExAnalyzer.isBacktrackingRisk(".*ERROR.*"));
+		assertFalse(RegExAnalyzer.isBacktrackingRisk("\\d+\\.\\d+"));
+		assertFalse(RegExAnalyzer.isBacktrackingRisk("(foo|bar)+"));
+		assertFalse(RegExAnalyzer.isBacktrackingRisk("(a++)+"));
+		assertFalse(RegExAnalyzer.isBacktrackingRisk("\\Q(a+)+\\E"));
+		assertFalse(RegExAnalyzer.isBacktrackingRisk(null));
+	}
+}
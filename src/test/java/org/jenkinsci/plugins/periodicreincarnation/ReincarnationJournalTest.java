@@ -0,0 +1,105 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sf.json.JSONObject;
+
+public class ReincarnationJournalTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static JSONObject record(String job, String trigger) {
+		final JSONObject json = new JSONObject();
+		json.put("type", "decision");
+		json.put("job", job);
+		json.put("trigger", trigger);
+		return json;
+	}
+
+	@Test
+	public void testQueryByJobAndTrigger() {
+		final ReincarnationJournal journal = new ReincarnationJournal(
+				new File(tmp.getRoot(), "journal.jsonl"), 1024, 2);
+		journal.record(record("a", "RegEx:x"));
+		journal.record(record("b", "RegEx:x"));
+		journal.record(record("a", "RegEx:y"));
+
+		final List<JSONObject> byJob = journal.query("a", null, 10);
+		assertEquals(2, byJob.size());
+		// newest first
+		assertEquals("RegEx:y", byJob.get(0).getString("trigger"));
+		assertEquals(2, journal.query(null, "RegEx:x", 10).size());
+		assertEquals(1, journal.query(null, null, 1).size());
+	}
+
+	@Test
+	public void testRotation() {
+		final File file = new File(tmp.getRoot(), "journal.jsonl");
+		final ReincarnationJournal journal = new ReincarnationJournal(file,
+				100, 2);
+		for (int i = 0; i < 10; i++) {
+			journal.write(Collections.singletonList(
+					record("folder/job" + i, "RegEx:No space left")));
+		}
+		assertTrue(journal.getRotated(1).isFile());
+		assertTrue(journal.getRotated(2).isFile());
+		assertFalse(journal.getRotated(3).exists());
+		assertTrue(file.length() <= 100 || !file.exists());
+	}
+
+	@Test
+	public void testQueryReadsRotatedFiles() {
+		final File file = new File(tmp.getRoot(), "journal.jsonl");
+		final ReincarnationJournal before = new ReincarnationJournal(file, 100,
+				5);
+		for (int i = 0; i < 10; i++) {
+			before.write(Collections.singletonList(
+					record("folder/job" + i, "RegEx:No space left")));
+		}
+		assertTrue(before.getRotated(1).isFile());
+
+		// nothing in memory after a restart of Jenkins
+		final ReincarnationJournal after = new ReincarnationJournal(file, 100,
+				5);
+		final List<JSONObject> records = after.query(null, null, 100);
+		assertEquals(10, records.size());
+		assertEquals("folder/job9", records.get(0).getString("job"));
+		assertEquals("folder/job0", records.get(9).getString("job"));
+		assertEquals(1, after.query("folder/job3", null, 100).size());
+	}
+
+	@Test
+	public void testRecordsInMemoryAndFileAreReturnedOnce() throws Exception {
+		final File file = new File(tmp.getRoot(), "journal.jsonl");
+		final ReincarnationJournal journal = new ReincarnationJournal(file,
+				1024 * 1024, 2);
+		journal.write(Collections.singletonList(record("old", "RegEx:x")));
+		journal.record(record("a", "RegEx:x"));
+		journal.record(record("b", "RegEx:x"));
+		// written or not, every record is returned once
+		assertEquals(3, journal.query(null, null, 10).size());
+		for (int i = 0; i < 500 && Files
+				.readAllLines(file.toPath(), StandardCharsets.UTF_8)
+				.size() < 3; i++) {
+			Thread.sleep(10);
+		}
+		final List<JSONObject> records = journal.query(null, null, 10);
+		assertEquals(3, records.size());
+		assertEquals("b", records.get(0).getString("job"));
+		assertEquals("old", records.get(2).getString("job"));
+		assertEquals(0, journal.getDropped());
+	}
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.runner.Description;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+
+/**
+ * Evaluates the afterbuild restart depth on a chain of builds of which the
+ * newest ones were started by afterbuild restarts. The builds are real
+ * builds of a freestyle project on a Jenkins started for the trial, so the
+ * walk goes through the build references and cause actions Jenkins keeps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RestartDepthBenchmark {
+
+	@Param({"5", "20"})
+	public int maxDepth;
+
+	@Param({"5", "50"})
+	public int consecutiveRestarts;
+
+	private JenkinsRule j;
+
+	private FreeStyleBuild lastBuild;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		j = new TrialJenkinsRule();
+		j.before();
+		final FreeStyleProject project = j.createFreeStyleProject();
+		// the oldest build was started by a user
+		j.buildAndAssertSuccess(project);
+		final PeriodicReincarnationBuildCause cause = new PeriodicReincarnationBuildCause(
+				"(" + Constants.AFTERBUILDRESTART + ") RegEx hit");
+		for (int i = 0; i < consecutiveRestarts; i++) {
+			j.assertBuildStatusSuccess(project.scheduleBuild2(0, cause));
+		}
+		lastBuild = project.getLastBuild();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		j.after();
+	}
+
+	@Benchmark
+	public boolean evaluate() {
+		return AfterbuildReincarnation.isBelowRestartDepth(lastBuild, maxDepth);
+	}
+
+	/**
+	 * A Jenkins kept running for a whole trial instead of a single test.
+	 */
+	private static final class TrialJenkinsRule extends JenkinsRule {
+		TrialJenkinsRule() {
+			this.testDescription = Description.createTestDescription(
+					RestartDepthBenchmark.class, "evaluate");
+			// a trial takes longer than a test may
+			this.timeout = 0;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RetryStatisticsTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static void record(RetryStatistics stats, String job, int retries,
+			int successes) {
+		for (int i = 0; i < retries; i++) {
+			stats.record("RegEx:flaky", job, i < successes);
+		}
+	}
+
+	@Test
+	public void testSuppressedBelowRate() {
+		final RetryStatistics stats = new RetryStatistics(null);
+		record(stats, "hopeless", RetryStatistics.MIN_RETRIES, 1);
+		record(stats, "flaky", RetryStatistics.MIN_RETRIES, 15);
+
+		assertTrue(stats.isSuppressed("RegEx:flaky", "hopeless", 10));
+		assertFalse(stats.isSuppressed("RegEx:flaky", "flaky", 10));
+		assertFalse(stats.isSuppressed("RegEx:flaky", "hopeless", 0));
+		assertFalse(stats.isSuppressed("RegEx:other", "hopeless", 10));
+		assertEquals(2 * RetryStatistics.MIN_RETRIES,
+				stats.getCounts("RegEx:flaky").getRetries());
+		assertEquals(40, stats.getCounts("RegEx:flaky").getSuccessRatePercent());
+	}
+
+	@Test
+	public void testFewRetriesUseTriggerRate() {
+		final RetryStatistics stats = new RetryStatistics(null);
+		record(stats, "hopeless", RetryStatistics.MIN_RETRIES, 0);
+		record(stats, "new", 1, 1);
+
+		// 1 of 21 restarts succeeded
+		assertTrue(stats.isSuppressed("RegEx:flaky", "new", 10));
+		stats.reset();
+		assertFalse(stats.isSuppressed("RegEx:flaky", "new", 10));
+	}
+
+	@Test
+	public void testSuppressedJobIsProbedAndRecovers() {
+		final RetryStatistics stats = new RetryStatistics(null);
+		record(stats, "hopeless", RetryStatistics.MIN_RETRIES, 0);
+		final long start = 1000000L;
+		assertTrue(stats.isSuppressed("RegEx:flaky", "hopeless", 10, start));
+		assertTrue(stats.isSuppressed("RegEx:flaky", "hopeless", 10,
+				start + RetryStatistics.PROBE_INTERVAL - 1));
+		// one probe per interval
+		final long probe = start + RetryStatistics.PROBE_INTERVAL;
+		assertFalse(stats.isSuppressed("RegEx:flaky", "hopeless", 10, probe));
+		assertTrue(stats.isSuppressed("RegEx:flaky", "hopeless", 10, probe));
+
+		// the job was fixed, old failures are halved away
+		record(stats, "hopeless", RetryStatistics.MAX_RETRIES, 0);
+		record(stats, "hopeless", 5, 5);
+		assertFalse(stats.isSuppressed("RegEx:flaky", "hopeless", 10, probe));
+		assertEquals(RetryStatistics.MIN_RETRIES + 5,
+				stats.getCounts("RegEx:flaky").getRetries());
+	}
+
+	@Test
+	public void testCountsAreWrittenWhenDirty() {
+		final File file = new File(tmp.getRoot(), "retry-statistics");
+		final RetryStatistics stats = new RetryStatistics(file);
+		record(stats, "hopeless", 3, 1);
+		assertFalse(file.exists());
+		stats.saveIfDirty();
+		assertTrue(file.isFile());
+		// not written again while unchanged
+		assertTrue(file.delete());
+		stats.saveIfDirty();
+		assertFalse(file.exists());
+
+		stats.record("RegEx:flaky", "hopeless", true);
+		stats.saveIfDirty();
+		assertTrue(file.isFile());
+	}
+}
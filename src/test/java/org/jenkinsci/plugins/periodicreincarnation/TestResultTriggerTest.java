@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestResultTriggerTest {
+
+	private static FailedTestIndex index(String... namesAndErrors) {
+		final Map<String, String> errors = new LinkedHashMap<String, String>();
+		for (int i = 0; i < namesAndErrors.length; i += 2) {
+			errors.put(namesAndErrors[i], namesAndErrors[i + 1]);
+		}
+		return new FailedTestIndex(errors);
+	}
+
+	private static TestResultTrigger trigger(String value) {
+		return new TestResultTrigger(value, "", "", "", "");
+	}
+
+	@Test
+	public void testNamesAndPatterns() throws Exception {
+		final TestResultTrigger trigger = trigger(
+				"com.example.FooTest.testBar\n.*IT\\..*\n");
+		assertTrue(trigger.matches(
+				index("com.example.FooTest.testBar", "expected 1"), 0));
+		assertTrue(trigger.matches(
+				index("com.example.DatabaseIT.testConnect", ""), 0));
+		assertFalse(trigger.matches(
+				index("com.example.FooTest.testBaz", "expected 1"), 0));
+		assertFalse(trigger.matches(FailedTestIndex.EMPTY, 0));
+	}
+
+	@Test
+	public void testOnlyListedFailed() throws Exception {
+		final TestResultTrigger trigger = trigger(
+				"com.example.FlakyTest.testA\ncom.example.FlakyTest.testB");
+		trigger.setOnlyListedFailed(true);
+		assertTrue(trigger.matches(index("com.example.FlakyTest.testA", "",
+				"com.example.FlakyTest.testB", ""), 0));
+		assertFalse(trigger.matches(index("com.example.FlakyTest.testA", "",
+				"com.example.FooTest.testBar", ""), 0));
+		assertFalse(trigger.matches(FailedTestIndex.EMPTY, 0));
+	}
+
+	@Test
+	public void testMatchErrors() throws Exception {
+		final TestResultTrigger trigger = trigger("Connection (refused|reset)");
+		final FailedTestIndex index = index("com.example.FooTest.testBar",
+				"java.net.ConnectException: Connection refused");
+		assertFalse(trigger.matches(index, 0));
+		trigger.setMatchErrors(true);
+		assertTrue(trigger.matches(index, 0));
+	}
+
+	@Test
+	public void testNamesWithMetaCharactersMatchExactly() throws Exception {
+		final TestResultTrigger trigger = trigger(
+				"com.example.Outer$InnerTest.testA\n"
+						+ "com.example.FooTest.testBar[0]");
+		trigger.setOnlyListedFailed(true);
+		assertTrue(trigger.matches(
+				index("com.example.Outer$InnerTest.testA", ""), 0));
+		assertTrue(trigger.matches(
+				index("com.example.FooTest.testBar[0]", ""), 0));
+		assertTrue(trigger.matches(index("com.example.Outer$InnerTest.testA",
+				"", "com.example.FooTest.testBar[0]", ""), 0));
+		assertFalse(trigger.matches(index("com.example.Outer$InnerTest.testA",
+				"", "com.example.FooTest.testBar[1]", ""), 0));
+	}
+
+	@Test
+	public void testIsPattern() {
+		assertFalse(TestResultTrigger.isPattern("com.example.FooTest.testBar"));
+		assertTrue(TestResultTrigger.isPattern("com.example.*"));
+		assertTrue(TestResultTrigger
+				.isPattern("com.example.Outer$InnerTest.testA"));
+		assertTrue(
+				TestResultTrigger.isPattern("com.example.FooTest.testBar[0]"));
+	}
+}
@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TriggerStatisticsTest {
+
+	@After
+	public void tearDown() {
+		TriggerStatistics.resetAll();
+	}
+
+	@Test
+	public void testRemovedTriggersAreForgotten() {
+		final RegEx kept = new RegEx("kept", null, null, null, null);
+		final RegEx edited = new RegEx("before", null, null, null, null);
+		final TriggerStatistics stats = TriggerStatistics.of(kept);
+		stats.recordEvaluation(1000, 10, 100, true);
+		TriggerStatistics.of(edited).recordEvaluation(1000, 10, 100, false);
+
+		TriggerStatistics.retainAll(Arrays.<PeriodicTrigger> asList(kept,
+				new RegEx("after", null, null, null, null)));
+
+		assertEquals(1, TriggerStatistics.size());
+		assertSame(stats, TriggerStatistics.of(kept));
+		assertEquals(100, TriggerStatistics.of(kept).getBytesExamined());
+		assertEquals(0, TriggerStatistics.of(edited).getEvaluations());
+
+		TriggerStatistics.retainAll(Collections.<PeriodicTrigger> emptyList());
+		assertEquals(0, TriggerStatistics.size());
+	}
+
+	@Test
+	public void testFailureCausesReadNoLines() {
+		assertTrue(TriggerStatistics
+				.of(new RegEx("a", null, null, null, null)).isReading());
+		assertFalse(TriggerStatistics
+				.of(new BuildFailureObject("id", null, null, null, null))
+				.isReading());
+	}
+}
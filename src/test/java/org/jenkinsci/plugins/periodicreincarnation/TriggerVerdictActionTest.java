@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+import hudson.Launcher;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+public class TriggerVerdictActionTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private FreeStyleBuild failedBuild(final String line) throws Exception {
+		final FreeStyleProject project = j.createFreeStyleProject();
+		project.getBuildersList().add(new TestBuilder() {
+			@Override
+			public boolean perform(AbstractBuild<?, ?> build,
+					Launcher launcher, BuildListener listener) {
+				listener.getLogger().println(line);
+				return false;
+			}
+		});
+		return j.assertBuildStatus(Result.FAILURE,
+				project.scheduleBuild2(0).get());
+	}
+
+	private static boolean check(FreeStyleBuild build, String regEx,
+			CycleMetrics metrics) {
+		return Utils.checkBuild(build, new RegEx(regEx, null, null, null, null),
+				new PipelineSupport.FlowGraph(build), metrics);
+	}
+
+	private static String readBuildXml(FreeStyleBuild build)
+			throws Exception {
+		return FileUtils.readFileToString(
+				new File(build.getRootDir(), "build.xml"), "UTF-8");
+	}
+
+	@Test
+	public void testVerdictIsReusedByLaterCycles() throws Exception {
+		final FreeStyleBuild build = failedBuild(
+				"java.net.SocketException: Connection reset");
+		final CycleMetrics first = new CycleMetrics(CycleMetrics.Type.CRON);
+		assertTrue(check(build, "Connection reset", first));
+		assertEquals(1, first.getLogsOpened());
+		assertEquals(0, first.getVerdictsReused());
+
+		final CycleMetrics second = new CycleMetrics(CycleMetrics.Type.CRON);
+		assertTrue(check(build, "Connection reset", second));
+		assertEquals(0, second.getLogsOpened());
+		assertEquals(1, second.getVerdictsReused());
+	}
+
+	@Test
+	public void testEditedRegExIsEvaluatedAgain() throws Exception {
+		final FreeStyleBuild build = failedBuild(
+				"java.net.SocketException: Connection reset");
+		assertTrue(check(build, "Connection reset",
+				new CycleMetrics(CycleMetrics.Type.CRON)));
+
+		// an edited value is a new key, its verdict is not known yet
+		final CycleMetrics metrics = new CycleMetrics(CycleMetrics.Type.CRON);
+		assertFalse(check(build, "Connection refused", metrics));
+		assertEquals(1, metrics.getLogsOpened());
+		assertEquals(0, metrics.getVerdictsReused());
+		assertTrue(check(build, "Connection reset", metrics));
+		assertEquals(1, metrics.getVerdictsReused());
+	}
+
+	@Test
+	public void testCronCycleSavesChangedVerdictsOnly() throws Exception {
+		final FreeStyleBuild hit = failedBuild(
+				"java.net.SocketException: Connection reset");
+		final FreeStyleBuild miss = failedBuild("compilation failed");
+		// keep the restarts in the queue
+		j.jenkins.setNumExecutors(0);
+		final PeriodicReincarnationGlobalConfiguration config = PeriodicReincarnationGlobalConfiguration
+				.get();
+		new XmlFile(Jenkins.XSTREAM,
+				new File(j.jenkins.getRootDir(), config.getId() + ".xml"))
+						.write(new PeriodicReincarnationGlobalConfiguration(
+								"false", "0", "true", "* * * * *",
+								Arrays.asList(new RegEx("Connection reset",
+										null, null, null, null)),
+								null, "false"));
+		config.load();
+		final String missXml = readBuildXml(miss);
+
+		new PeriodicReincarnation().execute(TaskListener.NULL);
+
+		// the hit returned from within the loop and was saved all the same
+		assertNotNull(j.jenkins.getQueue().getItem(hit.getParent()));
+		assertTrue(readBuildXml(hit).contains("TriggerVerdictAction"));
+		// a miss is kept in memory without rewriting the build record
+		assertNull(j.jenkins.getQueue().getItem(miss.getParent()));
+		assertEquals(missXml, readBuildXml(miss));
+		assertFalse(TriggerVerdictAction.getVerdict(miss,
+				config.getRegExprs().get(0)));
+	}
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.periodicreincarnation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkspaceRegExTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void write(String name, String content) throws IOException {
+		final File file = new File(this.folder.getRoot(), name);
+		file.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private boolean scan(String regEx, String files) throws Exception {
+		return new WorkspaceRegEx(regEx, files, "", "", "", "").getScan(0)
+				.invoke(this.folder.getRoot(), null).isHit();
+	}
+
+	@Test
+	public void testSearchesIncludedFilesOnly() throws Exception {
+		write("target/surefire-reports/FooTest.txt",
+				"Tests run: 3\njava.net.SocketTimeoutException: Read timed out\n");
+		write("build.log", "Connection refused\n");
+
+		assertTrue(scan("SocketTimeoutException", "**/surefire-reports/*.txt"));
+		assertTrue(scan("Read timed? out", "**/*.txt"));
+		assertFalse(scan("Connection refused", "**/surefire-reports/*.txt"));
+		assertTrue(scan("Connection refused", "*.log"));
+	}
+
+	@Test
+	public void testMissingWorkspace() throws Exception {
+		assertFalse(new WorkspaceRegEx("x", "**", "", "", "", "").getScan(0)
+				.invoke(new File(this.folder.getRoot(), "gone"), null)
+				.isHit());
+	}
+
+	@Test
+	public void testKeyIncludesFiles() {
+		assertNotEquals(new WorkspaceRegEx("x", "*.log", "", "", "", "").getKey(),
+				new WorkspaceRegEx("x", "*.txt", "", "", "", "").getKey());
+	}
+
+	@Test
+	public void testBytesAreCounted() throws Exception {
+		write("a.log", "first\nsecond\n");
+		final ScanResult result = new WorkspaceRegEx("third", "*.log", "",
+				"", "", "").getScan(0).invoke(this.folder.getRoot(), null);
+		assertFalse(result.isHit());
+		assertEquals(2, result.getLines());
+		assertEquals(13, result.getBytes());
+	}
+
+	@Test
+	public void testScanStopsAtMaximalFilesAndBytes() throws Exception {
+		write("a.log", "nothing\n");
+		write("b.log", "nothing\n");
+		final ScanResult oneFile = new WorkspaceRegEx.Scan(
+				Pattern.compile("Connection refused"), "*.log", 0, 1,
+				WorkspaceRegEx.MAX_BYTES).invoke(this.folder.getRoot(), null);
+		assertEquals(1, oneFile.getLines());
+
+		write("c.txt", "nothing\nConnection refused\n");
+		final WorkspaceRegEx.Scan fewBytes = new WorkspaceRegEx.Scan(
+				Pattern.compile("Connection refused"), "*.txt", 0,
+				WorkspaceRegEx.MAX_FILES, 4);
+		assertFalse(fewBytes.invoke(this.folder.getRoot(), null).isHit());
+		assertTrue(scan("Connection refused", "*.txt"));
+	}
+}